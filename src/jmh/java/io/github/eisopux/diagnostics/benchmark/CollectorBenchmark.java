@@ -0,0 +1,91 @@
+package io.github.eisopux.diagnostics.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.collectors.StreamingDiagnosticCollector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.reporter.JsonReporter;
+
+/**
+ * Measures how long the collectors take to capture a stream of diagnostics and to turn it into
+ * report data, from the first reported diagnostic to the end of {@code onAfterCompile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectorBenchmark {
+
+    private JavaCompiler compiler;
+    private StandardJavaFileManager fileManager;
+
+    @Setup
+    public void setUp() {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        fileManager = compiler.getStandardFileManager(null, null, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileManager.close();
+    }
+
+    @Benchmark
+    public CompilationReportData diagnosticCollector(SyntheticDiagnostics stream) {
+        CompilationTaskBuilder builder =
+                CompilationTaskBuilder.fromArgs(compiler, fileManager, new String[0]);
+        DiagnosticCollector collector = new DiagnosticCollector();
+        collector.onBeforeCompile(builder);
+
+        DiagnosticListener<? super JavaFileObject> listener =
+                builder.getOrCreateDiagnosticListener();
+        for (Diagnostic<JavaFileObject> diag : stream.diagnostics) {
+            listener.report(diag);
+        }
+
+        CompilationReportData reportData = new CompilationReportData();
+        collector.onAfterCompile(reportData);
+        return reportData;
+    }
+
+    /**
+     * The path of {@link StreamingDiagnosticCollector}: every diagnostic is turned into a record
+     * and handed to the reporter right away, here a {@link JsonReporter} that discards its output.
+     * The listener that the collector registers is only reachable from within a compilation task,
+     * so its body is replicated here.
+     */
+    @Benchmark
+    public JsonReporter streamingDiagnosticCollector(SyntheticDiagnostics stream) {
+        JsonReporter reporter = new JsonReporter(SyntheticDiagnostics.DISCARD);
+        for (Diagnostic<JavaFileObject> diag : stream.diagnostics) {
+            reporter.reportRecord("diagnostics", DiagnosticRecord.of(diag));
+        }
+        reporter.generateReport(new CompilationReportData());
+        return reporter;
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.eisopux.diagnostics.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.collectors.IncrementalCollector;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+import io.github.eisopux.diagnostics.reporter.JsonReporter;
+
+/**
+ * Measures {@link CompilerRunner#run(String[])} end to end, from parsing the arguments to the
+ * written report, on a generated corpus of source files that produce lint warnings.
+ *
+ * <p>The {@code incremental} mode replays the cached diagnostics of unchanged files after the first
+ * invocation, so it measures the cost of a no-op incremental run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompilerRunnerBenchmark {
+
+    @Param({"10", "100"})
+    public int fileCount;
+
+    @Param({"plain", "sharded", "incremental"})
+    public String mode;
+
+    private Path corpus;
+    private String[] args;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("javac-diagnostics-benchmark");
+        Path classes = Files.createDirectory(corpus.resolve("classes"));
+
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-Xlint:all");
+        arguments.add("-Xmaxwarns");
+        arguments.add("100000");
+        arguments.add("-proc:none");
+        arguments.add("-d");
+        arguments.add(classes.toString());
+        for (int i = 0; i < fileCount; i++) {
+            String packageName = "p" + (i % 10);
+            Path directory = Files.createDirectories(corpus.resolve("src").resolve(packageName));
+            Path file = directory.resolve("C" + i + ".java");
+            Files.write(file, generateSource(packageName, i).getBytes(StandardCharsets.UTF_8));
+            arguments.add(file.toString());
+        }
+        args = arguments.toArray(new String[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(corpus)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void run() {
+        CompilerRunner runner = new CompilerRunner();
+        switch (mode) {
+            case "plain":
+                runner.addCollector(new DiagnosticCollector());
+                break;
+            case "sharded":
+                runner.addCollector(DiagnosticCollector::new).setShardCount(4);
+                break;
+            case "incremental":
+                runner.addCollector(new DiagnosticCollector())
+                        .addCollector(new IncrementalCollector(corpus.resolve("cache")));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        runner.setReporter(new JsonReporter(SyntheticDiagnostics.DISCARD)).run(args);
+    }
+
+    /** Generates a class with raw types, each use of which javac warns about. */
+    private static String generateSource(String packageName, int index) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(packageName).append(";\n\n");
+        source.append("import java.util.ArrayList;\n");
+        source.append("import java.util.List;\n\n");
+        source.append("public class C").append(index).append(" {\n");
+        source.append("    List raw = new ArrayList();\n");
+        for (int m = 0; m < 20; m++) {
+            source.append("    void m").append(m).append("() {\n");
+            source.append("        raw.add(\"").append(m).append("\");\n");
+            source.append("        List copy = new ArrayList(raw);\n");
+            source.append("        copy.add(").append(m).append(");\n");
+            source.append("    }\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.eisopux.diagnostics.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.Reporter;
+import io.github.eisopux.diagnostics.reporter.BinaryReporter;
+import io.github.eisopux.diagnostics.reporter.ConsoleReporter;
+import io.github.eisopux.diagnostics.reporter.JsonReporter;
+import io.github.eisopux.diagnostics.reporter.LspReporter;
+
+/**
+ * Measures how long the reporters take to write the report of a stream of diagnostics, including
+ * the grouping by file and the processor name extraction of {@link LspReporter}. The output is
+ * discarded, so only the reporters' own cost is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReporterBenchmark {
+
+    @Benchmark
+    public Reporter jsonReporter(SyntheticDiagnostics stream) {
+        JsonReporter reporter = new JsonReporter(SyntheticDiagnostics.DISCARD);
+        reporter.generateReport(stream.newReportData());
+        return reporter;
+    }
+
+    @Benchmark
+    public Reporter jsonReporterCompact(SyntheticDiagnostics stream) {
+        JsonReporter reporter =
+                new JsonReporter(SyntheticDiagnostics.DISCARD).setPrettyPrinting(false);
+        reporter.generateReport(stream.newReportData());
+        return reporter;
+    }
+
+    @Benchmark
+    public Reporter binaryReporter(SyntheticDiagnostics stream) {
+        BinaryReporter reporter = new BinaryReporter(SyntheticDiagnostics.DISCARD);
+        reporter.generateReport(stream.newReportData());
+        return reporter;
+    }
+
+    @Benchmark
+    public Reporter lspReporter(SyntheticDiagnostics stream) {
+        LspReporter reporter = new LspReporter(SyntheticDiagnostics.DISCARD);
+        reporter.generateReport(stream.newReportData());
+        return reporter;
+    }
+
+    @Benchmark
+    public Reporter lspReporterStreaming(SyntheticDiagnostics stream) {
+        LspReporter reporter = new LspReporter(SyntheticDiagnostics.DISCARD);
+        for (DiagnosticRecord record : stream.records) {
+            reporter.reportRecord("diagnostics", record);
+        }
+        reporter.generateReport(new CompilationReportData());
+        return reporter;
+    }
+
+    @Benchmark
+    public Reporter consoleReporter(SyntheticDiagnostics stream) {
+        ConsoleReporter reporter =
+                new ConsoleReporter(new PrintStream(SyntheticDiagnostics.DISCARD));
+        reporter.generateReport(stream.newReportData());
+        return reporter;
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.eisopux.diagnostics.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+
+/**
+ * A synthetic stream of diagnostics, as javac would report them, that is fed through the collectors
+ * and reporters by the benchmarks.
+ *
+ * <p>The diagnostics are spread evenly over the source files and reported file by file. With
+ * {@link #processorPrefix}, every message starts with a {@code [processor:key]} prefix, as
+ * annotation processors such as the Checker Framework emit with {@code
+ * -AshowPrefixInWarningMessages}.
+ */
+@State(Scope.Benchmark)
+public class SyntheticDiagnostics {
+
+    /** An OutputStream that discards everything written to it. */
+    static final OutputStream DISCARD =
+            new OutputStream() {
+                @Override
+                public void write(int b) {}
+
+                @Override
+                public void write(byte[] b, int off, int len) {}
+            };
+
+    @Param({"1", "1000", "100000"})
+    public int diagnosticCount;
+
+    @Param({"10", "10000"})
+    public int fileCount;
+
+    @Param({"false", "true"})
+    public boolean processorPrefix;
+
+    /** The diagnostics, in the order in which javac would report them. */
+    List<Diagnostic<JavaFileObject>> diagnostics;
+
+    /** The records of {@link #diagnostics}, as stored by the collectors. */
+    List<DiagnosticRecord> records;
+
+    @Setup
+    public void setUp() {
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            URI uri = URI.create("file:///synthetic/p" + (i % 100) + "/C" + i + ".java");
+            sources.add(new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {});
+        }
+
+        diagnostics = new ArrayList<>(diagnosticCount);
+        records = new ArrayList<>(diagnosticCount);
+        for (int i = 0; i < diagnosticCount; i++) {
+            JavaFileObject source = sources.get((int) ((long) i * fileCount / diagnosticCount));
+            String message =
+                    "unchecked call to add(E) as a member of the raw type java.util.List<"
+                            + i
+                            + ">";
+            Diagnostic<JavaFileObject> diag =
+                    new SyntheticDiagnostic(
+                            source,
+                            i % 4 == 0 ? Diagnostic.Kind.ERROR : Diagnostic.Kind.WARNING,
+                            80L * i,
+                            i / 2 + 1,
+                            i % 60 + 1,
+                            processorPrefix
+                                    ? "compiler.err.proc.messager"
+                                    : "compiler.warn.unchecked.call.mbr.of.raw.type",
+                            processorPrefix ? "[nullness:argument] " + message : message);
+            diagnostics.add(diag);
+            records.add(DiagnosticRecord.of(diag));
+        }
+    }
+
+    /**
+     * Creates report data holding the {@code "diagnostics"} section the way {@link
+     * io.github.eisopux.diagnostics.collectors.DiagnosticCollector} stores it. The report data is
+     * created afresh for every call so that no lazily materialized view carries over.
+     */
+    CompilationReportData newReportData() {
+        CompilationReportData reportData = new CompilationReportData();
+        reportData.putTypedSection("diagnostics", DiagnosticRecord.class, records);
+        return reportData;
+    }
+
+    /** A diagnostic with fixed values. */
+    private static final class SyntheticDiagnostic implements Diagnostic<JavaFileObject> {
+        private final JavaFileObject source;
+        private final Kind kind;
+        private final long position;
+        private final long lineNumber;
+        private final long columnNumber;
+        private final String code;
+        private final String message;
+
+        SyntheticDiagnostic(
+                JavaFileObject source,
+                Kind kind,
+                long position,
+                long lineNumber,
+                long columnNumber,
+                String code,
+                String message) {
+            this.source = source;
+            this.kind = kind;
+            this.position = position;
+            this.lineNumber = lineNumber;
+            this.columnNumber = columnNumber;
+            this.code = code;
+            this.message = message;
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public JavaFileObject getSource() {
+            return source;
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public long getStartPosition() {
+            return position;
+        }
+
+        @Override
+        public long getEndPosition() {
+            return position + 12;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return columnNumber;
+        }
+
+        @Override
+        public String getCode() {
+            return code;
+        }
+
+        @Override
+        public String getMessage(Locale locale) {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.core.BatchRunner;
+
+/**
+ * A prebuilt JSON or LSP diagnostics output that compiles many independent jobs in one JVM, at most
+ * {@code --jobs} at a time, and writes one report that maps each job id to the job's report. Its
+ * only argument after the options, which are listed in the README, is a manifest: either a JSON
+ * object of the form
+ *
+ * <pre>{@code
+ * {"jobs": [{"id": "core", "args": ["-d", "out/core", "core/A.java"]},
+ *           {"id": "app", "argfile": "app.args"}]}
+ * }</pre>
+ *
+ * <p>or a list of javac argument files, one per line, each of which is a job whose id is the line
+ * itself. Blank lines and lines starting with {@code #} are ignored. Relative paths, both in the
+ * manifest and in the job arguments, are resolved against the working directory.
+ */
+public class BatchDiagnostics {
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(
+                        args,
+                        Arrays.asList(
+                                "--format",
+                                "--output",
+                                "--compact",
+                                "--jobs",
+                                "--deduplicate",
+                                "--max-per-code",
+                                "--summary",
+                                "--metrics-file"));
+        String[] manifest = wrapperArgs.getCompilerArgs();
+        if (manifest.length != 1) {
+            throw new IllegalArgumentException(
+                    "Expected a single manifest, got " + Arrays.toString(manifest));
+        }
+
+        BatchRunner runner =
+                new BatchRunner()
+                        .addCollector(DiagnosticCollector::new)
+                        .setParallelism(
+                                wrapperArgs.getInt(
+                                        "--jobs", Runtime.getRuntime().availableProcessors()))
+                        .setMetrics(wrapperArgs.getMetrics())
+                        .setReporter(wrapperArgs.createReporter("json"));
+        wrapperArgs.createStages().forEach(runner::addStage);
+        addJobs(runner, Paths.get(manifest[0]));
+
+        runner.run();
+        wrapperArgs.writeMetrics();
+    }
+
+    /**
+     * Adds the jobs of a manifest to the runner.
+     *
+     * @throws IOException if the manifest cannot be read
+     * @throws IllegalArgumentException if the manifest is malformed or has duplicate job ids
+     */
+    private static void addJobs(BatchRunner runner, Path manifest) throws IOException {
+        String content = new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8);
+        if (!content.trim().startsWith("{")) {
+            for (String line : content.split("\\R")) {
+                String argFile = line.trim();
+                if (!argFile.isEmpty() && !argFile.startsWith("#")) {
+                    runner.addJob(argFile, Paths.get(argFile));
+                }
+            }
+            return;
+        }
+
+        Manifest jobs;
+        try {
+            jobs = new Gson().fromJson(content, Manifest.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Malformed manifest " + manifest, e);
+        }
+        if (jobs == null || jobs.jobs == null) {
+            throw new IllegalArgumentException("Manifest " + manifest + " has no \"jobs\"");
+        }
+        for (Job job : jobs.jobs) {
+            if (job.id == null || (job.args == null) == (job.argfile == null)) {
+                throw new IllegalArgumentException(
+                        "Each job of " + manifest + " needs an \"id\" and either \"args\" or"
+                                + " \"argfile\"");
+            }
+            if (job.args != null) {
+                runner.addJob(job.id, job.args.toArray(new String[0]));
+            } else {
+                runner.addJob(job.id, Paths.get(job.argfile));
+            }
+        }
+    }
+
+    /** The JSON form of a manifest. */
+    private static final class Manifest {
+        List<Job> jobs;
+    }
+
+    /** A job of a JSON manifest. */
+    private static final class Job {
+        String id;
+        List<String> args;
+        String argfile;
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import io.github.eisopux.diagnostics.core.BatchReporter;
+import io.github.eisopux.diagnostics.reporter.BinaryReport;
+
+/**
+ * Converts a report written with {@code --format binary} back to JSON ({@code --format json}, the
+ * default) or LSP ({@code --format lsp}), exactly as the entry point that wrote it would have
+ * written it in that format.
+ *
+ * <p>Usage: {@code BinaryToJson [--format json|lsp] [--output FILE] [--compact] REPORT}.
+ */
+public class BinaryToJson {
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(args, Arrays.asList("--format", "--output", "--compact"));
+        String[] report = wrapperArgs.getCompilerArgs();
+        if (report.length != 1) {
+            throw new IllegalArgumentException(
+                    "Expected a single report, got " + Arrays.toString(report));
+        }
+
+        BinaryReport binaryReport = BinaryReport.open(Paths.get(report[0]));
+        BatchReporter reporter = wrapperArgs.createReporter("json");
+        if (binaryReport.isBatch()) {
+            reporter.generateReports(binaryReport.getReports());
+        } else {
+            reporter.generateReport(binaryReport.getReportData());
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import io.github.eisopux.diagnostics.core.ArgFiles;
+import io.github.eisopux.diagnostics.core.CompilerSession;
+
+/**
+ * A thin launcher that forwards a compilation to a running {@link DiagnosticsDaemon} and prints its
+ * report. If no daemon is listening, the compilation runs in-process instead, exactly like {@link
+ * JsonDiagnostics} or {@link LspDiagnostics} would.
+ *
+ * <p>Usage: {@code DaemonClient [--format json|lsp] [--port N] [--overlay SOURCE=BUFFER]...
+ * [--discard-class-output] [--stop] [javac args]}. The {@code --stop} flag asks the daemon to shut
+ * down instead of compiling. Requests carry the token that the daemon wrote to its token file, so
+ * only the user who started the daemon can use it.
+ *
+ * <p>Each {@code --overlay} compiles the content of the file {@code BUFFER}, e.g. an editor's
+ * unsaved buffer, in place of the source file {@code SOURCE}, wherever the compiler reads {@code
+ * SOURCE} from. Diagnostics still refer to {@code SOURCE}. With {@code --discard-class-output}, no
+ * class files are written, which saves the disk I/O when only the diagnostics are of interest.
+ *
+ * <p>The daemon does not share the client's working directory, so the client expands argument
+ * files and makes the paths in the arguments absolute before it sends them, see {@link
+ * #absolutize(String[])}. Paths in the values of other options, e.g. of {@code -Xplugin}, must
+ * already be absolute.
+ */
+public class DaemonClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 200;
+
+    /** The options whose separate value is a path, a directory or a list of them. */
+    private static final Set<String> PATH_OPTIONS =
+            new HashSet<>(
+                    Arrays.asList(
+                            "-d",
+                            "-s",
+                            "-h",
+                            "--class-path",
+                            "-classpath",
+                            "-cp",
+                            "--source-path",
+                            "-sourcepath",
+                            "--module-source-path",
+                            "--module-path",
+                            "-p",
+                            "--upgrade-module-path",
+                            "--system",
+                            "--patch-module",
+                            "--boot-class-path",
+                            "-bootclasspath",
+                            "-extdirs",
+                            "-endorseddirs",
+                            "--processor-path",
+                            "-processorpath",
+                            "--processor-module-path"));
+
+    /** The options whose value, a list of paths, is joined to the option. */
+    private static final List<String> JOINED_PATH_OPTIONS =
+            Arrays.asList(
+                    "-Xbootclasspath/p:",
+                    "-Xbootclasspath/a:",
+                    "-Xbootclasspath:",
+                    "-Djava.ext.dirs=",
+                    "-Djava.endorsed.dirs=");
+
+    /**
+     * The options of the file manager with a separate value that is not a path, which the compiler
+     * does not know the arity of.
+     */
+    private static final Set<String> OTHER_FILE_MANAGER_OPTIONS =
+            new HashSet<>(Arrays.asList("-encoding", "--multi-release"));
+
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(
+                        args,
+                        Arrays.asList(
+                                "--format",
+                                "--port",
+                                "--overlay",
+                                "--stop",
+                                "--discard-class-output"));
+        String format = wrapperArgs.get("--format", "json");
+        int port = wrapperArgs.getInt("--port", DiagnosticsDaemon.DEFAULT_PORT);
+        boolean discardClassOutput = wrapperArgs.has("--discard-class-output");
+        Map<File, String> overlays = readOverlays(wrapperArgs);
+
+        String token = readToken(port);
+        Socket socket = token != null ? connect(port) : null;
+        if (socket == null) {
+            if (wrapperArgs.has("--stop")) {
+                return;
+            }
+            try (CompilerSession session = new CompilerSession();
+                    DiscardedClassOutput discardedClassOutput =
+                            discardClassOutput ? new DiscardedClassOutput() : null) {
+                DiagnosticsDaemon.compile(
+                        session,
+                        wrapperArgs.getCompilerArgs(),
+                        WrapperArguments.createReporter(format, System.out),
+                        discardedClassOutput,
+                        overlays);
+            }
+            return;
+        }
+
+        try (Socket s = socket) {
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            out.writeUTF(token);
+            if (wrapperArgs.has("--stop")) {
+                out.writeUTF(DiagnosticsDaemon.COMMAND_STOP);
+            } else {
+                List<String> compilerArgs = absolutize(wrapperArgs.getCompilerArgs());
+                out.writeUTF(DiagnosticsDaemon.COMMAND_COMPILE);
+                out.writeUTF(format);
+                out.writeInt(compilerArgs.size());
+                for (String argument : compilerArgs) {
+                    out.writeUTF(argument);
+                }
+                out.writeBoolean(discardClassOutput);
+                out.writeInt(overlays.size());
+                for (Map.Entry<File, String> overlay : overlays.entrySet()) {
+                    byte[] content = overlay.getValue().getBytes(StandardCharsets.UTF_8);
+                    out.writeUTF(overlay.getKey().getAbsolutePath());
+                    out.writeInt(content.length);
+                    out.write(content);
+                }
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            int status = in.readInt();
+            if (status == DiagnosticsDaemon.STATUS_OK) {
+                copy(in, System.out);
+                System.out.flush();
+            } else {
+                ByteArrayOutputStream message = new ByteArrayOutputStream();
+                copy(in, message);
+                System.err.println(new String(message.toByteArray(), StandardCharsets.UTF_8));
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Reads the buffers of the {@code --overlay SOURCE=BUFFER} options.
+     *
+     * @return the content of each buffer, keyed by the source file it overlays
+     * @throws IllegalArgumentException if an overlay is not of the form {@code SOURCE=BUFFER}
+     * @throws IOException if a buffer cannot be read
+     */
+    private static Map<File, String> readOverlays(WrapperArguments wrapperArgs) throws IOException {
+        Map<File, String> overlays = new LinkedHashMap<>();
+        for (String overlay : wrapperArgs.getAll("--overlay")) {
+            int separator = overlay.indexOf('=');
+            if (separator <= 0 || separator == overlay.length() - 1) {
+                throw new IllegalArgumentException(
+                        "Expected SOURCE=BUFFER for --overlay: " + overlay);
+            }
+            File source = new File(overlay.substring(0, separator));
+            File buffer = new File(overlay.substring(separator + 1));
+            byte[] content = Files.readAllBytes(buffer.toPath());
+            overlays.put(source, new String(content, StandardCharsets.UTF_8));
+        }
+        return overlays;
+    }
+
+    /** Returns the token of the daemon, or {@code null} if no daemon is running. */
+    private static String readToken(int port) {
+        try {
+            byte[] token = Files.readAllBytes(DiagnosticsDaemon.getTokenFile(port));
+            return new String(token, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Returns a connection to the daemon, or {@code null} if no daemon is running. */
+    private static Socket connect(int port) {
+        Socket socket = new Socket();
+        try {
+            socket.connect(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                    CONNECT_TIMEOUT_MILLIS);
+            return socket;
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // The socket was never connected.
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the relative paths in javac arguments against the working directory, since the
+     * daemon would resolve them against its own. Argument files are expanded first, and the paths
+     * in the values of the file manager's options, e.g. each entry of a {@code -classpath} or the
+     * directory of {@code -d}, and the source files, directories and patterns are made absolute.
+     * Everything else, such as class names and the values of other options, is left alone.
+     *
+     * @param args the javac arguments
+     * @return the arguments with absolute paths
+     */
+    static List<String> absolutize(String[] args) {
+        List<String> expanded = new ArrayList<>();
+        for (String argument : args) {
+            if (argument.length() < 2 || argument.charAt(0) != '@' || argument.charAt(1) == '@') {
+                expanded.add(argument);
+                continue;
+            }
+            try {
+                expanded.addAll(ArgFiles.read(Paths.get(argument.substring(1))));
+            } catch (IOException | IllegalArgumentException e) {
+                // The daemon reports the argument file as unreadable.
+                expanded.add(argument);
+            }
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> absolutized = new ArrayList<>();
+        for (int i = 0; i < expanded.size(); i++) {
+            String argument = expanded.get(i);
+            if (!argument.startsWith("-")) {
+                File file = new File(argument);
+                boolean className =
+                        SourceVersion.isName(argument)
+                                && !argument.endsWith(".java")
+                                && !file.exists();
+                absolutized.add(className ? argument : file.getAbsolutePath());
+                continue;
+            }
+            String joinedPathOption =
+                    JOINED_PATH_OPTIONS.stream()
+                            .filter(argument::startsWith)
+                            .findFirst()
+                            .orElse(null);
+            int separator = argument.startsWith("--") ? argument.indexOf('=') : -1;
+            String name = separator > 0 ? argument.substring(0, separator) : argument;
+            if (joinedPathOption != null) {
+                absolutized.add(
+                        joinedPathOption
+                                + absolutizePaths(argument.substring(joinedPathOption.length())));
+            } else if (PATH_OPTIONS.contains(name) && separator > 0) {
+                absolutized.add(name + "=" + absolutizePaths(argument.substring(separator + 1)));
+            } else if (PATH_OPTIONS.contains(name) && i + 1 < expanded.size()) {
+                absolutized.add(argument);
+                absolutized.add(absolutizePaths(expanded.get(++i)));
+            } else {
+                absolutized.add(argument);
+                int optionCount =
+                        OTHER_FILE_MANAGER_OPTIONS.contains(argument)
+                                ? 1
+                                : compiler != null ? compiler.isSupportedOption(argument) : 0;
+                for (int j = 0; j < optionCount && i + 1 < expanded.size(); j++) {
+                    absolutized.add(expanded.get(++i));
+                }
+            }
+        }
+        return absolutized;
+    }
+
+    /**
+     * Makes each entry of a list of paths absolute. Entries of the form {@code MODULE=PATH}, as in
+     * the values of {@code --patch-module} and {@code --module-source-path}, keep their module.
+     */
+    private static String absolutizePaths(String paths) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : paths.split(File.pathSeparator, -1)) {
+            int separator = entry.indexOf('=');
+            String path = entry.substring(separator + 1);
+            entries.add(
+                    path.isEmpty()
+                            ? entry
+                            : entry.substring(0, separator + 1) + new File(path).getAbsolutePath());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+}
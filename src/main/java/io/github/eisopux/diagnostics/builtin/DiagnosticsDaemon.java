@@ -0,0 +1,308 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+import io.github.eisopux.diagnostics.core.CompilerSession;
+import io.github.eisopux.diagnostics.core.InvalidArgumentsException;
+import io.github.eisopux.diagnostics.core.Reporter;
+
+/**
+ * A long-running compile server that keeps a {@link CompilerSession} warm and answers compile
+ * requests from {@link DaemonClient}s with the same JSON or LSP reports that {@link
+ * JsonDiagnostics} and {@link LspDiagnostics} print.
+ *
+ * <p>The daemon listens on a loopback TCP port ({@value #DEFAULT_PORT} unless {@code --port} is
+ * given) and serves one request at a time. Since other users of the machine can connect to the
+ * port, too, and a compilation can run annotation processors and write files, the daemon only
+ * serves requests that carry its token: a random string that it generates on startup and writes to
+ * a file that only the user who started it can read, see {@link #getTokenFile(int)}. Each request
+ * is framed as:
+ *
+ * <ul>
+ *   <li>the token, as a modified UTF-8 string
+ *   <li>a command, {@code "compile"} or {@code "stop"}, as a modified UTF-8 string
+ *   <li>for {@code "compile"}: the output format ({@code "json"} or {@code "lsp"}), the argument
+ *       count as an int and each javac argument as a modified UTF-8 string
+ *   <li>for {@code "compile"}: whether to discard the class files instead of writing them, as a
+ *       boolean
+ *   <li>for {@code "compile"}: the overlay count as an int and, for each overlay, the absolute path
+ *       of the overlaid source file as a modified UTF-8 string and the content to compile instead
+ *       as an int byte count followed by the UTF-8 encoded bytes
+ * </ul>
+ *
+ * The response is a status int ({@value #STATUS_OK} on success, {@value #STATUS_ERROR} otherwise)
+ * followed by the UTF-8 encoded report, or error message, up to the end of the stream.
+ */
+public class DiagnosticsDaemon {
+
+    static final int DEFAULT_PORT = 48321;
+
+    static final String COMMAND_COMPILE = "compile";
+    static final String COMMAND_STOP = "stop";
+
+    static final int STATUS_OK = 0;
+    static final int STATUS_ERROR = 1;
+
+    /** How long a client may take to send its request, so that no client can block the daemon. */
+    private static final int REQUEST_TIMEOUT_MILLIS = 10_000;
+
+    private final CompilerSession session = new CompilerSession();
+    private final String token;
+
+    /** The directory for the class files of requests that discard them, once there is one. */
+    private DiscardedClassOutput discardedClassOutput;
+
+    private DiagnosticsDaemon(String token) {
+        this.token = token;
+    }
+
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(args, Collections.singletonList("--port"));
+        int port = wrapperArgs.getInt("--port", DEFAULT_PORT);
+
+        try (ServerSocket serverSocket =
+                new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            Path tokenFile = getTokenFile(port);
+            try {
+                new DiagnosticsDaemon(writeToken(tokenFile)).serve(serverSocket);
+            } finally {
+                Files.deleteIfExists(tokenFile);
+            }
+        }
+    }
+
+    /**
+     * Returns the file that the daemon listening on the given port writes its token to, below the
+     * {@code .javac-diagnostics-wrapper} directory in the user's home directory.
+     *
+     * @param port the port of the daemon
+     * @return the token file, which exists while the daemon is running
+     */
+    static Path getTokenFile(int port) {
+        return Paths.get(
+                System.getProperty("user.home"),
+                ".javac-diagnostics-wrapper",
+                "daemon-" + port + ".token");
+    }
+
+    /**
+     * Generates a new token and writes it to the token file, which is replaced if it exists and is
+     * only readable and writable by its owner.
+     *
+     * @return the token
+     */
+    private static String writeToken(Path tokenFile) throws IOException {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        Files.deleteIfExists(tokenFile);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(
+                    tokenFile.getParent(),
+                    PosixFilePermissions.asFileAttribute(
+                            PosixFilePermissions.fromString("rwx------")));
+            Files.createFile(
+                    tokenFile,
+                    PosixFilePermissions.asFileAttribute(
+                            PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createDirectories(tokenFile.getParent());
+            File file = Files.createFile(tokenFile).toFile();
+            boolean restricted =
+                    file.setReadable(false, false)
+                            && file.setReadable(true, true)
+                            && file.setWritable(false, false)
+                            && file.setWritable(true, true);
+            if (!restricted) {
+                throw new IOException("Cannot restrict the permissions of " + tokenFile);
+            }
+        }
+        Files.write(tokenFile, token.getBytes(StandardCharsets.UTF_8));
+        return token;
+    }
+
+    /** Serves requests from the given socket until a stop request arrives. */
+    private void serve(ServerSocket serverSocket) throws IOException {
+        try {
+            boolean running = true;
+            while (running) {
+                try (Socket socket = serverSocket.accept()) {
+                    running = handle(socket);
+                } catch (IOException e) {
+                    System.err.println("Failed to serve request: " + e.getMessage());
+                }
+            }
+        } finally {
+            session.close();
+            if (discardedClassOutput != null) {
+                discardedClassOutput.close();
+            }
+        }
+    }
+
+    /**
+     * Handles a single request.
+     *
+     * @return {@code false} iff the daemon should stop
+     */
+    private boolean handle(Socket socket) throws IOException {
+        socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+        if (!MessageDigest.isEqual(
+                in.readUTF().getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8))) {
+            writeResponse(out, STATUS_ERROR, "Invalid token");
+            return true;
+        }
+        String command = in.readUTF();
+        if (command.equals(COMMAND_STOP)) {
+            out.writeInt(STATUS_OK);
+            out.flush();
+            return false;
+        }
+        if (!command.equals(COMMAND_COMPILE)) {
+            writeResponse(out, STATUS_ERROR, "Unknown command: " + command);
+            return true;
+        }
+
+        String format = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        boolean discardClassOutput = in.readBoolean();
+        int overlayCount = in.readInt();
+        Map<File, String> overlays = new LinkedHashMap<>();
+        for (int i = 0; i < overlayCount; i++) {
+            File file = new File(in.readUTF());
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            overlays.put(file, new String(content, StandardCharsets.UTF_8));
+        }
+
+        if (discardClassOutput && discardedClassOutput == null) {
+            discardedClassOutput = new DiscardedClassOutput();
+        }
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        try {
+            compile(
+                    session,
+                    args,
+                    WrapperArguments.createReporter(format, report),
+                    discardClassOutput ? discardedClassOutput : null,
+                    overlays);
+        } catch (RuntimeException e) {
+            // Bad requests must not take the warm compiler down with them.
+            writeResponse(
+                    out,
+                    STATUS_ERROR,
+                    "Compilation of " + Arrays.toString(args) + " failed: " + e.getMessage());
+            return true;
+        }
+        out.writeInt(STATUS_OK);
+        report.writeTo(out);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Compiles the arguments with the warm compiler of the session and reports the diagnostics, or,
+     * if the arguments are invalid, their problems, like {@link JsonDiagnostics} does.
+     *
+     * <p>The compilation keeps javac's standard file manager, so that javac runs all of its checks:
+     * the overlays are compiled as source file objects, and overlaid files that are not among the
+     * files to compile, e.g. files on the source path, are compiled, too.
+     *
+     * @param session the session to create the compilation task with
+     * @param args the javac arguments
+     * @param reporter the reporter to report the diagnostics with
+     * @param discardedClassOutput the directory to write the class files to instead of where the
+     *     arguments say, or {@code null} to write them as usual
+     * @param overlays the content to compile instead of the content of each file
+     */
+    static void compile(
+            CompilerSession session,
+            String[] args,
+            Reporter reporter,
+            DiscardedClassOutput discardedClassOutput,
+            Map<File, String> overlays) {
+        CompilerRunner runner =
+                new CompilerRunner().addCollector(new DiagnosticCollector()).setReporter(reporter);
+        String[] compilerArgs =
+                discardedClassOutput != null ? discardedClassOutput.apply(args) : args;
+        Map<Path, String> contents = new HashMap<>();
+        overlays.forEach((file, content) -> contents.put(file.toPath(), content));
+        CompilationTaskBuilder builder;
+        try {
+            builder = session.newTaskBuilder(compilerArgs);
+            List<String> uncompiled = getUncompiledFiles(builder, overlays.keySet());
+            if (!uncompiled.isEmpty()) {
+                List<String> allArgs = new ArrayList<>(Arrays.asList(compilerArgs));
+                allArgs.addAll(uncompiled);
+                builder = session.newTaskBuilder(allArgs.toArray(new String[0]));
+            }
+        } catch (InvalidArgumentsException e) {
+            runner.reportInvalidArguments(e);
+            return;
+        }
+        builder.setSourceContents(contents);
+        runner.run(builder);
+    }
+
+    /** Returns the paths of the given files that the builder does not compile. */
+    private static List<String> getUncompiledFiles(
+            CompilationTaskBuilder builder, Set<File> files) {
+        Set<Path> compiled = new HashSet<>();
+        builder.getFiles().forEach(file -> compiled.add(normalize(file)));
+        List<String> uncompiled = new ArrayList<>();
+        for (File file : files) {
+            if (!compiled.contains(normalize(file))) {
+                uncompiled.add(normalize(file).toString());
+            }
+        }
+        return uncompiled;
+    }
+
+    private static Path normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    private static void writeResponse(DataOutputStream out, int status, String message)
+            throws IOException {
+        out.writeInt(status);
+        out.write(message.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A temporary directory that compilations whose class files are not wanted write them to, with
+ * {@code -d}. Unlike an in-memory file manager that discards the class files, this keeps javac's
+ * standard file manager, without which javac skips some of its checks, e.g. the warning about
+ * {@code -source 8} without a boot class path.
+ *
+ * <p>The directory keeps its path, so that the file managers that a {@link
+ * io.github.eisopux.diagnostics.core.CompilerSession} keeps for the same options are reused, and is
+ * emptied before each compilation. It is not meant for concurrent compilations.
+ */
+final class DiscardedClassOutput implements Closeable {
+
+    private final Path directory;
+
+    /**
+     * Creates the temporary directory.
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    DiscardedClassOutput() throws IOException {
+        directory = Files.createTempDirectory("javac-diagnostics-classes");
+    }
+
+    /**
+     * Empties the directory and returns the javac arguments with a {@code -d} option that writes
+     * the class files to it. javac uses the last {@code -d}, so this overrides any of the
+     * arguments.
+     *
+     * @param args the javac arguments
+     * @return the arguments with the {@code -d} option appended
+     * @throws UncheckedIOException if the directory cannot be recreated
+     */
+    String[] apply(String[] args) {
+        deleteRecursively(directory);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create " + directory, e);
+        }
+        String[] result = Arrays.copyOf(args, args.length + 2);
+        result[args.length] = "-d";
+        result[args.length + 1] = directory.toString();
+        return result;
+    }
+
+    /** Deletes the directory with the class files in it. */
+    @Override
+    public void close() {
+        deleteRecursively(directory);
+    }
+
+    /** Deletes a directory with all its content, leaving behind what cannot be deleted. */
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException | UncheckedIOException e) {
+            // A temporary directory that cannot be deleted is only a nuisance.
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.collectors.IncrementalCollector;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+
+/**
+ * A prebuilt JSON or LSP diagnostics output ({@code --format json|lsp}) that only recompiles the
+ * source files that changed since the previous run with the same cache directory ({@code
+ * --cache-dir}, {@value #DEFAULT_CACHE_DIR} by default) and the files that depend on them.
+ */
+public class IncrementalDiagnostics {
+
+    static final String DEFAULT_CACHE_DIR = ".javac-diagnostics-cache";
+
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(
+                        args, Arrays.asList("--format", "--output", "--compact", "--cache-dir"));
+
+        CompilerRunner runner =
+                new CompilerRunner()
+                        .addCollector(new DiagnosticCollector())
+                        .addCollector(
+                                new IncrementalCollector(
+                                        Paths.get(
+                                                wrapperArgs.get(
+                                                        "--cache-dir", DEFAULT_CACHE_DIR))))
+                        .setParallelCollectors(true)
+                        .setReporter(wrapperArgs.createReporter("json"));
+
+        runner.run(wrapperArgs.getCompilerArgs());
+    }
+}
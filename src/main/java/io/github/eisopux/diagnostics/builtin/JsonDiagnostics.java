@@ -1,17 +1,24 @@
 package io.github.eisopux.diagnostics.builtin;
 
+import java.io.IOException;
+
 import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
 import io.github.eisopux.diagnostics.core.CompilerRunner;
-import io.github.eisopux.diagnostics.reporter.JsonReporter;
 
-/** A prebuilt JSON diagnostics output to call from the command line. */
+/**
+ * A prebuilt JSON diagnostics output to call from the command line. Its options, which come before
+ * the javac flags, are listed in the README.
+ */
 public class JsonDiagnostics {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(
+                        args, WrapperArguments.withRunnerOptions("--classpath-index"));
         CompilerRunner runner =
-                new CompilerRunner()
-                        .addCollector(new DiagnosticCollector())
-                        .setReporter(new JsonReporter());
+                wrapperArgs.configure(
+                        new CompilerRunner().addCollector(new DiagnosticCollector()), "json");
 
-        runner.run(args);
+        runner.run(wrapperArgs.getCompilerArgs());
+        wrapperArgs.writeMetrics();
     }
 }
@@ -0,0 +1,530 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+import io.github.eisopux.diagnostics.core.CompilerSession;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.reporter.LspReporter;
+
+/**
+ * A Language Server Protocol server that speaks JSON-RPC over standard input and output and pushes
+ * javac's diagnostics to the editor as {@code textDocument/publishDiagnostics} notifications, in
+ * the format of {@link LspReporter}.
+ *
+ * <p>Usage: {@code LanguageServer [--debounce MILLIS] [javac args]}. Each compilation compiles the
+ * source files given on the command line and all open documents, with the content the editor sent
+ * in {@code textDocument/didOpen} and {@code textDocument/didChange}, not the content on disk. The
+ * class files are written to a temporary directory, which is deleted on exit. Flags such as {@code
+ * -sourcepath} and {@code -classpath} let the open documents refer to the rest of the project.
+ *
+ * <p>Edits are debounced: a compilation starts once no edit has arrived for {@code --debounce}
+ * milliseconds (200 by default), or right away on {@code textDocument/didSave}. An edit that
+ * arrives while a compilation is running cancels it at the next compiler phase, so diagnostics are
+ * only ever computed for the latest content. The compiler is kept warm across compilations by a
+ * {@link CompilerSession}.
+ *
+ * <p>Documents are synchronized in full ({@code TextDocumentSyncKind.Full}). Requests other than
+ * {@code initialize} and {@code shutdown} are answered with a {@code MethodNotFound} error.
+ */
+public class LanguageServer {
+
+    private static final int DEFAULT_DEBOUNCE_MILLIS = 200;
+
+    /** The JSON-RPC error code of requests for unknown methods. */
+    private static final int METHOD_NOT_FOUND = -32601;
+
+    /** The {@code MessageType} of error messages in {@code window/logMessage}. */
+    private static final int MESSAGE_TYPE_ERROR = 1;
+
+    private final String[] compilerArgs;
+    private final int debounceMillis;
+    private final OutputStream out;
+
+    /** The content of the open documents by their URI, as sent by the editor. */
+    private final Map<String, String> documents =
+            Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Incremented on every edit. A compilation only completes while the generation it was
+     * scheduled for is current.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Runs the compilations one at a time, since the compiler session is not thread-safe. */
+    private final ScheduledExecutorService compiler = Executors.newSingleThreadScheduledExecutor();
+
+    private final CompilerSession session = new CompilerSession();
+
+    /** The directory that the class files are written to, since the editor needs none. */
+    private final DiscardedClassOutput discardedClassOutput;
+
+    /** The most recently published diagnostics by URI; only used on the compiler thread. */
+    private final Map<String, List<DiagnosticRecord>> published = new HashMap<>();
+
+    /** The compilation that waits for the debounce delay to pass, if any. */
+    private ScheduledFuture<?> pendingCompilation;
+
+    private boolean shutdown;
+
+    private LanguageServer(String[] compilerArgs, int debounceMillis, OutputStream out)
+            throws IOException {
+        this.compilerArgs = compilerArgs;
+        this.debounceMillis = debounceMillis;
+        this.out = out;
+        this.discardedClassOutput = new DiscardedClassOutput();
+    }
+
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(args, Collections.singletonList("--debounce"));
+        LanguageServer server =
+                new LanguageServer(
+                        wrapperArgs.getCompilerArgs(),
+                        wrapperArgs.getInt("--debounce", DEFAULT_DEBOUNCE_MILLIS),
+                        System.out);
+        boolean exitedAfterShutdown = server.serve(new BufferedInputStream(System.in));
+        System.exit(exitedAfterShutdown ? 0 : 1);
+    }
+
+    /**
+     * Serves messages until the {@code exit} notification or the end of the input.
+     *
+     * @return whether the client requested a shutdown before exiting
+     */
+    private boolean serve(InputStream in) throws IOException {
+        try {
+            String message;
+            while ((message = readMessage(in)) != null) {
+                JsonObject request;
+                try {
+                    request = JsonParser.parseString(message).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    logError("Malformed message: " + e.getMessage());
+                    continue;
+                }
+                if (!request.has("method")) {
+                    // A response to a request of the server; the server sends none.
+                    continue;
+                }
+                String method = request.get("method").getAsString();
+                if (method.equals("exit")) {
+                    return shutdown;
+                }
+                try {
+                    handle(method, request.get("id"), request.getAsJsonObject("params"));
+                } catch (RuntimeException e) {
+                    logError("Failed to handle " + method + ": " + e);
+                }
+            }
+            return false;
+        } finally {
+            compiler.shutdownNow();
+            try {
+                compiler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            session.close();
+            discardedClassOutput.close();
+        }
+    }
+
+    /** Handles a request, which has an id, or a notification, which has none. */
+    private void handle(String method, JsonElement id, JsonObject params) throws IOException {
+        switch (method) {
+            case "initialize":
+                respond(id, LanguageServer::writeCapabilities);
+                break;
+            case "initialized":
+                scheduleCompilation(0);
+                break;
+            case "shutdown":
+                shutdown = true;
+                respond(id, JsonWriter::nullValue);
+                break;
+            case "textDocument/didOpen":
+                {
+                    JsonObject document = params.getAsJsonObject("textDocument");
+                    documents.put(
+                            document.get("uri").getAsString(),
+                            document.get("text").getAsString());
+                    scheduleCompilation(0);
+                    break;
+                }
+            case "textDocument/didChange":
+                {
+                    String uri = params.getAsJsonObject("textDocument").get("uri").getAsString();
+                    JsonArray changes = params.getAsJsonArray("contentChanges");
+                    if (changes.size() > 0) {
+                        // With full synchronization, the last change holds the whole content.
+                        JsonObject change = changes.get(changes.size() - 1).getAsJsonObject();
+                        documents.put(uri, change.get("text").getAsString());
+                    }
+                    scheduleCompilation(debounceMillis);
+                    break;
+                }
+            case "textDocument/didSave":
+                scheduleCompilation(0);
+                break;
+            case "textDocument/didClose":
+                documents.remove(params.getAsJsonObject("textDocument").get("uri").getAsString());
+                scheduleCompilation(0);
+                break;
+            default:
+                if (id != null) {
+                    respondError(id, METHOD_NOT_FOUND, "Unsupported method: " + method);
+                }
+        }
+    }
+
+    /**
+     * Schedules a compilation of the current documents after the given delay and cancels the
+     * pending and the running compilations, which would report outdated diagnostics.
+     */
+    private void scheduleCompilation(long delayMillis) {
+        long scheduled = generation.incrementAndGet();
+        if (pendingCompilation != null) {
+            pendingCompilation.cancel(false);
+        }
+        pendingCompilation =
+                compiler.schedule(() -> compile(scheduled), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Compiles the documents and publishes the diagnostics, unless a newer edit arrives. */
+    private void compile(long scheduled) {
+        try {
+            compileAndPublish(scheduled);
+        } catch (IOException e) {
+            // The client is gone; the server stops once its input ends.
+        }
+    }
+
+    private void compileAndPublish(long scheduled) throws IOException {
+        if (generation.get() != scheduled) {
+            return;
+        }
+        Map<String, String> snapshot;
+        synchronized (documents) {
+            snapshot = new LinkedHashMap<>(documents);
+        }
+        Map<Path, String> documentUris = new HashMap<>();
+        Map<Path, String> contents = new HashMap<>();
+        for (Map.Entry<String, String> document : snapshot.entrySet()) {
+            Path path = toPath(document.getKey());
+            if (path != null) {
+                documentUris.put(path, document.getKey());
+                contents.put(path, document.getValue());
+            }
+        }
+
+        CompilationReportData[] reportData = new CompilationReportData[1];
+        try {
+            CompilationTaskBuilder builder =
+                    session.newTaskBuilder(
+                            discardedClassOutput.apply(getArgs(documentUris.keySet())));
+            // The open documents are among the files to compile, see getArgs.
+            builder.setSourceContents(contents);
+            builder.addTaskListener(new CancellationListener(scheduled));
+            new CompilerRunner()
+                    .addCollector(new DiagnosticCollector())
+                    .setReporter(data -> reportData[0] = data)
+                    .run(builder);
+        } catch (RuntimeException e) {
+            if (generation.get() == scheduled) {
+                logError("Compilation failed: " + e);
+            }
+            return;
+        }
+        if (generation.get() != scheduled) {
+            return;
+        }
+
+        Map<String, List<DiagnosticRecord>> diagnostics = new LinkedHashMap<>();
+        snapshot.keySet().forEach(uri -> diagnostics.put(uri, new ArrayList<>()));
+        for (DiagnosticRecord diag :
+                reportData[0].getTypedSection(
+                        "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap)) {
+            String uri = diag.getSource();
+            Path path = toPath(uri);
+            if (path == null) {
+                // Notes about the compilation as a whole, e.g. on implicitly compiled files, have
+                // no source file to show them in.
+                continue;
+            }
+            if (documentUris.containsKey(path)) {
+                // Report the URI the way the editor spelled it.
+                uri = documentUris.get(path);
+            }
+            diagnostics.computeIfAbsent(uri, u -> new ArrayList<>()).add(diag);
+        }
+        // Clear the diagnostics of URIs that no longer have any.
+        for (String uri : published.keySet()) {
+            diagnostics.putIfAbsent(uri, Collections.emptyList());
+        }
+        for (Map.Entry<String, List<DiagnosticRecord>> entry : diagnostics.entrySet()) {
+            List<DiagnosticRecord> previous = published.get(entry.getKey());
+            if (entry.getValue().equals(previous)
+                    || (previous == null && entry.getValue().isEmpty())) {
+                continue;
+            }
+            publishDiagnostics(entry.getKey(), entry.getValue());
+            if (entry.getValue().isEmpty()) {
+                published.remove(entry.getKey());
+            } else {
+                published.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the javac arguments followed by the open Java source files that are not among them.
+     * Documents that have never been saved cannot be compiled, since javac only accepts existing
+     * files.
+     */
+    private String[] getArgs(Set<Path> documentPaths) {
+        Set<Path> argumentPaths = new HashSet<>();
+        for (String argument : compilerArgs) {
+            try {
+                argumentPaths.add(Paths.get(argument).toAbsolutePath().normalize());
+            } catch (InvalidPathException e) {
+                // Not a file, e.g. an option value with a path separator.
+            }
+        }
+        List<String> args = new ArrayList<>(Arrays.asList(compilerArgs));
+        for (Path path : documentPaths) {
+            if (path.toString().endsWith(".java")
+                    && Files.isRegularFile(path)
+                    && !argumentPaths.contains(path)) {
+                args.add(path.toString());
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** Returns the normalized path of a {@code file:} URI, or null for other URIs. */
+    private static Path toPath(String uri) {
+        try {
+            URI parsed = new URI(uri);
+            return "file".equals(parsed.getScheme())
+                    ? Paths.get(parsed).toAbsolutePath().normalize()
+                    : null;
+        } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static void writeCapabilities(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("capabilities");
+        writer.beginObject();
+        writer.name("textDocumentSync");
+        writer.beginObject();
+        writer.name("openClose").value(true);
+        writer.name("change").value(1); // TextDocumentSyncKind.Full
+        writer.name("save");
+        writer.beginObject();
+        writer.name("includeText").value(false);
+        writer.endObject();
+        writer.endObject();
+        writer.endObject();
+        writer.name("serverInfo");
+        writer.beginObject();
+        writer.name("name").value("javac-diagnostics-wrapper");
+        writer.endObject();
+        writer.endObject();
+    }
+
+    private void publishDiagnostics(String uri, List<DiagnosticRecord> diagnostics)
+            throws IOException {
+        notify(
+                "textDocument/publishDiagnostics",
+                writer -> {
+                    writer.beginObject();
+                    writer.name("uri").value(uri);
+                    writer.name("diagnostics");
+                    LspReporter.writeLspDiagnostics(writer, diagnostics);
+                    writer.endObject();
+                });
+    }
+
+    /** Logs an error in the editor, as the standard streams belong to the protocol. */
+    private void logError(String message) throws IOException {
+        notify(
+                "window/logMessage",
+                writer -> {
+                    writer.beginObject();
+                    writer.name("type").value(MESSAGE_TYPE_ERROR);
+                    writer.name("message").value(message);
+                    writer.endObject();
+                });
+    }
+
+    private void notify(String method, JsonValue params) throws IOException {
+        writeMessage(
+                writer -> {
+                    writer.name("method").value(method);
+                    writer.name("params");
+                    params.write(writer);
+                });
+    }
+
+    private void respond(JsonElement id, JsonValue result) throws IOException {
+        writeMessage(
+                writer -> {
+                    writer.name("id").jsonValue(String.valueOf(id));
+                    writer.name("result");
+                    result.write(writer);
+                });
+    }
+
+    private void respondError(JsonElement id, int code, String message) throws IOException {
+        writeMessage(
+                writer -> {
+                    writer.name("id").jsonValue(String.valueOf(id));
+                    writer.name("error");
+                    writer.beginObject();
+                    writer.name("code").value(code);
+                    writer.name("message").value(message);
+                    writer.endObject();
+                });
+    }
+
+    /** Writes a JSON-RPC message with the given members, framed by its content length. */
+    private void writeMessage(JsonValue members) throws IOException {
+        StringWriter content = new StringWriter();
+        JsonWriter writer = new JsonWriter(content);
+        writer.beginObject();
+        writer.name("jsonrpc").value("2.0");
+        members.write(writer);
+        writer.endObject();
+        byte[] body = content.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] header =
+                ("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        synchronized (out) {
+            out.write(header);
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads the content of the next JSON-RPC message.
+     *
+     * @return the content, or {@code null} at the end of the input
+     */
+    private static String readMessage(InputStream in) throws IOException {
+        int contentLength = -1;
+        String header;
+        while ((header = readHeader(in)) != null && !header.isEmpty()) {
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+        if (header == null) {
+            return null;
+        }
+        if (contentLength < 0) {
+            throw new IOException("Message without Content-Length header");
+        }
+        byte[] content = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            int n = in.read(content, read, contentLength - read);
+            if (n < 0) {
+                return null;
+            }
+            read += n;
+        }
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a header line without its line terminator; the empty line ends the headers.
+     *
+     * @return the header line, or {@code null} at the end of the input
+     */
+    private static String readHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                return null;
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    /** Writes a JSON value. */
+    private interface JsonValue {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    /** Cancels a compilation at the next compiler phase once a newer edit has arrived. */
+    private final class CancellationListener implements TaskListener {
+        private final long scheduled;
+
+        CancellationListener(long scheduled) {
+            this.scheduled = scheduled;
+        }
+
+        @Override
+        public void started(TaskEvent e) {
+            checkCurrent();
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            checkCurrent();
+        }
+
+        private void checkCurrent() {
+            if (generation.get() != scheduled) {
+                throw new CancellationException("Superseded by a newer edit");
+            }
+        }
+    }
+}
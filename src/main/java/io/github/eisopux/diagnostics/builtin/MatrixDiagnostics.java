@@ -0,0 +1,53 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+
+/**
+ * A prebuilt JSON or LSP diagnostics output that compiles the same arguments once for each {@code
+ * --variant NAME=OPTIONS}, concurrently, with the variant's whitespace-separated javac options
+ * appended, e.g. {@code --variant "java8=--release 8"}. The variants share the source files they
+ * read and write their class files, generated sources and headers to temporary directories, which
+ * are deleted afterwards. Each diagnostic is tagged with its variant, the {@code "variants"}
+ * section summarizes each variant and the {@code "variantDifferences"} section lists the
+ * diagnostics that not all variants report.
+ *
+ * <p>The diagnostic options apply to the merged diagnostics of all variants, and the
+ * early-termination limits to each variant. The options are listed in the README.
+ */
+public class MatrixDiagnostics {
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(
+                        args, WrapperArguments.withRunnerOptions("--format", "--variant"));
+        List<String> variants = wrapperArgs.getAll("--variant");
+        if (variants.isEmpty()) {
+            throw new IllegalArgumentException("Expected at least one --variant NAME=OPTIONS");
+        }
+
+        CompilerRunner runner =
+                wrapperArgs.configure(
+                        new CompilerRunner().addCollector(DiagnosticCollector::new), "json");
+        for (String variant : variants) {
+            int separator = variant.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(
+                        "Expected a variant of the form NAME=OPTIONS: " + variant);
+            }
+            String options = variant.substring(separator + 1).trim();
+            runner.addVariant(
+                    variant.substring(0, separator),
+                    options.isEmpty()
+                            ? Collections.emptyList()
+                            : Arrays.asList(options.split("\\s+")));
+        }
+
+        runner.run(wrapperArgs.getCompilerArgs());
+        wrapperArgs.writeMetrics();
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.collectors.PerformanceCollector;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+
+/**
+ * A prebuilt JSON or LSP diagnostics output ({@code --format json|lsp}) that additionally reports
+ * where javac spent its time and memory, per phase, annotation processor and source file, and how
+ * long each collector took in the {@code "collectors"} section.
+ */
+public class PerformanceDiagnostics {
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(args, Arrays.asList("--format", "--output", "--compact"));
+
+        CompilerRunner runner =
+                new CompilerRunner()
+                        .addCollector(new PerformanceCollector())
+                        .addCollector(new DiagnosticCollector())
+                        .setParallelCollectors(true)
+                        .setCollectorTimes(true)
+                        .setReporter(wrapperArgs.createReporter("json"));
+
+        runner.run(wrapperArgs.getCompilerArgs());
+    }
+}
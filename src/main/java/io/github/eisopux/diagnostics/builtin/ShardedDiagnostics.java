@@ -0,0 +1,34 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.IOException;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+
+/**
+ * A prebuilt JSON or LSP diagnostics output that compiles the source files in {@code --shards}
+ * concurrent compilation tasks, one per available processor by default, and merges their reports.
+ * The diagnostic options and early-termination limits apply to the merged diagnostics of all
+ * shards, and the shards share the class path index. The options are listed in the README.
+ */
+public class ShardedDiagnostics {
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(
+                        args,
+                        WrapperArguments.withRunnerOptions(
+                                "--format", "--shards", "--classpath-index"));
+        CompilerRunner runner =
+                wrapperArgs.configure(
+                        new CompilerRunner()
+                                .addCollector(DiagnosticCollector::new)
+                                .setShardCount(
+                                        wrapperArgs.getInt(
+                                                "--shards",
+                                                Runtime.getRuntime().availableProcessors())),
+                        "json");
+
+        runner.run(wrapperArgs.getCompilerArgs());
+        wrapperArgs.writeMetrics();
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import io.github.eisopux.diagnostics.collectors.StreamingDiagnosticCollector;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+import io.github.eisopux.diagnostics.core.Reporter;
+import io.github.eisopux.diagnostics.core.StreamingReporter;
+
+/**
+ * A prebuilt diagnostics output that emits each diagnostic while javac is still running, as NDJSON
+ * ({@code --format json}, the default) or as LSP {@code textDocument/publishDiagnostics}
+ * notifications ({@code --format lsp}), one per line, to standard output or to {@code --output}.
+ */
+public class StreamingDiagnostics {
+    public static void main(String[] args) throws IOException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(args, Arrays.asList("--format", "--output"));
+        Reporter reporter = wrapperArgs.createReporter("json");
+        if (!(reporter instanceof StreamingReporter)) {
+            throw new IllegalArgumentException("The output format does not support streaming");
+        }
+        StreamingReporter streamingReporter = (StreamingReporter) reporter;
+        // Also before the arguments are checked, which reports invalid ones without compiling.
+        streamingReporter.startStreaming();
+
+        CompilerRunner runner =
+                new CompilerRunner()
+                        .addCollector(new StreamingDiagnosticCollector(streamingReporter))
+                        .setReporter(streamingReporter);
+
+        runner.run(wrapperArgs.getCompilerArgs());
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.github.eisopux.diagnostics.collectors.DiagnosticCollector;
+import io.github.eisopux.diagnostics.collectors.IncrementalCollector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+import io.github.eisopux.diagnostics.core.CompilerSession;
+import io.github.eisopux.diagnostics.core.InvalidArgumentsException;
+import io.github.eisopux.diagnostics.core.Reporter;
+import io.github.eisopux.diagnostics.core.SourceWatcher;
+import io.github.eisopux.diagnostics.stages.DiagnosticDelta;
+
+/**
+ * A prebuilt JSON or LSP diagnostics output ({@code --format json|lsp}) that keeps running and
+ * writes a report to standard output whenever the source files change, until it is terminated.
+ *
+ * <p>The source roots of the source files are watched with a {@link SourceWatcher}, and changes
+ * that arrive within {@code --quiet-period} milliseconds ({@value #DEFAULT_QUIET_PERIOD_MILLIS} by
+ * default) of each other are compiled together. Each compilation reuses the warm compiler of a
+ * {@link CompilerSession}, and, like {@link IncrementalDiagnostics}, only recompiles the changed
+ * files and the files that depend on them, with its cache in {@code --cache-dir}. Each report only
+ * has the diagnostics that were added and removed since the previous one, see {@link
+ * DiagnosticDelta}; the first report has all diagnostics. With {@code --format lsp}, the report
+ * instead has all diagnostics of each file whose diagnostics changed, and an empty array for each
+ * file whose diagnostics were all removed, since LSP clients replace all diagnostics of a file at
+ * once. Directories and patterns in the arguments are expanded anew for every compilation, so new
+ * source files below a watched root are picked up.
+ *
+ * <p>Invalid arguments are reported as diagnostics; if the first arguments are invalid, there are
+ * no source files to watch, and the watch ends. A compilation that fails otherwise is reported as
+ * an {@code "error"} section with its {@code "message"}.
+ */
+public class WatchDiagnostics {
+
+    static final int DEFAULT_QUIET_PERIOD_MILLIS = 200;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        WrapperArguments wrapperArgs =
+                WrapperArguments.parse(
+                        args,
+                        Arrays.asList("--format", "--compact", "--cache-dir", "--quiet-period"));
+        String[] compilerArgs = wrapperArgs.getCompilerArgs();
+        Path cacheDirectory =
+                Paths.get(
+                        wrapperArgs.get("--cache-dir", IncrementalDiagnostics.DEFAULT_CACHE_DIR));
+        int quietPeriod = wrapperArgs.getInt("--quiet-period", DEFAULT_QUIET_PERIOD_MILLIS);
+        Reporter reporter = wrapperArgs.createReporter("json");
+        DiagnosticDelta delta =
+                new DiagnosticDelta()
+                        .setWholeFiles(wrapperArgs.get("--format", "json").equals("lsp"));
+
+        try (CompilerSession session = new CompilerSession()) {
+            CompilationTaskBuilder builder;
+            try {
+                builder = session.newTaskBuilder(compilerArgs);
+            } catch (InvalidArgumentsException e) {
+                newRunner(cacheDirectory, delta, reporter).reportInvalidArguments(e);
+                return;
+            }
+            try (SourceWatcher watcher = new SourceWatcher(builder.getFiles())) {
+                while (true) {
+                    CompilerRunner runner = newRunner(cacheDirectory, delta, reporter);
+                    try {
+                        if (builder == null) {
+                            builder = session.newTaskBuilder(compilerArgs);
+                        }
+                        runner.run(builder);
+                    } catch (InvalidArgumentsException e) {
+                        // E.g. a source file named on the command line was deleted.
+                        runner.reportInvalidArguments(e);
+                    } catch (RuntimeException e) {
+                        // The watch goes on; the next change may fix the compilation.
+                        reportError(reporter, e);
+                    }
+                    watcher.awaitChanges(quietPeriod, TimeUnit.MILLISECONDS);
+                    builder = null;
+                }
+            }
+        }
+    }
+
+    private static CompilerRunner newRunner(
+            Path cacheDirectory, DiagnosticDelta delta, Reporter reporter) {
+        return new CompilerRunner()
+                .addCollector(new DiagnosticCollector())
+                .addCollector(new IncrementalCollector(cacheDirectory))
+                .addStage(delta)
+                .setParallelCollectors(true)
+                .setReporter(reporter);
+    }
+
+    /** Reports a compilation that failed with an exception as an {@code "error"} section. */
+    private static void reportError(Reporter reporter, RuntimeException e) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("message", e.toString());
+        CompilationReportData reportData = new CompilationReportData();
+        reportData.putSection("error", Collections.singletonList(error));
+        reporter.generateReport(reportData);
+    }
+}
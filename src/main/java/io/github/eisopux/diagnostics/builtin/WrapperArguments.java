@@ -0,0 +1,414 @@
+package io.github.eisopux.diagnostics.builtin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.github.eisopux.diagnostics.collectors.DiffCollector;
+import io.github.eisopux.diagnostics.collectors.ProcessorCollector;
+import io.github.eisopux.diagnostics.collectors.SourceMetricsCollector;
+import io.github.eisopux.diagnostics.core.BatchReporter;
+import io.github.eisopux.diagnostics.core.ChangedLines;
+import io.github.eisopux.diagnostics.core.ClasspathIndex;
+import io.github.eisopux.diagnostics.core.Collector;
+import io.github.eisopux.diagnostics.core.CompilerRunner;
+import io.github.eisopux.diagnostics.core.ReportStage;
+import io.github.eisopux.diagnostics.core.Reporter;
+import io.github.eisopux.diagnostics.core.RunMetrics;
+import io.github.eisopux.diagnostics.core.TerminationPolicy;
+import io.github.eisopux.diagnostics.reporter.BinaryReporter;
+import io.github.eisopux.diagnostics.reporter.JsonReporter;
+import io.github.eisopux.diagnostics.reporter.LspReporter;
+import io.github.eisopux.diagnostics.stages.BaselineFilter;
+import io.github.eisopux.diagnostics.stages.BaselineWriter;
+import io.github.eisopux.diagnostics.stages.DiagnosticAggregator;
+
+/**
+ * WrapperArguments separates the options meant for a builtin entry point from the javac arguments
+ * that follow them.
+ *
+ * <p>Wrapper options must come first. Parsing stops at the first argument that is not one of the
+ * entry point's known options, or after an explicit {@code --}; everything from there on is handed
+ * to javac unchanged. A value option may be given several times; {@link #get(String, String)}
+ * returns its last value and {@link #getAll(String)} all of them.
+ *
+ * <p>All options of the builtin entry points are registered here, so that an option means the same
+ * in every entry point that accepts it. The options of each entry point are described in the
+ * README.
+ */
+final class WrapperArguments {
+
+    /** The registered options that take a value. */
+    private static final Set<String> VALUE_OPTIONS =
+            new HashSet<>(
+                    Arrays.asList(
+                            "--format",
+                            "--output",
+                            "--shards",
+                            "--jobs",
+                            "--variant",
+                            "--cache-dir",
+                            "--quiet-period",
+                            "--port",
+                            "--overlay",
+                            "--debounce",
+                            "--max-per-code",
+                            "--baseline",
+                            "--write-baseline",
+                            "--metrics-file",
+                            "--diff",
+                            "--max-errors",
+                            "--stop-on",
+                            "--time-budget",
+                            "--classpath-index"));
+
+    /** The registered options that take no value. */
+    private static final Set<String> FLAG_OPTIONS =
+            new HashSet<>(
+                    Arrays.asList(
+                            "--compact",
+                            "--deduplicate",
+                            "--summary",
+                            "--metrics",
+                            "--source-metrics",
+                            "--processor-attribution",
+                            "--stop",
+                            "--discard-class-output"));
+
+    /**
+     * The options that {@link #configure(CompilerRunner, String)} applies, except for {@code
+     * --format} and {@code --classpath-index}, which not every entry point that runs a
+     * CompilerRunner supports.
+     */
+    private static final List<String> RUNNER_OPTIONS =
+            Arrays.asList(
+                    "--output",
+                    "--compact",
+                    "--deduplicate",
+                    "--max-per-code",
+                    "--summary",
+                    "--baseline",
+                    "--write-baseline",
+                    "--metrics",
+                    "--metrics-file",
+                    "--diff",
+                    "--source-metrics",
+                    "--processor-attribution",
+                    "--max-errors",
+                    "--stop-on",
+                    "--time-budget");
+
+    private final Map<String, List<String>> values;
+    private final Set<String> flags;
+    private final String[] compilerArgs;
+    private RunMetrics metrics;
+
+    private WrapperArguments(
+            Map<String, List<String>> values, Set<String> flags, String[] compilerArgs) {
+        this.values = values;
+        this.flags = flags;
+        this.compilerArgs = compilerArgs;
+    }
+
+    /**
+     * Returns the options that {@link #configure(CompilerRunner, String)} applies, together with
+     * the given options of the entry point.
+     *
+     * @param options further options of the entry point, e.g. {@code --format}
+     * @return the options to {@link #parse(String[], Collection) parse}
+     */
+    static List<String> withRunnerOptions(String... options) {
+        List<String> all = new ArrayList<>(RUNNER_OPTIONS);
+        all.addAll(Arrays.asList(options));
+        return all;
+    }
+
+    /**
+     * Parses the leading wrapper options of {@code args}.
+     *
+     * @param args the command-line arguments of the entry point
+     * @param options the registered options that the entry point accepts
+     * @return the parsed wrapper options and the remaining javac arguments
+     * @throws IllegalArgumentException if an option is not registered or a value option is missing
+     *     its value
+     */
+    static WrapperArguments parse(String[] args, Collection<String> options) {
+        for (String option : options) {
+            if (!VALUE_OPTIONS.contains(option) && !FLAG_OPTIONS.contains(option)) {
+                throw new IllegalArgumentException("Unregistered wrapper option " + option);
+            }
+        }
+        Map<String, List<String>> values = new HashMap<>();
+        Set<String> flags = new HashSet<>();
+        int i = 0;
+        while (i < args.length) {
+            String argument = args[i];
+            if (argument.equals("--")) {
+                i++;
+                break;
+            } else if (!options.contains(argument)) {
+                break;
+            } else if (FLAG_OPTIONS.contains(argument)) {
+                flags.add(argument);
+                i++;
+            } else {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + argument);
+                }
+                values.computeIfAbsent(argument, option -> new ArrayList<>()).add(args[i + 1]);
+                i += 2;
+            }
+        }
+        return new WrapperArguments(values, flags, Arrays.copyOfRange(args, i, args.length));
+    }
+
+    String get(String option, String defaultValue) {
+        List<String> optionValues = values.get(option);
+        return optionValues != null ? optionValues.get(optionValues.size() - 1) : defaultValue;
+    }
+
+    List<String> getAll(String option) {
+        return Collections.unmodifiableList(values.getOrDefault(option, Collections.emptyList()));
+    }
+
+    int getInt(String option, int defaultValue) {
+        String value = get(option, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number for " + option + ": " + value, e);
+        }
+    }
+
+    boolean has(String flag) {
+        return flags.contains(flag);
+    }
+
+    String[] getCompilerArgs() {
+        return compilerArgs.clone();
+    }
+
+    /**
+     * Returns the RunMetrics that the {@code --metrics} and {@code --metrics-file} options ask for,
+     * the same instance on every call.
+     *
+     * @return the metrics to record, or {@code null} if neither option was given
+     */
+    RunMetrics getMetrics() {
+        if (metrics == null && (has("--metrics") || get("--metrics-file", null) != null)) {
+            metrics = new RunMetrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * Configures a runner with the reporter, collectors, stages, termination policy, class path
+     * index and metrics that the options ask for, as far as the entry point accepts them. The
+     * builtin collectors declare their dependencies, so they are finished concurrently.
+     *
+     * @param runner the runner to configure
+     * @param defaultFormat the format to use without {@code --format}
+     * @return the configured runner
+     * @throws IOException if the output file cannot be opened or the diff cannot be read
+     * @throws IllegalArgumentException if an option has an invalid value
+     */
+    CompilerRunner configure(CompilerRunner runner, String defaultFormat) throws IOException {
+        runner.setParallelCollectors(true)
+                .setMetrics(getMetrics())
+                .setMetricsSection(has("--metrics"))
+                .setTerminationPolicy(createTerminationPolicy())
+                .setClasspathIndex(createClasspathIndex())
+                .setReporter(createReporter(defaultFormat));
+        createCollectors().forEach(runner::addCollector);
+        createStages().forEach(runner::addStage);
+        return runner;
+    }
+
+    /**
+     * Completes the metrics once the report is written: counts the bytes of the {@code --output}
+     * file and writes the metrics to the {@code --metrics-file} in the Prometheus text format.
+     * Does nothing without metrics.
+     *
+     * @throws IOException if the output file cannot be read or the metrics file cannot be written
+     */
+    void writeMetrics() throws IOException {
+        if (getMetrics() == null) {
+            return;
+        }
+        String output = get("--output", null);
+        if (output != null) {
+            metrics.add(RunMetrics.Counter.REPORT_BYTES, Files.size(Paths.get(output)));
+        }
+        String metricsFile = get("--metrics-file", null);
+        if (metricsFile != null) {
+            metrics.writePrometheus(Paths.get(metricsFile));
+        }
+    }
+
+    /**
+     * Creates the Reporter selected by the {@code --format}, {@code --output} and {@code --compact}
+     * options, as far as the entry point accepts them. Without {@code --output}, the report is
+     * written to {@link System#out}, counting its bytes if there are {@link #getMetrics() metrics}.
+     * The {@code binary} format is never indented.
+     *
+     * @param defaultFormat the format to use without {@code --format}
+     * @return the reporter for the options
+     * @throws IOException if the output file cannot be opened
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    BatchReporter createReporter(String defaultFormat) throws IOException {
+        String format = get("--format", defaultFormat);
+        String output = get("--output", null);
+        boolean prettyPrinting = !has("--compact");
+        OutputStream out = getMetrics() != null ? metrics.countBytes(System.out) : System.out;
+        switch (format) {
+            case "json":
+                return (output != null
+                                ? new JsonReporter(Paths.get(output))
+                                : new JsonReporter(out))
+                        .setPrettyPrinting(prettyPrinting);
+            case "lsp":
+                return (output != null ? new LspReporter(Paths.get(output)) : new LspReporter(out))
+                        .setPrettyPrinting(prettyPrinting);
+            case "binary":
+                return output != null
+                        ? new BinaryReporter(Paths.get(output))
+                        : new BinaryReporter(out);
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + format);
+        }
+    }
+
+    /**
+     * Creates the factories of the collectors selected by the {@code --diff}, {@code
+     * --source-metrics} and {@code --processor-attribution} options, which the entry point adds to
+     * its own collectors. The diff or list of changed files is read right away, with its files
+     * relative to the working directory.
+     *
+     * @return the collector factories for the options, empty if none of them was given
+     * @throws IOException if the diff cannot be read
+     */
+    List<Supplier<? extends Collector>> createCollectors() throws IOException {
+        List<Supplier<? extends Collector>> collectors = new ArrayList<>();
+        String diff = get("--diff", null);
+        if (diff != null) {
+            ChangedLines changedLines = ChangedLines.read(Paths.get(diff), Paths.get(""));
+            collectors.add(() -> new DiffCollector(changedLines));
+        }
+        if (has("--source-metrics")) {
+            collectors.add(SourceMetricsCollector::new);
+        }
+        if (has("--processor-attribution")) {
+            collectors.add(ProcessorCollector::new);
+        }
+        return collectors;
+    }
+
+    /**
+     * Creates the ClasspathIndex that the {@code --classpath-index} option asks for, which stores
+     * its files in the given directory.
+     *
+     * @return the class path index, or {@code null} if the option was not given
+     */
+    ClasspathIndex createClasspathIndex() {
+        String directory = get("--classpath-index", null);
+        return directory != null ? new ClasspathIndex(Paths.get(directory)) : null;
+    }
+
+    /**
+     * Creates the TerminationPolicy selected by the {@code --max-errors}, {@code --stop-on} and
+     * {@code --time-budget} options, as far as the entry point accepts them. {@code --stop-on} may
+     * be given several times, and {@code --time-budget} is in seconds.
+     *
+     * @return the policy for the options, or {@code null} if none of them was given
+     * @throws IllegalArgumentException if the value of {@code --max-errors} or {@code
+     *     --time-budget} is not a positive number
+     */
+    TerminationPolicy createTerminationPolicy() {
+        List<String> stopCodes = getAll("--stop-on");
+        if (get("--max-errors", null) == null
+                && stopCodes.isEmpty()
+                && get("--time-budget", null) == null) {
+            return null;
+        }
+        TerminationPolicy policy = new TerminationPolicy();
+        if (get("--max-errors", null) != null) {
+            policy.setMaxErrors(getInt("--max-errors", 0));
+        }
+        stopCodes.forEach(policy::addStopCode);
+        if (get("--time-budget", null) != null) {
+            policy.setTimeBudget(getInt("--time-budget", 0), TimeUnit.SECONDS);
+        }
+        return policy;
+    }
+
+    /**
+     * Creates the ReportStages selected by the {@code --write-baseline}, {@code --baseline},
+     * {@code --deduplicate}, {@code --max-per-code} and {@code --summary} options, as far as the
+     * entry point accepts them, in this order: the baseline is written from all diagnostics, and
+     * only the new diagnostics are aggregated.
+     *
+     * @return the stages for the options, empty if none of them was given
+     * @throws IllegalArgumentException if both {@code --write-baseline} and {@code --baseline} are
+     *     given, or if the value of {@code --max-per-code} is not a non-negative number
+     */
+    List<ReportStage> createStages() {
+        String writeBaseline = get("--write-baseline", null);
+        String baseline = get("--baseline", null);
+        if (writeBaseline != null && baseline != null) {
+            throw new IllegalArgumentException(
+                    "--write-baseline and --baseline cannot be combined");
+        }
+        List<ReportStage> stages = new ArrayList<>();
+        if (writeBaseline != null) {
+            stages.add(new BaselineWriter(Paths.get(writeBaseline)));
+        }
+        if (baseline != null) {
+            stages.add(new BaselineFilter(Paths.get(baseline)));
+        }
+        if (has("--deduplicate") || has("--summary") || get("--max-per-code", null) != null) {
+            stages.add(
+                    new DiagnosticAggregator()
+                            .setDeduplicate(has("--deduplicate"))
+                            .setMaxPerFileAndCode(getInt("--max-per-code", Integer.MAX_VALUE))
+                            .setSummary(has("--summary")));
+        }
+        return stages;
+    }
+
+    /**
+     * Creates the Reporter for one of the builtin output formats.
+     *
+     * @param format {@code "json"}, {@code "lsp"} or {@code "binary"}
+     * @param out the stream the reporter writes to
+     * @return the reporter for the format
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    static Reporter createReporter(String format, OutputStream out) {
+        switch (format) {
+            case "json":
+                return new JsonReporter(out);
+            case "lsp":
+                return new LspReporter(out);
+            case "binary":
+                return new BinaryReporter(out);
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + format);
+        }
+    }
+}
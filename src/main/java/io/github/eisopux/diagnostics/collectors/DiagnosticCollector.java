@@ -1,8 +1,6 @@
 package io.github.eisopux.diagnostics.collectors;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.tools.Diagnostic;
@@ -11,6 +9,8 @@ import javax.tools.JavaFileObject;
 import io.github.eisopux.diagnostics.core.Collector;
 import io.github.eisopux.diagnostics.core.CompilationReportData;
 import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.LineIndex;
 
 /**
  * A concrete implementation of {@link Collector} that wraps a {@link
@@ -30,28 +30,12 @@ public class DiagnosticCollector implements Collector {
         List<Diagnostic<? extends JavaFileObject>> finalDiagnostics =
                 diagCollector.getDiagnostics();
 
-        List<Map<String, Object>> details =
+        LineIndex.Cache lineIndexes = new LineIndex.Cache();
+        List<DiagnosticRecord> details =
                 finalDiagnostics.stream()
-                        .map(
-                                diag -> {
-                                    Map<String, Object> diagMap = new HashMap<>();
-                                    diagMap.put("message", diag.getMessage(null));
-                                    diagMap.put("lineNumber", diag.getLineNumber());
-                                    diagMap.put("columnNumber", diag.getColumnNumber());
-                                    diagMap.put("kind", diag.getKind());
-                                    diagMap.put("code", diag.getCode());
-                                    diagMap.put(
-                                            "source",
-                                            diag.getSource() != null
-                                                    ? diag.getSource().toUri().toString()
-                                                    : "unknown");
-                                    diagMap.put("position", diag.getPosition());
-                                    diagMap.put("startPosition", diag.getStartPosition());
-                                    diagMap.put("endPosition", diag.getEndPosition());
-                                    return diagMap;
-                                })
+                        .map(diag -> DiagnosticRecord.of(diag, lineIndexes))
                         .collect(Collectors.toList());
 
-        reportData.putSection("diagnostics", details);
+        reportData.putTypedSection("diagnostics", DiagnosticRecord.class, details);
     }
 }
@@ -0,0 +1,78 @@
+package io.github.eisopux.diagnostics.collectors;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import io.github.eisopux.diagnostics.core.ChangedLines;
+import io.github.eisopux.diagnostics.core.Collector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+
+/**
+ * A {@link Collector} that limits a compilation to a change, e.g. of a pull request. It restricts
+ * the compilation to the source files that the change touches, keeping all other source files
+ * available to them through the source path, and removes the diagnostics that are not on {@link
+ * ChangedLines changed lines} from the {@code "diagnostics"} section. The cost of a check thus
+ * grows with the size of the change rather than the size of the code base.
+ *
+ * <p>Since unchanged files are not compiled, diagnostics that a change causes in them, e.g. in the
+ * callers of a changed method, are not reported. If no file of the compilation is part of the
+ * change, the compilation is skipped. This collector post-processes the {@code "diagnostics"}
+ * section of a {@link DiagnosticCollector}, on which it therefore depends, after a {@link
+ * ProcessorCollector}, if any, has attributed them.
+ */
+public class DiffCollector implements Collector {
+
+    private final ChangedLines changedLines;
+
+    /**
+     * Creates a collector for the given change.
+     *
+     * @param changedLines the lines the change touches
+     */
+    public DiffCollector(ChangedLines changedLines) {
+        this.changedLines = changedLines;
+    }
+
+    @Override
+    public void onBeforeCompile(CompilationTaskBuilder builder) {
+        List<File> changedFiles = new ArrayList<>();
+        for (File file : builder.getFiles()) {
+            if (changedLines.contains(file)) {
+                changedFiles.add(file);
+            }
+        }
+        if (changedFiles.size() < builder.getFiles().size()) {
+            // If the unchanged files cannot be moved to the source path, all files are compiled.
+            builder.restrictFiles(changedFiles);
+        }
+    }
+
+    @Override
+    public Collection<Class<? extends Collector>> getDependencies() {
+        return Arrays.asList(DiagnosticCollector.class, ProcessorCollector.class);
+    }
+
+    @Override
+    public void onAfterCompile(CompilationReportData reportData) {
+        List<DiagnosticRecord> diagnostics =
+                reportData.getTypedSection(
+                        "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+        if (diagnostics == null) {
+            return;
+        }
+        List<DiagnosticRecord> touching = new ArrayList<>();
+        for (DiagnosticRecord diag : diagnostics) {
+            if (changedLines.touches(diag)) {
+                touching.add(diag);
+            }
+        }
+        if (touching.size() < diagnostics.size()) {
+            reportData.putTypedSection("diagnostics", DiagnosticRecord.class, touching);
+        }
+    }
+}
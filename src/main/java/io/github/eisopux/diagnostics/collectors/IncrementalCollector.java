@@ -0,0 +1,410 @@
+package io.github.eisopux.diagnostics.collectors;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.ToNumberPolicy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.eisopux.diagnostics.core.Collector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+
+/**
+ * A {@link Collector} that turns repeated compilations of the same source files into incremental
+ * ones. It persists each file's content hash, dependencies and diagnostics in a cache directory,
+ * restricts the next compilation to the files that changed since and the files that depend on them,
+ * and replays the cached diagnostics of all other files into the {@code "diagnostics"} section.
+ *
+ * <p>A file is considered to depend on another one if it mentions, as an identifier, the name of a
+ * top-level type that the other file declares, which includes the secondary top-level types next
+ * to its main type. Dependents are followed transitively, so a type that a file uses without naming
+ * it, e.g. as the return type of a method of a named type, is covered through the file that names
+ * it. This over-approximates the dependencies of the source files on each other but keeps the scan
+ * cheap. Everything is recompiled when the javac options, the JDK or the set of source files
+ * changes. Changes to classpath entries and to types generated by annotation processors are not
+ * detected.
+ *
+ * <p>This collector post-processes the {@code "diagnostics"} section of a {@link
+ * DiagnosticCollector}, on which it therefore depends. It runs after a {@link ProcessorCollector},
+ * if any, so that the cached diagnostics keep their attribution.
+ */
+public class IncrementalCollector implements Collector {
+
+    private static final String CACHE_FILE_NAME = "incremental-cache.json";
+
+    private static final Pattern IDENTIFIER =
+            Pattern.compile("\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*");
+
+    private static final Set<String> TYPE_KEYWORDS =
+            new HashSet<>(Arrays.asList("class", "interface", "enum", "record"));
+
+    private final Path cacheFile;
+    private final Gson gson =
+            new GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create();
+
+    private Cache previous;
+    private Cache current;
+    private List<String> orderedFiles;
+    private Set<String> compiledFiles;
+
+    /**
+     * Creates a collector that keeps its cache in the given directory.
+     *
+     * @param cacheDirectory the directory to persist the cache in; created if necessary
+     */
+    public IncrementalCollector(Path cacheDirectory) {
+        this.cacheFile = cacheDirectory.resolve(CACHE_FILE_NAME);
+    }
+
+    @Override
+    public void onBeforeCompile(CompilationTaskBuilder builder) {
+        previous = load();
+        current = new Cache();
+        current.fingerprint = fingerprint(builder.getOptions());
+        orderedFiles = new ArrayList<>();
+
+        Map<String, String> contents = new HashMap<>();
+        for (File file : builder.getFiles()) {
+            String path = normalize(file.toPath());
+            byte[] content = read(file.toPath());
+            FileEntry entry = new FileEntry();
+            entry.hash = hash(content);
+            current.files.put(path, entry);
+            orderedFiles.add(path);
+            contents.put(path, new String(content, StandardCharsets.ISO_8859_1));
+        }
+
+        boolean full =
+                previous == null
+                        || !current.fingerprint.equals(previous.fingerprint)
+                        || !current.files.keySet().equals(previous.files.keySet());
+
+        Set<String> changed = new HashSet<>();
+        boolean typesChanged = false;
+        for (Map.Entry<String, FileEntry> entry : current.files.entrySet()) {
+            String path = entry.getKey();
+            entry.getValue().types = declaredTypes(path, contents.get(path));
+            FileEntry previousEntry = full ? null : previous.files.get(path);
+            if (previousEntry == null || !previousEntry.hash.equals(entry.getValue().hash)) {
+                changed.add(path);
+                typesChanged |=
+                        previousEntry == null
+                                || !entry.getValue().types.equals(previousEntry.types);
+            }
+        }
+        // Files that did not change may mention types that other files declare only now.
+        Map<String, List<String>> filesByTypeName = filesByTypeName(current.files);
+        for (Map.Entry<String, FileEntry> entry : current.files.entrySet()) {
+            String path = entry.getKey();
+            if (typesChanged || changed.contains(path)) {
+                entry.getValue().dependencies =
+                        dependencies(path, contents.get(path), filesByTypeName);
+            } else {
+                entry.getValue().dependencies = previous.files.get(path).dependencies;
+            }
+        }
+
+        compiledFiles = full ? new HashSet<>(current.files.keySet()) : dependentClosure(changed);
+        if (compiledFiles.size() < current.files.size()) {
+            List<File> retained = new ArrayList<>();
+            compiledFiles.forEach(path -> retained.add(new File(path)));
+            if (!builder.restrictFiles(retained)) {
+                compiledFiles = new HashSet<>(current.files.keySet());
+            }
+        }
+    }
+
+    @Override
+    public Collection<Class<? extends Collector>> getDependencies() {
+        return Arrays.asList(DiagnosticCollector.class, ProcessorCollector.class);
+    }
+
+    @Override
+    public void onAfterCompile(CompilationReportData reportData) {
+        List<DiagnosticRecord> diagnostics =
+                reportData.getTypedSection(
+                        "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+        if (diagnostics == null) {
+            return;
+        }
+
+        Map<String, List<DiagnosticRecord>> fresh = new HashMap<>();
+        List<DiagnosticRecord> other = new ArrayList<>();
+        for (DiagnosticRecord diag : diagnostics) {
+            String path = sourcePath(diag.getSource());
+            if (path == null || !current.files.containsKey(path)) {
+                other.add(diag);
+            } else if (compiledFiles.contains(path)) {
+                fresh.computeIfAbsent(path, p -> new ArrayList<>()).add(diag);
+            }
+            // Diagnostics of files that were only compiled as context are replayed from the cache.
+        }
+
+        List<DiagnosticRecord> merged = new ArrayList<>();
+        for (String path : orderedFiles) {
+            FileEntry entry = current.files.get(path);
+            if (compiledFiles.contains(path)) {
+                List<DiagnosticRecord> records = fresh.getOrDefault(path, Collections.emptyList());
+                records.forEach(diag -> entry.diagnostics.add(toCacheMap(diag)));
+                merged.addAll(records);
+            } else {
+                entry.diagnostics = previous.files.get(path).diagnostics;
+                entry.diagnostics.forEach(diag -> merged.add(DiagnosticRecord.fromMap(diag)));
+            }
+        }
+        merged.addAll(other);
+
+        reportData.putTypedSection("diagnostics", DiagnosticRecord.class, merged);
+        if (!reportData.getSectionIds().contains("truncated")) {
+            // A stopped compilation has not reported all diagnostics of its files.
+            save(current);
+        }
+    }
+
+    /**
+     * Returns the changed files together with every file that transitively depends on them, now or
+     * in the previous run, e.g. on a type that a changed file no longer declares.
+     */
+    private Set<String> dependentClosure(Set<String> changed) {
+        Map<String, Set<String>> dependents = new HashMap<>();
+        for (Cache cache : Arrays.asList(previous, current)) {
+            cache.files.forEach(
+                    (path, entry) ->
+                            entry.dependencies.forEach(
+                                    dependency ->
+                                            dependents
+                                                    .computeIfAbsent(
+                                                            dependency, d -> new HashSet<>())
+                                                    .add(path)));
+        }
+
+        Set<String> closure = new HashSet<>(changed);
+        Deque<String> worklist = new ArrayDeque<>(changed);
+        while (!worklist.isEmpty()) {
+            for (String dependent :
+                    dependents.getOrDefault(worklist.pop(), Collections.emptySet())) {
+                if (closure.add(dependent)) {
+                    worklist.push(dependent);
+                }
+            }
+        }
+        return closure;
+    }
+
+    private static Map<String, List<String>> filesByTypeName(Map<String, FileEntry> files) {
+        Map<String, List<String>> filesByTypeName = new HashMap<>();
+        files.forEach(
+                (path, entry) ->
+                        entry.types.forEach(
+                                typeName ->
+                                        filesByTypeName
+                                                .computeIfAbsent(typeName, n -> new ArrayList<>())
+                                                .add(path)));
+        return filesByTypeName;
+    }
+
+    /**
+     * Returns the names of the top-level types that a source file declares: the file's name
+     * (without {@code .java}), and every identifier that follows {@code class}, {@code interface},
+     * {@code enum} or {@code record} outside of braces, comments and literals.
+     */
+    private static List<String> declaredTypes(String path, String content) {
+        Set<String> types = new LinkedHashSet<>();
+        String fileName = Paths.get(path).getFileName().toString();
+        types.add(
+                fileName.endsWith(".java")
+                        ? fileName.substring(0, fileName.length() - ".java".length())
+                        : fileName);
+
+        Matcher identifier = IDENTIFIER.matcher(content);
+        String previousWord = null;
+        int depth = 0;
+        int i = 0;
+        while (i < content.length()) {
+            char c = content.charAt(i);
+            if (content.startsWith("//", i)) {
+                int end = content.indexOf('\n', i);
+                i = end < 0 ? content.length() : end;
+            } else if (content.startsWith("/*", i)) {
+                int end = content.indexOf("*/", i + 2);
+                i = end < 0 ? content.length() : end + 2;
+            } else if (c == '"' || c == '\'') {
+                String delimiter = content.startsWith("\"\"\"", i) ? "\"\"\"" : String.valueOf(c);
+                i += delimiter.length();
+                while (i < content.length() && !content.startsWith(delimiter, i)) {
+                    i += content.charAt(i) == '\\' ? 2 : 1;
+                }
+                i += delimiter.length();
+                previousWord = null;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                identifier.find(i);
+                String word = identifier.group();
+                if (depth == 0 && TYPE_KEYWORDS.contains(previousWord)) {
+                    types.add(word);
+                }
+                previousWord = word;
+                i = identifier.end();
+            } else {
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    depth--;
+                }
+                if (!Character.isWhitespace(c) && c != '@') {
+                    previousWord = null;
+                }
+                i++;
+            }
+        }
+        return new ArrayList<>(types);
+    }
+
+    /** Returns the files whose type names are mentioned in the given source code. */
+    private static List<String> dependencies(
+            String path, String content, Map<String, List<String>> filesByTypeName) {
+        Set<String> dependencies = new HashSet<>();
+        Matcher matcher = IDENTIFIER.matcher(content);
+        while (matcher.find()) {
+            List<String> files = filesByTypeName.get(matcher.group());
+            if (files != null) {
+                dependencies.addAll(files);
+            }
+        }
+        dependencies.remove(path);
+        return new ArrayList<>(dependencies);
+    }
+
+    /**
+     * Returns the key/value view of a diagnostic together with the line and column numbers of its
+     * start and end positions, which the view leaves out, so that replayed diagnostics keep them.
+     */
+    private static Map<String, Object> toCacheMap(DiagnosticRecord diag) {
+        Map<String, Object> map = diag.toMap();
+        map.put("startLineNumber", diag.getStartLineNumber());
+        map.put("startColumnNumber", diag.getStartColumnNumber());
+        map.put("endLineNumber", diag.getEndLineNumber());
+        map.put("endColumnNumber", diag.getEndColumnNumber());
+        return map;
+    }
+
+    /** Returns the normalized path of a diagnostic's source URI, or null if it is not a file. */
+    private static String sourcePath(String source) {
+        if (source == null) {
+            return null;
+        }
+        try {
+            URI uri = URI.create(source);
+            return "file".equals(uri.getScheme()) ? normalize(Paths.get(uri)) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String normalize(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    /** Fingerprints everything besides the sources that influences the diagnostics. */
+    private static String fingerprint(List<String> options) {
+        StringBuilder fingerprint = new StringBuilder(System.getProperty("java.vm.version"));
+        options.forEach(option -> fingerprint.append('\0').append(option));
+        return hash(fingerprint.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is always supported", e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] read(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            // Let javac report the unreadable file; it is always recompiled.
+            return new byte[0];
+        }
+    }
+
+    /** Loads the cache of the previous run, or returns null if there is no usable one. */
+    private Cache load() {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            Cache cache = gson.fromJson(reader, Cache.class);
+            return cache != null && cache.fingerprint != null && cache.files != null ? cache : null;
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    private void save(Cache cache) {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path temporary = Files.createTempFile(cacheFile.getParent(), CACHE_FILE_NAME, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                gson.toJson(cache, writer);
+            }
+            Files.move(
+                    temporary,
+                    cacheFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write incremental cache " + cacheFile, e);
+        }
+    }
+
+    /** The persisted state of one run. */
+    private static final class Cache {
+        String fingerprint;
+        Map<String, FileEntry> files = new LinkedHashMap<>();
+    }
+
+    /** The persisted state of one source file. */
+    private static final class FileEntry {
+        String hash;
+        List<String> types = new ArrayList<>();
+        List<String> dependencies = new ArrayList<>();
+        List<Map<String, Object>> diagnostics = new ArrayList<>();
+    }
+}
@@ -0,0 +1,305 @@
+package io.github.eisopux.diagnostics.collectors;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+
+import io.github.eisopux.diagnostics.core.Collector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+
+/**
+ * A {@link Collector} that measures where the compiler spends its time and memory, and stores the
+ * measurements in the {@code "performance"} section. Each record has a {@code "type"}:
+ *
+ * <ul>
+ *   <li>{@code "compilation"} – one record with the wall time of the compilation ({@code
+ *       "timeMillis"}), the number and duration of garbage collections during it ({@code
+ *       "gcCount"}, {@code "gcMillis"}) and, if the JVM supports it, the bytes allocated by the
+ *       compiling thread ({@code "allocatedBytes"})
+ *   <li>{@code "phase"} – the wall time of each javac phase ({@code "phase"}, e.g. {@code
+ *       "PARSE"}, {@code "ENTER"}, {@code "ANALYZE"}, {@code "GENERATE"} or {@code
+ *       "ANNOTATION_PROCESSING"}) and the number of times it was entered ({@code "count"}). Phases
+ *       can nest, e.g. annotation processing parses and enters generated sources, so their times
+ *       do not add up.
+ *   <li>{@code "annotationProcessor"} – the time each annotation processor ({@code "processor"})
+ *       spent in {@code init} and {@code process} ({@code "initMillis"}, {@code "processMillis"}),
+ *       and the number of rounds it was called in ({@code "rounds"}). Processors that do their
+ *       work in a task listener instead, such as the type checkers of the Checker Framework, spend
+ *       it in the {@code ANALYZE} phase.
+ *   <li>{@code "compilationUnit"} – the time spent parsing, analyzing and generating each source
+ *       file ({@code "source"}, {@code "parseMillis"}, {@code "analyzeMillis"}, {@code
+ *       "generateMillis"}, {@code "totalMillis"}). Work that javac does for other files in the
+ *       middle of a phase, such as completing a class from the source path, is included.
+ * </ul>
+ *
+ * <p>Add this collector before all other collectors, so that their work before the compilation is
+ * measured as little as possible; their work after it runs concurrently with this collector's
+ * if {@link io.github.eisopux.diagnostics.core.CompilerRunner#setParallelCollectors(boolean)}
+ * enables this. Garbage collections are counted for the whole JVM, so they include the work of
+ * compilations that run concurrently, e.g. other shards.
+ */
+public class PerformanceCollector implements Collector {
+
+    /** Indices of the per-file phases in the arrays of {@link #unitTimes}. */
+    private static final int PARSE = 0;
+    private static final int ANALYZE = 1;
+    private static final int GENERATE = 2;
+
+    private final Map<TaskEvent.Kind, Phase> phases = new EnumMap<>(TaskEvent.Kind.class);
+    private final Map<String, long[]> unitTimes = new LinkedHashMap<>();
+    private final List<TimedProcessor> processors = new ArrayList<>();
+
+    private long startNanos;
+    private long startGcCount;
+    private long startGcMillis;
+    private long startAllocatedBytes;
+    private long threadId;
+
+    @Override
+    public void onBeforeCompile(CompilationTaskBuilder builder) {
+        builder.addTaskListener(new PhaseListener());
+        builder.addProcessorWrapper(
+                processor -> {
+                    TimedProcessor timed = new TimedProcessor(processor);
+                    processors.add(timed);
+                    return timed;
+                });
+
+        threadId = Thread.currentThread().getId();
+        startAllocatedBytes = getAllocatedBytes(threadId);
+        startGcCount = getGcCount();
+        startGcMillis = getGcMillis();
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onAfterCompile(CompilationReportData reportData) {
+        long timeNanos = System.nanoTime() - startNanos;
+        long gcCount = getGcCount() - startGcCount;
+        long gcMillis = getGcMillis() - startGcMillis;
+        long allocatedBytes = getAllocatedBytes(threadId);
+
+        List<Map<String, Object>> records = new ArrayList<>();
+
+        Map<String, Object> compilation = newRecord("compilation");
+        compilation.put("timeMillis", toMillis(timeNanos));
+        compilation.put("gcCount", gcCount);
+        compilation.put("gcMillis", gcMillis);
+        if (allocatedBytes >= 0 && startAllocatedBytes >= 0) {
+            compilation.put("allocatedBytes", allocatedBytes - startAllocatedBytes);
+        }
+        records.add(compilation);
+
+        for (Map.Entry<TaskEvent.Kind, Phase> entry : phases.entrySet()) {
+            Map<String, Object> phase = newRecord("phase");
+            phase.put("phase", entry.getKey().name());
+            phase.put("timeMillis", toMillis(entry.getValue().totalNanos));
+            phase.put("count", entry.getValue().count);
+            records.add(phase);
+        }
+
+        for (TimedProcessor processor : processors) {
+            Map<String, Object> record = newRecord("annotationProcessor");
+            record.put("processor", processor.delegate.getClass().getName());
+            record.put("initMillis", toMillis(processor.initNanos));
+            record.put("processMillis", toMillis(processor.processNanos));
+            record.put("rounds", processor.rounds);
+            records.add(record);
+        }
+
+        for (Map.Entry<String, long[]> entry : unitTimes.entrySet()) {
+            long[] times = entry.getValue();
+            Map<String, Object> unit = newRecord("compilationUnit");
+            unit.put("source", entry.getKey());
+            unit.put("parseMillis", toMillis(times[PARSE]));
+            unit.put("analyzeMillis", toMillis(times[ANALYZE]));
+            unit.put("generateMillis", toMillis(times[GENERATE]));
+            unit.put("totalMillis", toMillis(times[PARSE] + times[ANALYZE] + times[GENERATE]));
+            records.add(unit);
+        }
+
+        reportData.putSection("performance", records);
+    }
+
+    private static Map<String, Object> newRecord(String type) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("type", type);
+        return record;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /** Returns the bytes allocated by a thread so far, or -1 if the JVM does not track them. */
+    private static long getAllocatedBytes(long threadId) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported()
+                    && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads.getThreadAllocatedBytes(threadId);
+            }
+        }
+        return -1;
+    }
+
+    /** Accumulated wall time of one kind of task event. */
+    private static final class Phase {
+        /** The number of started, but not yet finished, events; some phases start in batches. */
+        int depth;
+
+        long startNanos;
+        long totalNanos;
+        int count;
+    }
+
+    /** Measures phases as a whole and the per-file phases for each compilation unit. */
+    private final class PhaseListener implements TaskListener {
+        private final long[] unitStartNanos = new long[3];
+
+        @Override
+        public void started(TaskEvent e) {
+            long now = System.nanoTime();
+            Phase phase = phases.computeIfAbsent(e.getKind(), k -> new Phase());
+            if (phase.depth++ == 0) {
+                phase.startNanos = now;
+            }
+            phase.count++;
+
+            int unitPhase = getUnitPhase(e.getKind());
+            if (unitPhase >= 0) {
+                unitStartNanos[unitPhase] = now;
+            }
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            long now = System.nanoTime();
+            Phase phase = phases.get(e.getKind());
+            if (phase == null || phase.depth == 0) {
+                return;
+            }
+            if (--phase.depth == 0) {
+                phase.totalNanos += now - phase.startNanos;
+            }
+
+            int unitPhase = getUnitPhase(e.getKind());
+            if (unitPhase >= 0 && e.getSourceFile() != null) {
+                long[] times =
+                        unitTimes.computeIfAbsent(
+                                e.getSourceFile().toUri().toString(), uri -> new long[3]);
+                times[unitPhase] += now - unitStartNanos[unitPhase];
+            }
+        }
+
+        /** Returns the per-file phase of an event, or -1 if it does not concern a single file. */
+        private int getUnitPhase(TaskEvent.Kind kind) {
+            switch (kind) {
+                case PARSE:
+                    return PerformanceCollector.PARSE;
+                case ANALYZE:
+                    return PerformanceCollector.ANALYZE;
+                case GENERATE:
+                    return PerformanceCollector.GENERATE;
+                default:
+                    // Other phases, e.g. ENTER, process all compilation units in one batch.
+                    return -1;
+            }
+        }
+    }
+
+    /** An annotation processor that measures the time spent in its delegate. */
+    private static final class TimedProcessor implements Processor {
+        private final Processor delegate;
+        private long initNanos;
+        private long processNanos;
+        private int rounds;
+
+        TimedProcessor(Processor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            long start = System.nanoTime();
+            try {
+                delegate.init(processingEnv);
+            } finally {
+                initNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public boolean process(
+                Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            long start = System.nanoTime();
+            try {
+                return delegate.process(annotations, roundEnv);
+            } finally {
+                processNanos += System.nanoTime() - start;
+                rounds++;
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(
+                Element element,
+                AnnotationMirror annotation,
+                ExecutableElement member,
+                String userText) {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package io.github.eisopux.diagnostics.collectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import io.github.eisopux.diagnostics.core.Collector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+
+/**
+ * A {@link Collector} that attributes diagnostics and time to the annotation processors of a
+ * compilation. It wraps each processor and attributes every diagnostic that a processor reports
+ * through its {@link javax.annotation.processing.Messager} in {@code init} or {@code process} to
+ * that processor, see {@link DiagnosticRecord#withProcessor(String)}. Reporters then take the
+ * processor from the attribution instead of the message, and the JSON output has a {@code
+ * "processor"} key for the attributed diagnostics.
+ *
+ * <p>javac holds back the diagnostics of a processing round until all processors have run. So
+ * that they can still be told apart, each wrapped processor reports a marker note through its
+ * Messager whenever javac's call into it returns, and the diagnostics that come before a
+ * processor's marker are attributed to it. The markers are consumed by a diagnostic filter and
+ * appear in no section. With {@code -nowarn}, javac drops the markers with all other notes, and
+ * no diagnostics are attributed.
+ *
+ * <p>The {@code "processors"} section has one record per processor ({@code "processor"}, its class
+ * name) with the time it spent in {@code init} and {@code process} ({@code "initMillis"}, {@code
+ * "processMillis"}), the number of rounds it was called in ({@code "rounds"}) and the number of
+ * diagnostics attributed to it by kind ({@code "errors"}, {@code "warnings"}, {@code "notes"}).
+ *
+ * <p>Processors that do their work in a task listener instead, such as the type checkers of the
+ * Checker Framework, report their diagnostics outside of these calls; their diagnostics remain
+ * unattributed, and their processor is still taken from the {@code [processor:key]} prefix of the
+ * message. This collector post-processes the {@code "diagnostics"} section of a {@link
+ * DiagnosticCollector}, on which it therefore depends. Add it before other collectors that wrap
+ * annotation processors, such as {@link PerformanceCollector}, so that it sees the processors
+ * themselves.
+ */
+public class ProcessorCollector implements Collector {
+
+    /** The codes of the diagnostics that processors report through the Messager. */
+    private static final List<String> MESSAGER_CODES =
+            Arrays.asList(
+                    "compiler.err.proc.messager",
+                    "compiler.warn.proc.messager",
+                    "compiler.note.proc.messager");
+
+    /** The start of the message of a marker, which is followed by the index of its processor. */
+    private static final String MARKER = "javac-diagnostics-wrapper processor marker ";
+
+    private final List<AttributedProcessor> processors = new ArrayList<>();
+
+    /** The processor that reported each diagnostic, or null, in the order they were reported. */
+    private final List<AttributedProcessor> reporters = new ArrayList<>();
+
+    /** The kinds of the Messager diagnostics since the last marker, by index, to attribute. */
+    private final Map<Integer, Diagnostic.Kind> pending = new LinkedHashMap<>();
+
+    @Override
+    public void onBeforeCompile(CompilationTaskBuilder builder) {
+        builder.addProcessorWrapper(
+                processor -> {
+                    AttributedProcessor attributed =
+                            new AttributedProcessor(processor, processors.size());
+                    processors.add(attributed);
+                    return attributed;
+                });
+        builder.addDiagnosticFilter(this::attribute);
+    }
+
+    @Override
+    public Collection<Class<? extends Collector>> getDependencies() {
+        return Collections.singletonList(DiagnosticCollector.class);
+    }
+
+    @Override
+    public void onAfterCompile(CompilationReportData reportData) {
+        if (processors.isEmpty()) {
+            return;
+        }
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (AttributedProcessor processor : processors) {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("processor", processor.name);
+            record.put("initMillis", processor.initNanos / 1_000_000.0);
+            record.put("processMillis", processor.processNanos / 1_000_000.0);
+            record.put("rounds", processor.rounds);
+            record.put("errors", processor.errors);
+            record.put("warnings", processor.warnings);
+            record.put("notes", processor.notes);
+            records.add(record);
+        }
+        reportData.putSection("processors", records);
+
+        List<DiagnosticRecord> diagnostics =
+                reportData.getTypedSection(
+                        "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+        if (diagnostics == null
+                || diagnostics.size() != reporters.size()
+                || reporters.stream().allMatch(reporter -> reporter == null)) {
+            // Without a record for each reported diagnostic, the records cannot be matched up.
+            return;
+        }
+        List<DiagnosticRecord> attributed = new ArrayList<>(diagnostics.size());
+        for (int i = 0; i < diagnostics.size(); i++) {
+            AttributedProcessor reporter = reporters.get(i);
+            attributed.add(
+                    reporter != null
+                            ? diagnostics.get(i).withProcessor(reporter.name)
+                            : diagnostics.get(i));
+        }
+        reportData.putTypedSection("diagnostics", DiagnosticRecord.class, attributed);
+    }
+
+    /**
+     * Records a diagnostic for attribution, or attributes the pending diagnostics to the processor
+     * of a marker.
+     *
+     * @return whether the diagnostic is passed on, i.e. is not a marker
+     */
+    private boolean attribute(Diagnostic<? extends JavaFileObject> diagnostic) {
+        String code = diagnostic.getCode();
+        if (code == null || !MESSAGER_CODES.contains(code)) {
+            reporters.add(null);
+            return true;
+        }
+        AttributedProcessor processor = getMarkedProcessor(diagnostic);
+        if (processor == null) {
+            pending.put(reporters.size(), diagnostic.getKind());
+            reporters.add(null);
+            return true;
+        }
+        for (Map.Entry<Integer, Diagnostic.Kind> entry : pending.entrySet()) {
+            reporters.set(entry.getKey(), processor);
+            processor.count(entry.getValue());
+        }
+        pending.clear();
+        return false;
+    }
+
+    /** Returns the processor whose marker a diagnostic is, or null if it is no marker. */
+    private AttributedProcessor getMarkedProcessor(
+            Diagnostic<? extends JavaFileObject> diagnostic) {
+        if (diagnostic.getKind() != Diagnostic.Kind.NOTE || diagnostic.getSource() != null) {
+            return null;
+        }
+        String message = diagnostic.getMessage(null);
+        if (message == null || !message.startsWith(MARKER)) {
+            return null;
+        }
+        try {
+            return processors.get(Integer.parseInt(message.substring(MARKER.length())));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /** An annotation processor that reports a marker whenever javac's call into it returns. */
+    private final class AttributedProcessor implements Processor {
+        private final Processor delegate;
+        private final int index;
+        final String name;
+        private ProcessingEnvironment processingEnv;
+        long initNanos;
+        long processNanos;
+        int rounds;
+        int errors;
+        int warnings;
+        int notes;
+
+        AttributedProcessor(Processor delegate, int index) {
+            this.delegate = delegate;
+            this.index = index;
+            this.name = delegate.getClass().getName();
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            this.processingEnv = processingEnv;
+            long start = System.nanoTime();
+            try {
+                delegate.init(processingEnv);
+            } finally {
+                initNanos += System.nanoTime() - start;
+                mark();
+            }
+        }
+
+        @Override
+        public boolean process(
+                Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            long start = System.nanoTime();
+            try {
+                return delegate.process(annotations, roundEnv);
+            } finally {
+                processNanos += System.nanoTime() - start;
+                rounds++;
+                mark();
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(
+                Element element,
+                AnnotationMirror annotation,
+                ExecutableElement member,
+                String userText) {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+
+        /** Reports the marker that ends the diagnostics of the call that just returned. */
+        private void mark() {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, MARKER + index);
+        }
+
+        /** Counts a diagnostic that was attributed to this processor. */
+        void count(Diagnostic.Kind kind) {
+            switch (kind) {
+                case ERROR:
+                    errors++;
+                    break;
+                case WARNING:
+                case MANDATORY_WARNING:
+                    warnings++;
+                    break;
+                default:
+                    notes++;
+                    break;
+            }
+        }
+    }
+}
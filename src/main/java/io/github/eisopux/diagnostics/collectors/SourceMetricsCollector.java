@@ -0,0 +1,420 @@
+package io.github.eisopux.diagnostics.collectors;
+
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.CaseTree;
+import com.sun.source.tree.CatchTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ConditionalExpressionTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IfTree;
+import com.sun.source.tree.LineMap;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.SwitchTree;
+import com.sun.source.tree.SynchronizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TryTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreeScanner;
+import com.sun.source.util.Trees;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.tools.Diagnostic;
+
+import io.github.eisopux.diagnostics.core.Collector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+
+/**
+ * A {@link Collector} that measures the size and complexity of the compiled source files, and
+ * stores the measurements in the {@code "sourceMetrics"} section. Each record has a {@code
+ * "type"}:
+ *
+ * <ul>
+ *   <li>{@code "compilationUnit"} – one record per source file ({@code "source"}) with its number
+ *       of lines ({@code "lines"}), the lines that contain code rather than only comments or
+ *       whitespace ({@code "codeLines"}), the number of classes, including nested, local and
+ *       anonymous ones ({@code "classes"}), and of methods and constructors ({@code "methods"}),
+ *       the sum and maximum of their cyclomatic complexities ({@code "complexity"}, {@code
+ *       "maxComplexity"}) and their deepest nesting ({@code "maxNesting"})
+ *   <li>{@code "method"} – one record per method or constructor with a body, with its source file,
+ *       class and name ({@code "source"}, {@code "class"}, {@code "method"}), the line it starts on
+ *       ({@code "line"}), its code lines, its cyclomatic complexity ({@code "complexity"}) and how
+ *       deeply its control statements nest ({@code "nesting"})
+ * </ul>
+ *
+ * <p>The cyclomatic complexity of a method is one plus its decisions: each {@code if}, loop, {@code
+ * case} label other than {@code default}, {@code catch}, conditional expression and {@code &&} or
+ * {@code ||} operator. Lambda bodies count towards their method; the methods of local and anonymous
+ * classes are measured on their own.
+ *
+ * <p>Each syntax tree is walked once, as soon as javac has parsed it, on the common fork/join pool,
+ * so that the walks run while javac parses the remaining files. javac waits for all walks to finish
+ * before it enters the trees, which changes them, e.g. by adding default constructors. Only the
+ * source files given to the compiler are measured, not those that javac reads from the source path
+ * or that annotation processors generate.
+ */
+public class SourceMetricsCollector implements Collector {
+
+    /** The walks of the compilation units, in the order in which they were parsed. */
+    private final List<CompletableFuture<List<Map<String, Object>>>> walks = new ArrayList<>();
+
+    @Override
+    public void onBeforeCompile(CompilationTaskBuilder builder) {
+        walks.clear();
+        builder.addTaskListenerFactory(WalkStarter::new);
+    }
+
+    @Override
+    public void onAfterCompile(CompilationReportData reportData) {
+        List<Map<String, Object>> records = new ArrayList<>();
+        List<Map<String, Object>> methods = new ArrayList<>();
+        for (CompletableFuture<List<Map<String, Object>>> walk : walks) {
+            List<Map<String, Object>> unitRecords = walk.join();
+            records.add(unitRecords.get(0));
+            methods.addAll(unitRecords.subList(1, unitRecords.size()));
+        }
+        records.addAll(methods);
+        reportData.putSection("sourceMetrics", records);
+    }
+
+    private static Map<String, Object> newRecord(String type, String source) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("type", type);
+        record.put("source", source);
+        return record;
+    }
+
+    /** Starts a walk of each compilation unit that is parsed before javac first enters trees. */
+    private final class WalkStarter implements TaskListener {
+        private final SourcePositions positions;
+        private boolean entered;
+
+        WalkStarter(JavacTask task) {
+            positions = Trees.instance(task).getSourcePositions();
+        }
+
+        @Override
+        public void started(TaskEvent e) {
+            if (e.getKind() == TaskEvent.Kind.ENTER && !entered) {
+                entered = true;
+                for (CompletableFuture<?> walk : walks) {
+                    try {
+                        walk.join();
+                    } catch (CompletionException ex) {
+                        // The failure is rethrown when the section is created.
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            if (e.getKind() == TaskEvent.Kind.PARSE
+                    && !entered
+                    && e.getCompilationUnit() != null) {
+                CompilationUnitTree unit = e.getCompilationUnit();
+                walks.add(
+                        CompletableFuture.supplyAsync(
+                                () -> new UnitScanner(unit, positions).measure()));
+            }
+        }
+    }
+
+    /** The measurements of a method or constructor, while its body is being walked. */
+    private static final class MethodMetrics {
+        final Map<String, Object> record;
+        final long startLine;
+        final long endLine;
+        int complexity = 1;
+        int depth;
+        int maxDepth;
+
+        MethodMetrics(Map<String, Object> record, long startLine, long endLine) {
+            this.record = record;
+            this.startLine = startLine;
+            this.endLine = endLine;
+        }
+    }
+
+    /** Walks one compilation unit and measures it and its methods. */
+    private static final class UnitScanner extends TreeScanner<Void, Void> {
+        private final CompilationUnitTree unit;
+        private final SourcePositions positions;
+        private final LineMap lineMap;
+        private final String source;
+
+        /** The lines on which a tree starts or ends, i.e. the lines that contain code. */
+        private final BitSet codeLines = new BitSet();
+
+        private final List<MethodMetrics> methods = new ArrayList<>();
+        private String className = "";
+        private MethodMetrics method;
+        private int classCount;
+        private int methodCount;
+
+        UnitScanner(CompilationUnitTree unit, SourcePositions positions) {
+            this.unit = unit;
+            this.positions = positions;
+            this.lineMap = unit.getLineMap();
+            this.source = unit.getSourceFile().toUri().toString();
+        }
+
+        /** Returns the record of the compilation unit, followed by those of its methods. */
+        List<Map<String, Object>> measure() {
+            scan(unit, null);
+
+            List<Map<String, Object>> records = new ArrayList<>();
+            Map<String, Object> unitRecord = newRecord("compilationUnit", source);
+            try {
+                unitRecord.put("lines", countLines(unit.getSourceFile().getCharContent(true)));
+            } catch (IOException e) {
+                // The file was readable when javac parsed it; leave out what cannot be counted.
+            }
+            unitRecord.put("codeLines", codeLines.cardinality());
+            unitRecord.put("classes", classCount);
+            unitRecord.put("methods", methodCount);
+            records.add(unitRecord);
+
+            int complexity = 0;
+            int maxComplexity = 0;
+            int maxNesting = 0;
+            for (MethodMetrics metrics : methods) {
+                complexity += metrics.complexity;
+                maxComplexity = Math.max(maxComplexity, metrics.complexity);
+                maxNesting = Math.max(maxNesting, metrics.maxDepth);
+                if (metrics.startLine != Diagnostic.NOPOS && metrics.endLine != Diagnostic.NOPOS) {
+                    metrics.record.put(
+                            "codeLines",
+                            codeLines
+                                    .get((int) metrics.startLine, (int) metrics.endLine + 1)
+                                    .cardinality());
+                }
+                metrics.record.put("complexity", metrics.complexity);
+                metrics.record.put("nesting", metrics.maxDepth);
+                records.add(metrics.record);
+            }
+            unitRecord.put("complexity", complexity);
+            unitRecord.put("maxComplexity", maxComplexity);
+            unitRecord.put("maxNesting", maxNesting);
+            return records;
+        }
+
+        private static int countLines(CharSequence content) {
+            int lines = 0;
+            for (int i = 0; i < content.length(); i++) {
+                if (content.charAt(i) == '\n') {
+                    lines++;
+                }
+            }
+            int length = content.length();
+            return length > 0 && content.charAt(length - 1) != '\n' ? lines + 1 : lines;
+        }
+
+        @Override
+        public Void scan(Tree tree, Void p) {
+            if (tree != null) {
+                markLine(positions.getStartPosition(unit, tree));
+                markLine(positions.getEndPosition(unit, tree));
+            }
+            return super.scan(tree, p);
+        }
+
+        private void markLine(long position) {
+            if (position != Diagnostic.NOPOS) {
+                codeLines.set((int) lineMap.getLineNumber(position));
+            }
+        }
+
+        private long getLine(long position) {
+            return position != Diagnostic.NOPOS ? lineMap.getLineNumber(position) : position;
+        }
+
+        @Override
+        public Void visitClass(ClassTree node, Void p) {
+            classCount++;
+            String simpleName = node.getSimpleName().toString();
+            String enclosingClass = className;
+            MethodMetrics enclosingMethod = method;
+            className =
+                    (enclosingClass.isEmpty() ? "" : enclosingClass + ".")
+                            + (simpleName.isEmpty() ? "<anonymous>" : simpleName);
+            // The methods of the class are measured on their own; its field initializers are not
+            // part of any method.
+            method = null;
+            try {
+                return super.visitClass(node, p);
+            } finally {
+                className = enclosingClass;
+                method = enclosingMethod;
+            }
+        }
+
+        @Override
+        public Void visitMethod(MethodTree node, Void p) {
+            methodCount++;
+            if (node.getBody() == null) {
+                return super.visitMethod(node, p);
+            }
+            long start = positions.getStartPosition(unit, node);
+            Map<String, Object> record = newRecord("method", source);
+            record.put("class", className);
+            record.put("method", node.getName().toString());
+            record.put("line", getLine(start));
+            MethodMetrics enclosingMethod = method;
+            method =
+                    new MethodMetrics(
+                            record, getLine(start), getLine(positions.getEndPosition(unit, node)));
+            methods.add(method);
+            try {
+                return super.visitMethod(node, p);
+            } finally {
+                method = enclosingMethod;
+            }
+        }
+
+        /** Counts a decision of the current method. */
+        private void branch() {
+            if (method != null) {
+                method.complexity++;
+            }
+        }
+
+        /** Scans a tree one level deeper in the control statements of the current method. */
+        private void nest(Tree tree) {
+            if (method == null) {
+                scan(tree, null);
+                return;
+            }
+            method.maxDepth = Math.max(method.maxDepth, ++method.depth);
+            try {
+                scan(tree, null);
+            } finally {
+                method.depth--;
+            }
+        }
+
+        @Override
+        public Void visitIf(IfTree node, Void p) {
+            branch();
+            scan(node.getCondition(), p);
+            nest(node.getThenStatement());
+            Tree elseStatement = node.getElseStatement();
+            if (elseStatement instanceof IfTree) {
+                // An else-if chain is as deep as a single if.
+                scan(elseStatement, p);
+            } else if (elseStatement != null) {
+                nest(elseStatement);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitForLoop(ForLoopTree node, Void p) {
+            branch();
+            scan(node.getInitializer(), p);
+            scan(node.getCondition(), p);
+            scan(node.getUpdate(), p);
+            nest(node.getStatement());
+            return null;
+        }
+
+        @Override
+        public Void visitEnhancedForLoop(EnhancedForLoopTree node, Void p) {
+            branch();
+            scan(node.getVariable(), p);
+            scan(node.getExpression(), p);
+            nest(node.getStatement());
+            return null;
+        }
+
+        @Override
+        public Void visitWhileLoop(WhileLoopTree node, Void p) {
+            branch();
+            scan(node.getCondition(), p);
+            nest(node.getStatement());
+            return null;
+        }
+
+        @Override
+        public Void visitDoWhileLoop(DoWhileLoopTree node, Void p) {
+            branch();
+            nest(node.getStatement());
+            scan(node.getCondition(), p);
+            return null;
+        }
+
+        @Override
+        public Void visitSwitch(SwitchTree node, Void p) {
+            scan(node.getExpression(), p);
+            for (CaseTree caseTree : node.getCases()) {
+                nest(caseTree);
+            }
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation") // getExpressions() does not exist before Java 12.
+        public Void visitCase(CaseTree node, Void p) {
+            if (node.getExpression() != null) {
+                branch();
+            }
+            return super.visitCase(node, p);
+        }
+
+        @Override
+        public Void visitTry(TryTree node, Void p) {
+            scan(node.getResources(), p);
+            nest(node.getBlock());
+            for (CatchTree catchTree : node.getCatches()) {
+                nest(catchTree);
+            }
+            if (node.getFinallyBlock() != null) {
+                nest(node.getFinallyBlock());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitCatch(CatchTree node, Void p) {
+            branch();
+            return super.visitCatch(node, p);
+        }
+
+        @Override
+        public Void visitSynchronized(SynchronizedTree node, Void p) {
+            scan(node.getExpression(), p);
+            nest(node.getBlock());
+            return null;
+        }
+
+        @Override
+        public Void visitConditionalExpression(ConditionalExpressionTree node, Void p) {
+            branch();
+            return super.visitConditionalExpression(node, p);
+        }
+
+        @Override
+        public Void visitBinary(BinaryTree node, Void p) {
+            if (node.getKind() == Tree.Kind.CONDITIONAL_AND
+                    || node.getKind() == Tree.Kind.CONDITIONAL_OR) {
+                branch();
+            }
+            return super.visitBinary(node, p);
+        }
+    }
+}
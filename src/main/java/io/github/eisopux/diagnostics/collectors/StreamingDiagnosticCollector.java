@@ -0,0 +1,44 @@
+package io.github.eisopux.diagnostics.collectors;
+
+import io.github.eisopux.diagnostics.core.Collector;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.CompilationTaskBuilder;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.LineIndex;
+import io.github.eisopux.diagnostics.core.StreamingReporter;
+
+/**
+ * A {@link Collector} that forwards each compilation diagnostic to a {@link StreamingReporter} the
+ * moment javac reports it, as a record of the {@code "diagnostics"} section.
+ *
+ * <p>Unlike {@link DiagnosticCollector}, no diagnostics are retained in memory, so it does not
+ * populate a section in the {@link CompilationReportData}.
+ */
+public class StreamingDiagnosticCollector implements Collector {
+
+    private final StreamingReporter reporter;
+
+    /**
+     * Creates a collector that streams diagnostics to the given reporter.
+     *
+     * @param reporter the reporter to forward each diagnostic to
+     */
+    public StreamingDiagnosticCollector(StreamingReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    @Override
+    public void onBeforeCompile(CompilationTaskBuilder builder) {
+        reporter.startStreaming();
+        LineIndex.Cache lineIndexes = new LineIndex.Cache();
+        builder.addDiagnosticListener(
+                diag ->
+                        reporter.reportRecord(
+                                "diagnostics", DiagnosticRecord.of(diag, lineIndexes)));
+    }
+
+    @Override
+    public void onAfterCompile(CompilationReportData reportData) {
+        // All diagnostics have already been streamed to the reporter.
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.eisopux.diagnostics.core;
+
+import com.sun.source.util.JavacTask;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Utility methods to replace the annotation processors that javac would discover for a compilation
+ * task with wrapped instances of the same processors.
+ *
+ * <p>Processors are discovered the way javac discovers them: the names given with {@code
+ * -processor}, or else the service providers of {@link Processor}, loaded from the processor path,
+ * or from the class path if no processor path was given. Whenever this does not apply, e.g. with
+ * {@code --processor-module-path}, or fails, the task is left alone so that javac discovers the
+ * processors, and reports any problems, itself.
+ */
+final class AnnotationProcessors {
+
+    private AnnotationProcessors() {}
+
+    /**
+     * Sets wrapped instances of the task's annotation processors as its processors.
+     *
+     * @param task the task to set the processors of
+     * @param fileManager the file manager the task was created with, already configured with its
+     *     options
+     * @param options the javac options the task was created with
+     * @param wrappers the functions to wrap each processor with, in order
+     * @return the task to call, which releases the processor class loader once it completes
+     */
+    static JavaCompiler.CompilationTask wrap(
+            JavacTask task,
+            JavaFileManager fileManager,
+            List<String> options,
+            List<UnaryOperator<Processor>> wrappers) {
+        List<String> names = null;
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if (option.equals("-proc:none")
+                    || option.equals("--processor-module-path")
+                    || option.startsWith("--processor-module-path=")) {
+                return task;
+            }
+            if (option.equals("-processor") && i + 1 < options.size()) {
+                names = new ArrayList<>();
+                for (String name : options.get(i + 1).split(",", -1)) {
+                    if (!name.trim().isEmpty()) {
+                        names.add(name.trim());
+                    }
+                }
+            }
+        }
+
+        ClassLoader loader = null;
+        List<Processor> processors = new ArrayList<>();
+        try {
+            loader =
+                    fileManager.getClassLoader(
+                            fileManager.hasLocation(StandardLocation.ANNOTATION_PROCESSOR_PATH)
+                                    ? StandardLocation.ANNOTATION_PROCESSOR_PATH
+                                    : StandardLocation.CLASS_PATH);
+            if (names != null) {
+                for (String name : names) {
+                    processors.add(
+                            Class.forName(name, true, loader)
+                                    .asSubclass(Processor.class)
+                                    .getDeclaredConstructor()
+                                    .newInstance());
+                }
+            } else {
+                ServiceLoader.load(Processor.class, loader).forEach(processors::add);
+            }
+        } catch (ReflectiveOperationException
+                | RuntimeException
+                | ServiceConfigurationError
+                | LinkageError e) {
+            close(loader);
+            return task;
+        }
+        if (processors.isEmpty()) {
+            close(loader);
+            return task;
+        }
+
+        List<Processor> wrapped = new ArrayList<>();
+        for (Processor processor : processors) {
+            for (UnaryOperator<Processor> wrapper : wrappers) {
+                processor = wrapper.apply(processor);
+            }
+            wrapped.add(processor);
+        }
+        task.setProcessors(wrapped);
+        return new LoaderClosingTask(task, loader);
+    }
+
+    /** Closes a processor class loader created by a file manager, if it holds resources. */
+    private static void close(ClassLoader loader) {
+        if (loader instanceof Closeable) {
+            try {
+                ((Closeable) loader).close();
+            } catch (IOException e) {
+                // Nothing useful can be done about a class loader that fails to close.
+            }
+        }
+    }
+
+    /** A task that closes the class loader of its processors once it has been called. */
+    private static final class LoaderClosingTask implements JavaCompiler.CompilationTask {
+        private final JavaCompiler.CompilationTask task;
+        private final ClassLoader loader;
+
+        LoaderClosingTask(JavaCompiler.CompilationTask task, ClassLoader loader) {
+            this.task = task;
+            this.loader = loader;
+        }
+
+        @Override
+        public void setProcessors(Iterable<? extends Processor> processors) {
+            task.setProcessors(processors);
+        }
+
+        @Override
+        public void setLocale(Locale locale) {
+            task.setLocale(locale);
+        }
+
+        /**
+         * Part of {@link JavaCompiler.CompilationTask} since Java 9, hence without {@code
+         * Override}. Modules must be added before the task is built.
+         */
+        @SuppressWarnings("MissingOverride")
+        public void addModules(Iterable<String> moduleNames) {
+            throw new IllegalStateException("Modules must be added before the task is built");
+        }
+
+        @Override
+        public Boolean call() {
+            try {
+                return task.call();
+            } finally {
+                close(loader);
+            }
+        }
+    }
+}
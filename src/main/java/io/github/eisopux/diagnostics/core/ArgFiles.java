@@ -0,0 +1,104 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility methods to read javac argument files, i.e. the files that {@code javac @file} reads its
+ * arguments from.
+ *
+ * <p>Arguments are separated by whitespace. Single or double quotes group characters, including
+ * whitespace, into an argument; within quotes, a backslash escapes the next character, {@code \n},
+ * {@code \r}, {@code \t} and {@code \f} denote the usual control characters, and a backslash at the
+ * end of a line continues the argument on the next line after its leading whitespace. A {@code #}
+ * at the start of an argument comments out the rest of the line.
+ */
+public final class ArgFiles {
+
+    private ArgFiles() {}
+
+    /**
+     * Reads the arguments of an argument file in the platform's default encoding, as javac does.
+     *
+     * @param argFile the argument file
+     * @return the arguments, in order
+     * @throws IOException if the file cannot be read
+     */
+    public static List<String> read(Path argFile) throws IOException {
+        return parse(new String(Files.readAllBytes(argFile), Charset.defaultCharset()));
+    }
+
+    /**
+     * Splits the content of an argument file into its arguments.
+     *
+     * @param content the content of an argument file
+     * @return the arguments, in order
+     */
+    public static List<String> parse(String content) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder argument = new StringBuilder();
+        boolean inArgument = false;
+        char quote = 0;
+        int i = 0;
+        while (i < content.length()) {
+            char c = content.charAt(i++);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && i < content.length()) {
+                    char escaped = content.charAt(i++);
+                    switch (escaped) {
+                        case 'n':
+                            argument.append('\n');
+                            break;
+                        case 'r':
+                            argument.append('\r');
+                            break;
+                        case 't':
+                            argument.append('\t');
+                            break;
+                        case 'f':
+                            argument.append('\f');
+                            break;
+                        case '\r':
+                        case '\n':
+                            while (i < content.length()
+                                    && Character.isWhitespace(content.charAt(i))) {
+                                i++;
+                            }
+                            break;
+                        default:
+                            argument.append(escaped);
+                    }
+                } else {
+                    argument.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (inArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+            } else if (c == '#' && !inArgument) {
+                while (i < content.length() && content.charAt(i) != '\n') {
+                    i++;
+                }
+            } else {
+                inArgument = true;
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                } else {
+                    argument.append(c);
+                }
+            }
+        }
+        if (inArgument) {
+            arguments.add(argument.toString());
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.util.Map;
+
+/**
+ * A {@link Reporter} that can also combine the report data of several independent compilations,
+ * such as the jobs of a {@link BatchRunner}, into a single report.
+ */
+public interface BatchReporter extends Reporter {
+
+    /**
+     * Produce a single formatted report from the report data of several compilations.
+     *
+     * @param reportData the report data of each compilation, keyed by its unique id, in the order
+     *     in which the compilations are to be reported
+     */
+    void generateReports(Map<String, CompilationReportData> reportData);
+}
@@ -0,0 +1,212 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * BatchRunner runs many independent compilation jobs, each with its own javac arguments, in one JVM
+ * and combines their report data into a single report keyed by job id.
+ *
+ * <p>The jobs share the system Java compiler, but not their file managers, and run concurrently on
+ * at most {@link #setParallelism(int) parallelism} threads. A job that fails, e.g. because of
+ * invalid arguments or an unreadable argument file, does not affect the other jobs; its report only
+ * holds an {@code "error"} section with the {@code "message"} of the exception that caused the
+ * failure.
+ */
+public class BatchRunner {
+
+    private final List<Supplier<? extends Collector>> collectorFactories = new ArrayList<>();
+    private final List<ReportStage> stages = new ArrayList<>();
+    /** The jobs by id, each as a function that returns the job's command-line arguments. */
+    private final Map<String, Callable<String[]>> jobs = new LinkedHashMap<>();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private BatchReporter reporter;
+    private RunMetrics metrics;
+
+    /**
+     * Registers a factory for a collector. Every job gets its own collector instances, since jobs
+     * run concurrently.
+     *
+     * @param collectorFactory a factory that creates a new collector for each job
+     * @return this BatchRunner instance for method chaining
+     */
+    public BatchRunner addCollector(Supplier<? extends Collector> collectorFactory) {
+        collectorFactories.add(collectorFactory);
+        return this;
+    }
+
+    /**
+     * Adds a ReportStage that processes the report data of each job before the reports are
+     * combined. Stages run in the order in which they were added.
+     *
+     * @param stage the ReportStage to add
+     * @return this BatchRunner instance for method chaining
+     */
+    public BatchRunner addStage(ReportStage stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Adds a compilation job.
+     *
+     * @param id the id of the job in the combined report
+     * @param args the command-line arguments of the job, as for {@link
+     *     CompilerRunner#run(String[])}
+     * @return this BatchRunner instance for method chaining
+     * @throws IllegalArgumentException if a job with the same id was already added
+     */
+    public BatchRunner addJob(String id, String[] args) {
+        String[] jobArgs = args.clone();
+        return addJob(id, () -> jobArgs);
+    }
+
+    /**
+     * Adds a compilation job whose arguments are read from an argument file when the job runs, see
+     * {@link ArgFiles}.
+     *
+     * @param id the id of the job in the combined report
+     * @param argFile the file that holds the command-line arguments of the job
+     * @return this BatchRunner instance for method chaining
+     * @throws IllegalArgumentException if a job with the same id was already added
+     */
+    public BatchRunner addJob(String id, Path argFile) {
+        return addJob(id, () -> ArgFiles.read(argFile).toArray(new String[0]));
+    }
+
+    private BatchRunner addJob(String id, Callable<String[]> args) {
+        if (jobs.putIfAbsent(id, args) != null) {
+            throw new IllegalArgumentException("Duplicate job id: " + id);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of jobs that are compiled at the same time.
+     *
+     * @param parallelism the number of jobs to compile concurrently, the number of available
+     *     processors by default
+     * @return this BatchRunner instance for method chaining
+     */
+    public BatchRunner setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the metrics that all jobs record their steps and counts into, see {@link RunMetrics}.
+     * Generating the combined report is recorded once for all jobs.
+     *
+     * @param metrics the metrics to record into, or {@code null} to record none, the default
+     * @return this BatchRunner instance for method chaining
+     */
+    public BatchRunner setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Sets the Reporter that will generate the combined report of all jobs.
+     *
+     * @param reporter the BatchReporter instance to be used
+     * @return this BatchRunner instance for method chaining
+     */
+    public BatchRunner setReporter(BatchReporter reporter) {
+        this.reporter = reporter;
+        return this;
+    }
+
+    /**
+     * Compiles all jobs and generates their combined report, in the order in which the jobs were
+     * added.
+     *
+     * @throws IllegalStateException if no reporter was set
+     */
+    public void run() {
+        if (reporter == null) {
+            throw new IllegalStateException("No reporter set");
+        }
+        Map<String, CompilationReportData> reports = compileAll();
+        long start = System.nanoTime();
+        reporter.generateReports(reports);
+        if (metrics != null) {
+            metrics.addTime(RunMetrics.Step.REPORT, System.nanoTime() - start);
+        }
+    }
+
+    /** Compiles all jobs on a bounded thread pool and returns their report data by job id. */
+    private Map<String, CompilationReportData> compileAll() {
+        long start = System.nanoTime();
+        JavaCompiler compiler = CompilationTaskBuilder.getSystemJavaCompiler();
+        if (metrics != null) {
+            metrics.addTime(RunMetrics.Step.LOOKUP_COMPILER, System.nanoTime() - start);
+        }
+        Map<String, Future<CompilationReportData>> futures = new LinkedHashMap<>();
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, jobs.size())));
+        try {
+            jobs.forEach(
+                    (id, args) ->
+                            futures.put(id, executor.submit(() -> compile(compiler, args.call()))));
+            Map<String, CompilationReportData> reports = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<CompilationReportData>> entry : futures.entrySet()) {
+                CompilationReportData reportData;
+                try {
+                    reportData = entry.getValue().get();
+                } catch (ExecutionException e) {
+                    reportData = newErrorReport(e.getCause());
+                }
+                reports.put(entry.getKey(), reportData);
+            }
+            return reports;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while compiling jobs", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Compiles a single job with its own file manager and collectors. */
+    private CompilationReportData compile(JavaCompiler compiler, String[] args) throws IOException {
+        try (StandardJavaFileManager fileManager =
+                compiler.getStandardFileManager(null, null, null)) {
+            CompilerRunner runner = new CompilerRunner().setMetrics(metrics);
+            collectorFactories.forEach(runner::addCollector);
+            stages.forEach(runner::addStage);
+            CompilationReportData[] reportData = new CompilationReportData[1];
+            runner.setReporter(data -> reportData[0] = data)
+                    .run(
+                            metrics != null
+                                    ? CompilationTaskBuilder.fromArgs(
+                                            compiler, fileManager, args, metrics)
+                                    : CompilationTaskBuilder.fromArgs(compiler, fileManager, args));
+            return reportData[0];
+        }
+    }
+
+    private static CompilationReportData newErrorReport(Throwable failure) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("message", failure.toString());
+        CompilationReportData reportData = new CompilationReportData();
+        reportData.putSection("error", Collections.singletonList(error));
+        return reportData;
+    }
+}
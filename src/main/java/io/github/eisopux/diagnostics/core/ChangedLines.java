@@ -0,0 +1,221 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+
+/**
+ * The lines of source files that a change touches, read from a unified diff such as the output of
+ * {@code git diff}, or from a plain list of changed files.
+ *
+ * <p>In a diff, the added lines of each file are changed, and so are the lines on both sides of
+ * removed lines; context lines are not, so {@code git diff --unified=0} yields the smallest diff.
+ * In a list of files, one per line, every line of a listed file is changed; blank lines and lines
+ * starting with {@code #} are ignored.
+ *
+ * <p>The changed lines of each file are kept as sorted, disjoint ranges, so that checking whether a
+ * diagnostic touches them takes a single binary search.
+ */
+public final class ChangedLines {
+
+    /** Matches a hunk header, with the old line count and the new start line and count. */
+    private static final Pattern HUNK =
+            Pattern.compile("^@@ -\\d+(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@");
+
+    /** The changed line ranges by absolute, normalized file. */
+    private final Map<Path, Ranges> files;
+
+    private ChangedLines(Map<Path, Ranges> files) {
+        this.files = files;
+    }
+
+    /**
+     * Reads a unified diff or a list of changed files.
+     *
+     * @param file the diff or list
+     * @param baseDirectory the directory the files of the diff or list are relative to, usually the
+     *     root of the repository
+     * @return the changed lines
+     * @throws IOException if the file cannot be read
+     */
+    public static ChangedLines read(Path file, Path baseDirectory) throws IOException {
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), baseDirectory);
+    }
+
+    /**
+     * Parses a unified diff or a list of changed files. Content with a {@code +++} line is taken to
+     * be a diff.
+     *
+     * @param content the diff or list
+     * @param baseDirectory the directory the files of the diff or list are relative to
+     * @return the changed lines
+     */
+    public static ChangedLines parse(String content, Path baseDirectory) {
+        Path base = baseDirectory.toAbsolutePath().normalize();
+        String[] lines = content.split("\r?\n", -1);
+        Map<Path, List<int[]>> ranges = new HashMap<>();
+        if (Arrays.stream(lines).anyMatch(line -> line.startsWith("+++ "))) {
+            parseDiff(lines, base, ranges);
+        } else {
+            for (String line : lines) {
+                String path = line.trim();
+                if (!path.isEmpty() && !path.startsWith("#")) {
+                    ranges.computeIfAbsent(base.resolve(path).normalize(), p -> new ArrayList<>())
+                            .add(new int[] {1, Integer.MAX_VALUE});
+                }
+            }
+        }
+
+        Map<Path, Ranges> files = new HashMap<>();
+        ranges.forEach((path, fileRanges) -> files.put(path, new Ranges(fileRanges)));
+        return new ChangedLines(files);
+    }
+
+    private static void parseDiff(String[] lines, Path base, Map<Path, List<int[]>> ranges) {
+        List<int[]> current = null;
+        int line = 0;
+        int oldRemaining = 0;
+        int newRemaining = 0;
+        for (String text : lines) {
+            if (oldRemaining > 0 || newRemaining > 0) {
+                // Within a hunk, which may contain lines that look like headers.
+                if (text.startsWith("+")) {
+                    current.add(new int[] {line, line});
+                    line++;
+                    newRemaining--;
+                } else if (text.startsWith("-")) {
+                    current.add(new int[] {Math.max(1, line - 1), line});
+                    oldRemaining--;
+                } else if (!text.startsWith("\\")) {
+                    line++;
+                    oldRemaining--;
+                    newRemaining--;
+                }
+            } else if (text.startsWith("+++ ")) {
+                String path = text.substring(4);
+                int tab = path.indexOf('\t');
+                if (tab >= 0) {
+                    path = path.substring(0, tab);
+                }
+                if (path.equals("/dev/null")) {
+                    current = new ArrayList<>();
+                } else {
+                    if (path.startsWith("b/")) {
+                        path = path.substring(2);
+                    }
+                    current =
+                            ranges.computeIfAbsent(
+                                    base.resolve(path).normalize(), p -> new ArrayList<>());
+                }
+            } else if (current != null) {
+                Matcher hunk = HUNK.matcher(text);
+                if (hunk.find()) {
+                    oldRemaining = hunk.group(1) != null ? Integer.parseInt(hunk.group(1)) : 1;
+                    newRemaining = hunk.group(3) != null ? Integer.parseInt(hunk.group(3)) : 1;
+                    line = Integer.parseInt(hunk.group(2));
+                    if (newRemaining == 0) {
+                        // An empty range starts at the line before it.
+                        line++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a file is part of the change.
+     *
+     * @param file the source file
+     * @return whether the diff or list names the file
+     */
+    public boolean contains(File file) {
+        return files.containsKey(SourceRoots.normalize(file));
+    }
+
+    /**
+     * Returns whether a diagnostic touches a changed line. Diagnostics without a source file are
+     * not tied to lines and always touch the change; diagnostics of a file without a line touch it
+     * if the file is part of the change.
+     *
+     * @param diag the diagnostic
+     * @return whether the diagnostic is within the change
+     */
+    public boolean touches(DiagnosticRecord diag) {
+        String source = diag.getSource();
+        if (source == null || !source.startsWith("file:")) {
+            return true;
+        }
+        Ranges ranges;
+        try {
+            ranges = files.get(Paths.get(URI.create(source)).toAbsolutePath().normalize());
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        if (ranges == null) {
+            return false;
+        }
+        long start = diag.getStartLineNumber();
+        long end = diag.getEndLineNumber();
+        if (start == Diagnostic.NOPOS || end == Diagnostic.NOPOS) {
+            start = diag.getLineNumber();
+            end = start;
+        }
+        return start == Diagnostic.NOPOS || ranges.overlaps(start, end);
+    }
+
+    /**
+     * Returns the number of files that the change adds or modifies.
+     *
+     * @return the number of files
+     */
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /** Sorted, disjoint line ranges, inclusive at both ends. */
+    private static final class Ranges {
+        private final int[] starts;
+        private final int[] ends;
+
+        Ranges(List<int[]> ranges) {
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] mergedStarts = new int[ranges.size()];
+            int[] mergedEnds = new int[ranges.size()];
+            int count = 0;
+            for (int[] range : ranges) {
+                if (count > 0 && range[0] <= mergedEnds[count - 1] + 1L) {
+                    mergedEnds[count - 1] = Math.max(mergedEnds[count - 1], range[1]);
+                } else {
+                    mergedStarts[count] = range[0];
+                    mergedEnds[count] = range[1];
+                    count++;
+                }
+            }
+            starts = Arrays.copyOf(mergedStarts, count);
+            ends = Arrays.copyOf(mergedEnds, count);
+        }
+
+        /** Returns whether the lines from start to end, inclusive, overlap a range. */
+        boolean overlaps(long start, long end) {
+            int index = Arrays.binarySearch(starts, (int) Math.min(end, Integer.MAX_VALUE));
+            if (index < 0) {
+                // The last range that starts before the end.
+                index = -index - 2;
+            }
+            return index >= 0 && ends[index] >= start;
+        }
+    }
+}
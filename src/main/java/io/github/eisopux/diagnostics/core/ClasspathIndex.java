@@ -0,0 +1,292 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ClasspathIndex caches the entries that each jar on the class path contains, so that a
+ * compilation can look up the classes of a package without opening the jar and reading its
+ * central directory. A jar is only opened once javac reads one of its classes.
+ *
+ * <p>The index of each jar is stored as a file in a cache directory, keyed by the jar's absolute
+ * path, size and modification time, so that it is shared by all runs that use the same directory,
+ * including concurrent ones. A jar that changes is indexed again. Within one JVM, the indexes are
+ * also kept in memory, e.g. for the shards of a sharded run.
+ *
+ * <p>Jars that javac must read in its own way are not indexed, but searched by the standard file
+ * manager as usual: multi-release jars, whose classes depend on the target release, and jars that
+ * contain source files.
+ *
+ * @see CompilerRunner#setClasspathIndex(ClasspathIndex)
+ */
+public final class ClasspathIndex {
+
+    /** The first line of an index file, which changes whenever the format does. */
+    private static final String HEADER = "javac-diagnostics-wrapper classpath index 1";
+
+    private final Path directory;
+    private final Map<Path, JarIndex> jars = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a class path index that stores its files in a directory.
+     *
+     * @param directory the cache directory, which is created when the first index is written
+     */
+    public ClasspathIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the index of a jar, reading or creating it if the jar is new or has changed.
+     *
+     * @param jar the jar file
+     * @return the index, or null if the jar cannot be indexed and must be searched as usual
+     */
+    JarIndex get(File jar) {
+        Path path = jar.toPath().toAbsolutePath().normalize();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        JarIndex index = jars.get(path);
+        if (index != null && index.size == size && index.lastModified == lastModified) {
+            return index.indexable ? index : null;
+        }
+        try {
+            index = read(path, size, lastModified);
+        } catch (IOException e) {
+            // An unreadable index file is replaced.
+            index = null;
+        }
+        if (index == null) {
+            try {
+                index = scan(path, size, lastModified);
+            } catch (IOException e) {
+                // Let javac open the jar itself and report what is wrong with it.
+                return null;
+            }
+            try {
+                write(index);
+            } catch (IOException e) {
+                // The index still serves this run; the next one scans the jar again.
+            }
+        }
+        JarIndex previous = jars.put(path, index);
+        if (previous != null) {
+            previous.close();
+        }
+        return index.indexable ? index : null;
+    }
+
+    /** Returns the index file of a jar, named after a hash of its path. */
+    private Path getIndexFile(Path jar) {
+        UUID hash = UUID.nameUUIDFromBytes(jar.toString().getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(hash + ".idx");
+    }
+
+    /** Reads the index file of a jar, or returns null if there is none for this version of it. */
+    private JarIndex read(Path jar, long size, long lastModified) throws IOException {
+        try (BufferedReader reader =
+                Files.newBufferedReader(getIndexFile(jar), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())
+                    || !jar.toString().equals(reader.readLine())
+                    || !String.valueOf(size).equals(reader.readLine())
+                    || !String.valueOf(lastModified).equals(reader.readLine())) {
+                return null;
+            }
+            boolean indexable = Boolean.parseBoolean(reader.readLine());
+            List<Entry> entries = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new IOException("Malformed index entry: " + line);
+                }
+                entries.add(
+                        new Entry(
+                                line.substring(space + 1),
+                                Long.parseLong(line.substring(0, space))));
+            }
+            return new JarIndex(jar, size, lastModified, indexable, entries);
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /** Indexes a jar by reading its central directory. */
+    private static JarIndex scan(Path jar, long size, long lastModified) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        boolean indexable = true;
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                String name = zipEntry.getName();
+                if (!zipEntry.isDirectory()) {
+                    entries.add(new Entry(name, zipEntry.getTime()));
+                }
+                if (name.endsWith(".java") || name.startsWith("META-INF/versions/")) {
+                    indexable = false;
+                }
+            }
+        }
+        return new JarIndex(
+                jar, size, lastModified, indexable, indexable ? entries : new ArrayList<>());
+    }
+
+    /**
+     * Writes the index file of a jar. The file is replaced atomically where the file system
+     * supports it, so that concurrent runs never read a partial index.
+     */
+    private void write(JarIndex index) throws IOException {
+        Files.createDirectories(directory);
+        Path file = getIndexFile(index.jar);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer =
+                    Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(HEADER + "\n");
+                writer.write(index.jar + "\n");
+                writer.write(index.size + "\n");
+                writer.write(index.lastModified + "\n");
+                writer.write(index.indexable + "\n");
+                for (List<Entry> entries : index.packages.values()) {
+                    for (Entry entry : entries) {
+                        writer.write(entry.lastModified + " " + entry.name + "\n");
+                    }
+                }
+            }
+            try {
+                Files.move(
+                        temporary,
+                        file,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /** A file in a jar, with the modification time that javac reports for it. */
+    static final class Entry {
+        /** The entry name, e.g. {@code "java/util/List.class"}. */
+        final String name;
+
+        final long lastModified;
+
+        Entry(String name, long lastModified) {
+            this.name = name;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /** The files of one version of a jar, by package. */
+    static final class JarIndex {
+        final Path jar;
+        final long size;
+        final long lastModified;
+        final boolean indexable;
+
+        /** The files, by package name, e.g. {@code "java.util"}. */
+        private final NavigableMap<String, List<Entry>> packages = new TreeMap<>();
+
+        /** The jar, once a class file has been read from it. */
+        private ZipFile zip;
+
+        JarIndex(Path jar, long size, long lastModified, boolean indexable, List<Entry> entries) {
+            this.jar = jar;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.indexable = indexable;
+            for (Entry entry : entries) {
+                int slash = entry.name.lastIndexOf('/');
+                String packageName =
+                        slash < 0 ? "" : entry.name.substring(0, slash).replace('/', '.');
+                packages.computeIfAbsent(packageName, p -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        /**
+         * Returns the files in a package.
+         *
+         * @param packageName the package name, e.g. {@code "java.util"}
+         * @param recurse whether to include the files of subpackages
+         * @return the files
+         */
+        List<Entry> list(String packageName, boolean recurse) {
+            if (!recurse) {
+                return packages.getOrDefault(packageName, Collections.emptyList());
+            }
+            List<Entry> entries = new ArrayList<>();
+            String prefix = packageName.isEmpty() ? "" : packageName + ".";
+            for (Map.Entry<String, List<Entry>> e : packages.tailMap(packageName).entrySet()) {
+                String name = e.getKey();
+                if (!name.startsWith(packageName)) {
+                    break;
+                }
+                if (name.equals(packageName) || name.startsWith(prefix)) {
+                    entries.addAll(e.getValue());
+                }
+            }
+            return entries;
+        }
+
+        /** Opens an entry of the jar, opening the jar itself on first use. */
+        synchronized InputStream open(String name) throws IOException {
+            if (zip == null) {
+                zip = new ZipFile(jar.toFile());
+            }
+            ZipEntry entry = zip.getEntry(name);
+            if (entry == null) {
+                throw new NoSuchFileException(jar + "(" + name + ")");
+            }
+            return zip.getInputStream(entry);
+        }
+
+        /** Closes the jar once a newer version replaces this one. */
+        synchronized void close() {
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    // Nothing useful can be done about a jar that fails to close.
+                }
+                zip = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A {@link JavaFileManager} that lists the files of the jars on the class path from a {@link
+ * ClasspathIndex}, so that a jar is only opened once javac reads one of its classes.
+ *
+ * <p>The class path entries that are not indexed, such as directories, are each searched by the
+ * delegate through a location of their own, so that the order of the class path, and with it which
+ * of several classes of the same name javac uses, is kept. Everything else is forwarded to the
+ * delegate, which is not closed with this file manager.
+ */
+final class ClasspathIndexFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    /** The locations of the class path entries that are not indexed, by their position. */
+    private static final Map<Integer, Location> ENTRY_LOCATIONS = new ConcurrentHashMap<>();
+
+    private final ClasspathIndex index;
+
+    /** The indexed jars and other entries of the class path, resolved on the first lookup. */
+    private List<PathEntry> entries;
+
+    ClasspathIndexFileManager(StandardJavaFileManager fileManager, ClasspathIndex index) {
+        super(fileManager);
+        this.index = index;
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(
+            Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+            throws IOException {
+        if (location != StandardLocation.CLASS_PATH) {
+            return super.list(location, packageName, kinds, recurse);
+        }
+        List<JavaFileObject> files = new ArrayList<>();
+        for (PathEntry entry : getEntries()) {
+            if (entry.jar != null) {
+                for (ClasspathIndex.Entry jarEntry : entry.jar.list(packageName, recurse)) {
+                    IndexedFile file = new IndexedFile(entry, jarEntry);
+                    if (kinds.contains(file.kind)) {
+                        files.add(file);
+                    }
+                }
+            } else {
+                for (JavaFileObject file :
+                        fileManager.list(entry.getLocation(), packageName, kinds, recurse)) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof IndexedFile) {
+            return ((IndexedFile) file).binaryName;
+        }
+        return super.inferBinaryName(location, file);
+    }
+
+    /** Leaves the delegate open; the indexed jars stay open with their {@link ClasspathIndex}. */
+    @Override
+    public void close() {}
+
+    private List<PathEntry> getEntries() throws IOException {
+        if (entries == null) {
+            List<PathEntry> resolved = new ArrayList<>();
+            Iterable<? extends File> classPath =
+                    fileManager.getLocation(StandardLocation.CLASS_PATH);
+            for (File file : classPath != null ? classPath : Collections.<File>emptyList()) {
+                ClasspathIndex.JarIndex jar = file.isFile() ? index.get(file) : null;
+                PathEntry entry = new PathEntry(file, jar, resolved.size());
+                if (jar == null) {
+                    fileManager.setLocation(entry.getLocation(), Collections.singletonList(file));
+                }
+                resolved.add(entry);
+            }
+            entries = resolved;
+        }
+        return entries;
+    }
+
+    /** A class path entry: an indexed jar, or a location of its own for the delegate to search. */
+    private static final class PathEntry {
+        final File file;
+        final ClasspathIndex.JarIndex jar;
+        final int position;
+
+        PathEntry(File file, ClasspathIndex.JarIndex jar, int position) {
+            this.file = file;
+            this.jar = jar;
+            this.position = position;
+        }
+
+        Location getLocation() {
+            return ENTRY_LOCATIONS.computeIfAbsent(position, EntryLocation::new);
+        }
+    }
+
+    /** The location of a single class path entry that is not indexed. */
+    private static final class EntryLocation implements Location {
+        private final int position;
+
+        EntryLocation(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public String getName() {
+            return "CLASS_PATH_ENTRY_" + position;
+        }
+
+        @Override
+        public boolean isOutputLocation() {
+            return false;
+        }
+    }
+
+    /**
+     * A file in an indexed jar, which is read from the jar on first use. Its URI has the {@code
+     * jar:} form that javac uses, which {@link javax.tools.SimpleJavaFileObject} rejects.
+     */
+    private static final class IndexedFile implements JavaFileObject {
+        private final PathEntry pathEntry;
+        private final ClasspathIndex.JarIndex jar;
+        private final ClasspathIndex.Entry entry;
+        final Kind kind;
+        final String binaryName;
+
+        IndexedFile(PathEntry pathEntry, ClasspathIndex.Entry entry) {
+            this.pathEntry = pathEntry;
+            this.jar = pathEntry.jar;
+            this.entry = entry;
+            this.kind = getKind(entry.name);
+            this.binaryName =
+                    entry.name
+                            .substring(0, entry.name.length() - kind.extension.length())
+                            .replace('/', '.');
+        }
+
+        /** Returns the kind of a file from its name, as javac's own file manager does. */
+        private static Kind getKind(String name) {
+            for (Kind kind : EnumSet.of(Kind.CLASS, Kind.SOURCE, Kind.HTML)) {
+                if (name.endsWith(kind.extension)) {
+                    return kind;
+                }
+            }
+            return Kind.OTHER;
+        }
+
+        @Override
+        public URI toUri() {
+            return URI.create("jar:" + jar.jar.toUri() + "!/" + entry.name);
+        }
+
+        @Override
+        public String getName() {
+            // The form javac uses for files in jars, e.g. in diagnostics.
+            return pathEntry.file + "(/" + entry.name + ")";
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            return jar.open(entry.name);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Reader openReader(boolean ignoreEncodingErrors) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Writer openWriter() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getLastModified() {
+            return entry.lastModified;
+        }
+
+        @Override
+        public boolean delete() {
+            return false;
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public boolean isNameCompatible(String simpleName, Kind kind) {
+            return kind == this.kind
+                    && binaryName.substring(binaryName.lastIndexOf('.') + 1).equals(simpleName);
+        }
+
+        @Override
+        public NestingKind getNestingKind() {
+            return null;
+        }
+
+        @Override
+        public Modifier getAccessLevel() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+}
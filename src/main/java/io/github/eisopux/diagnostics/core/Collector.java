@@ -1,5 +1,8 @@
 package io.github.eisopux.diagnostics.core;
 
+import java.util.Collection;
+import java.util.Collections;
+
 /**
  * A Collector is responsible for gathering diagnostic or other compiler-related data during a
  * compilation run.
@@ -7,6 +10,11 @@ package io.github.eisopux.diagnostics.core;
  * <p>Implementations of this interface may be used to attach listeners, perform analysis, or
  * collect additional metadata during the compilation process. The collected data is then
  * incorporated into a {@link CompilationReportData} instance as a list of key/value pairs.
+ *
+ * <p>{@link #onBeforeCompile(CompilationTaskBuilder)} is called on one collector after the other,
+ * in the order in which they were added. So is {@link #onAfterCompile(CompilationReportData)},
+ * unless {@link CompilerRunner#setParallelCollectors(boolean)} lets it be called concurrently for
+ * collectors that do not declare a dependency on each other (see {@link #getDependencies()}).
  */
 public interface Collector {
 
@@ -26,4 +34,16 @@ public interface Collector {
      *     data
      */
     void onAfterCompile(CompilationReportData reportData);
+
+    /**
+     * Returns the types of the collectors whose {@link #onAfterCompile(CompilationReportData)} must
+     * have returned before this collector's is called, e.g. because this collector post-processes
+     * their sections. With {@link CompilerRunner#setParallelCollectors(boolean)}, {@code
+     * onAfterCompile} of collectors that do not depend on each other is called concurrently.
+     *
+     * @return the types of the collectors this collector depends on, none by default
+     */
+    default Collection<Class<? extends Collector>> getDependencies() {
+        return Collections.emptyList();
+    }
 }
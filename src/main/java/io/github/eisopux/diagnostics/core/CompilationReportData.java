@@ -1,9 +1,12 @@
 package io.github.eisopux.diagnostics.core;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * CompilationReportData serves as a central container for aggregating data collected during a
@@ -11,6 +14,16 @@ import java.util.Map;
  * unique string key and is represented as a list of key/value pairs (i.e. a {@code List<Map<String,
  * Object>>}). {@link Collector} implementations should conform the data they collect to this
  * mapping
+ *
+ * <p>Alternatively, a section can be stored as a list of typed {@link ReportRecord}s. Reporters
+ * that know the record type read them directly via {@link #getTypedSection(String, Class,
+ * Function)}; for everyone else, the key/value pairs of a typed section are materialized on first
+ * access.
+ *
+ * <p>Sections may be put and read concurrently, e.g. by collectors whose {@link
+ * Collector#onAfterCompile(CompilationReportData)} runs in parallel. The views of all sections,
+ * {@link #getSectionIds()} and {@link #getAllSections()}, are meant for reporters and stages, once
+ * all sections have been put.
  */
 public class CompilationReportData {
 
@@ -27,7 +40,7 @@ public class CompilationReportData {
      *       {@code "ERROR"} or key {@code "line"} with value {@code 42})
      * </ul>
      */
-    private final Map<String, List<Map<String, Object>>> sections = new HashMap<>();
+    private final Map<String, Section> sections = Collections.synchronizedMap(new HashMap<>());
 
     /**
      * Associates the specified section data with the given section identifier.
@@ -36,7 +49,20 @@ public class CompilationReportData {
      * @param sectionData a list of key/value pair mappings representing the section's data
      */
     public void putSection(String sectionId, List<Map<String, Object>> sectionData) {
-        sections.put(sectionId, sectionData);
+        sections.put(sectionId, new Section(null, null, sectionData));
+    }
+
+    /**
+     * Associates the specified typed records with the given section identifier.
+     *
+     * @param sectionId the unique identifier for the section (e.g., "diagnostics")
+     * @param type the type of the records
+     * @param records the records of the section
+     * @param <T> the type of the records
+     */
+    public <T extends ReportRecord> void putTypedSection(
+            String sectionId, Class<T> type, List<T> records) {
+        sections.put(sectionId, new Section(type, records, null));
     }
 
     /**
@@ -47,7 +73,58 @@ public class CompilationReportData {
      *     does not exist
      */
     public List<Map<String, Object>> getSection(String sectionId) {
-        return sections.get(sectionId);
+        Section section = sections.get(sectionId);
+        return section != null ? section.getMaps() : null;
+    }
+
+    /**
+     * Retrieves the records of the specified section as instances of the given type, without
+     * materializing key/value pairs if the section was stored with that type.
+     *
+     * @param sectionId the unique identifier for the section
+     * @param type the expected type of the records
+     * @param fromMap converts a key/value pair mapping into a record, for sections that were stored
+     *     as key/value pairs
+     * @param <T> the type of the records
+     * @return the records of the section, or {@code null} if the section does not exist
+     */
+    public <T extends ReportRecord> List<T> getTypedSection(
+            String sectionId, Class<T> type, Function<Map<String, Object>, T> fromMap) {
+        Section section = sections.get(sectionId);
+        if (section == null) {
+            return null;
+        }
+        if (section.type == type) {
+            @SuppressWarnings("unchecked") // The records were stored with this type.
+            List<T> records = (List<T>) section.records;
+            return records;
+        }
+        List<T> records = new ArrayList<>();
+        section.getMaps().forEach(map -> records.add(fromMap.apply(map)));
+        return records;
+    }
+
+    /**
+     * Returns the type of the records of a section that was stored as typed records, so that
+     * reporters can tell whether reading it via {@link #getTypedSection(String, Class, Function)}
+     * is free of conversions.
+     *
+     * @param sectionId the unique identifier for the section
+     * @return the type of the records, or {@code null} if the section was stored as key/value
+     *     pairs or does not exist
+     */
+    public Class<? extends ReportRecord> getSectionType(String sectionId) {
+        Section section = sections.get(sectionId);
+        return section != null ? section.type : null;
+    }
+
+    /**
+     * Returns the identifiers of all sections, without materializing any key/value pairs.
+     *
+     * @return an unmodifiable set of the section identifiers
+     */
+    public Set<String> getSectionIds() {
+        return Collections.unmodifiableSet(sections.keySet());
     }
 
     /**
@@ -57,6 +134,34 @@ public class CompilationReportData {
      *     of key/value pair mappings representing that section's data
      */
     public Map<String, List<Map<String, Object>>> getAllSections() {
-        return Collections.unmodifiableMap(sections);
+        Map<String, List<Map<String, Object>>> allSections = new HashMap<>();
+        sections.forEach((sectionId, section) -> allSections.put(sectionId, section.getMaps()));
+        return Collections.unmodifiableMap(allSections);
+    }
+
+    /** A section, stored either as typed records or as key/value pairs. */
+    private static final class Section {
+        private final Class<? extends ReportRecord> type;
+        private final List<? extends ReportRecord> records;
+        private List<Map<String, Object>> maps;
+
+        Section(
+                Class<? extends ReportRecord> type,
+                List<? extends ReportRecord> records,
+                List<Map<String, Object>> maps) {
+            this.type = type;
+            this.records = records;
+            this.maps = maps;
+        }
+
+        /** Returns the key/value pairs of this section, materializing them on first access. */
+        synchronized List<Map<String, Object>> getMaps() {
+            if (maps == null) {
+                List<Map<String, Object>> materialized = new ArrayList<>(records.size());
+                records.forEach(record -> materialized.add(record.toMap()));
+                maps = materialized;
+            }
+            return maps;
+        }
     }
 }
@@ -1,8 +1,26 @@
 package io.github.eisopux.diagnostics.core;
 
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskListener;
+
 import java.io.File;
-import java.util.*;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
+import javax.annotation.processing.Processor;
 import javax.lang.model.SourceVersion;
 import javax.tools.*;
 
@@ -15,49 +33,139 @@ public class CompilationTaskBuilder {
     private final StandardJavaFileManager fileManager;
     private final JavacOptions options;
     private javax.tools.DiagnosticCollector<JavaFileObject> diagnosticListener;
-    private final Iterable<? extends JavaFileObject> javaFiles;
+    private final List<DiagnosticListener<? super JavaFileObject>> additionalListeners =
+            new ArrayList<>();
+    private final List<Predicate<? super Diagnostic<? extends JavaFileObject>>> diagnosticFilters =
+            new ArrayList<>();
+    private final List<TaskListener> taskListeners = new ArrayList<>();
+    private final List<Function<? super JavacTask, ? extends TaskListener>> taskListenerFactories =
+            new ArrayList<>();
+    private final List<UnaryOperator<Processor>> processorWrappers = new ArrayList<>();
+    private final List<String> additionalOptions = new ArrayList<>();
+    private List<File> files;
+    private boolean upToDate;
+    private InMemoryFileManager inMemoryFileManager;
+    private ClasspathIndex classpathIndex;
+    private Map<Path, String> sourceContents = Collections.emptyMap();
 
     private CompilationTaskBuilder(
             JavaCompiler compiler,
             StandardJavaFileManager fileManager,
             JavacOptions options,
-            DiagnosticCollector<JavaFileObject> diagnosticListener,
-            Iterable<? extends JavaFileObject> javaFiles) {
+            DiagnosticCollector<JavaFileObject> diagnosticListener) {
         this.compiler = compiler;
         this.fileManager = fileManager;
         this.options = options;
         this.diagnosticListener = diagnosticListener;
-        this.javaFiles = javaFiles;
+        this.files = options.getFiles();
     }
 
     /**
      * Creates a new CompilationTaskBuilder instance by parsing command-line arguments. This method
      * retrieves the system Java compiler, obtains its standard file manager, and uses {@link
      * JavacOptions#parse(OptionChecker, OptionChecker, String...)} to separate the arguments into
-     * recognized options, class names, and source file paths.
+     * recognized options, class names, and source file paths. If the arguments are invalid, the
+     * problems are printed and the JVM terminates; {@link CompilerRunner#run(String[])} reports
+     * them as diagnostics instead.
      *
      * @param args the command-line arguments to be parsed and used for the compilation task
      * @return a configured CompilationTaskBuilder ready to build a CompilationTask
      * @throws IllegalStateException if no system Java compiler is found
      */
     public static CompilationTaskBuilder fromArgs(String[] args) {
-        JavaCompiler compiler = javax.tools.ToolProvider.getSystemJavaCompiler();
-        if (compiler == null) {
-            throw new IllegalStateException(
-                    "No system Java compiler found. Are you running a JRE instead of a JDK?");
+        try {
+            return fromArgs(args, new RunMetrics());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            throw e;
         }
+    }
+
+    /**
+     * Creates a new CompilationTaskBuilder instance with the system Java compiler, and records the
+     * time it takes to look up the compiler and to parse the arguments.
+     *
+     * @throws InvalidArgumentsException if the arguments are invalid
+     */
+    static CompilationTaskBuilder fromArgs(String[] args, RunMetrics metrics) {
+        long start = System.nanoTime();
+        JavaCompiler compiler = getSystemJavaCompiler();
         StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        metrics.addTime(RunMetrics.Step.LOOKUP_COMPILER, System.nanoTime() - start);
 
-        JavacOptions options = JavacOptions.parse(compiler, fileManager, args);
-        if (!options.getUnrecognizedOptions().isEmpty()) {
-            System.err.println("Invalid options: " + options);
-            System.exit(1);
+        return fromArgs(compiler, fileManager, args, metrics);
+    }
+
+    /**
+     * Creates a new CompilationTaskBuilder instance that compiles with the given, possibly
+     * long-lived, compiler and file manager. Unlike {@link #fromArgs(String[])}, invalid arguments
+     * are reported by throwing instead of terminating the JVM, so that callers that keep the
+     * compiler warm across runs can survive a bad request.
+     *
+     * @param compiler the Java compiler to create the compilation task with
+     * @param fileManager the file manager to resolve source files and locations with
+     * @param args the command-line arguments to be parsed and used for the compilation task
+     * @return a configured CompilationTaskBuilder ready to build a CompilationTask
+     * @throws InvalidArgumentsException if the arguments contain unrecognized options, lack the
+     *     value of an option, or name an argument file that cannot be read
+     */
+    public static CompilationTaskBuilder fromArgs(
+            JavaCompiler compiler, StandardJavaFileManager fileManager, String[] args) {
+        return fromOptions(compiler, fileManager, JavacOptions.parse(compiler, fileManager, args));
+    }
+
+    /**
+     * Creates a new CompilationTaskBuilder instance like {@link #fromArgs(JavaCompiler,
+     * StandardJavaFileManager, String[])}, and records the arguments and the time it takes to parse
+     * them.
+     */
+    static CompilationTaskBuilder fromArgs(
+            JavaCompiler compiler,
+            StandardJavaFileManager fileManager,
+            String[] args,
+            RunMetrics metrics) {
+        long start = System.nanoTime();
+        try {
+            return fromArgs(compiler, fileManager, args);
+        } finally {
+            metrics.addTime(RunMetrics.Step.PARSE_ARGUMENTS, System.nanoTime() - start);
+            metrics.add(RunMetrics.Counter.ARGUMENTS, args.length);
         }
+    }
 
-        Iterable<? extends JavaFileObject> javaFiles =
-                fileManager.getJavaFileObjectsFromFiles(options.getFiles());
+    /**
+     * Creates a new CompilationTaskBuilder instance from already parsed options.
+     *
+     * @throws InvalidArgumentsException if parsing the options found problems
+     */
+    static CompilationTaskBuilder fromOptions(
+            JavaCompiler compiler, StandardJavaFileManager fileManager, JavacOptions options) {
+        if (!options.getErrors().isEmpty()) {
+            throw new InvalidArgumentsException(options.getErrors());
+        }
+
+        return new CompilationTaskBuilder(compiler, fileManager, options, null);
+    }
+
+    /**
+     * Returns the system Java compiler.
+     *
+     * @return the system Java compiler
+     * @throws IllegalStateException if no system Java compiler is found
+     */
+    static JavaCompiler getSystemJavaCompiler() {
+        JavaCompiler compiler = javax.tools.ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException(
+                    "No system Java compiler found. Are you running a JRE instead of a JDK?");
+        }
+        return compiler;
+    }
 
-        return new CompilationTaskBuilder(compiler, fileManager, options, null, javaFiles);
+    /** Returns the options this builder was created from, for builders of the same arguments. */
+    JavacOptions getParsedOptions() {
+        return options;
     }
 
     /**
@@ -74,97 +182,320 @@ public class CompilationTaskBuilder {
     }
 
     /**
-     * Builds a fully configured {@link javax.tools.JavaCompiler.CompilationTask}.
+     * Returns whether {@link #restrictFiles(Collection)} excluded every source file, so that there
+     * is nothing left to compile.
      *
-     * @return a CompilationTask ready to be executed
+     * @return {@code true} iff the compilation task can be skipped
      */
-    public JavaCompiler.CompilationTask build() {
-        return compiler.getTask(
-                null,
-                fileManager,
-                diagnosticListener,
-                options.getRecognizedOptions(),
-                options.getClassNames(),
-                javaFiles);
-    }
-
-    /** JavacOptions encapsulates the parsing of command-line arguments for the Java compiler. */
-    private static final class JavacOptions {
-        private final List<String> recognizedOptions;
-        private final List<String> classNames;
-        private final List<File> files;
-        private final List<String> unrecognizedOptions;
-
-        private JavacOptions(
-                List<String> recognizedOptions,
-                List<String> classNames,
-                List<File> files,
-                List<String> unrecognizedOptions) {
-            this.recognizedOptions = recognizedOptions;
-            this.classNames = classNames;
-            this.files = files;
-            this.unrecognizedOptions = unrecognizedOptions;
-        }
-
-        static JavacOptions parse(
-                OptionChecker primary, OptionChecker secondary, String... arguments) {
-
-            List<String> recognizedOptions = new ArrayList<>();
-            List<String> unrecognizedOptions = new ArrayList<>();
-            List<String> classNames = new ArrayList<>();
-            List<File> files = new ArrayList<>();
-
-            for (int i = 0; i < arguments.length; i++) {
-                String argument = arguments[i];
-                int optionCount = primary.isSupportedOption(argument);
-                if (optionCount < 0) {
-                    optionCount = secondary.isSupportedOption(argument);
-                }
-                if (optionCount < 0) {
-                    File file = new File(argument);
-                    if (file.exists()) {
-                        files.add(file);
-                    } else if (SourceVersion.isName(argument)) {
-                        classNames.add(argument);
-                    } else {
-                        unrecognizedOptions.add(argument);
-                    }
-                } else {
-                    for (int j = 0; j < optionCount + 1; j++) {
-                        int index = i + j;
-                        if (index == arguments.length) {
-                            throw new IllegalArgumentException(argument);
-                        }
-                        recognizedOptions.add(arguments[index]);
-                    }
-                    i += optionCount;
+    public boolean isUpToDate() {
+        return upToDate;
+    }
+
+    /**
+     * Registers a listener that receives every diagnostic as soon as javac reports it, in addition
+     * to the (buffering) diagnostic collector returned by {@link
+     * #getOrCreateDiagnosticListener()}.
+     *
+     * @param listener the listener to forward diagnostics to
+     */
+    public void addDiagnosticListener(DiagnosticListener<? super JavaFileObject> listener) {
+        additionalListeners.add(listener);
+    }
+
+    /**
+     * Registers a filter that sees every diagnostic before the diagnostic collector and the
+     * additional listeners, e.g. to consume diagnostics that only serve to observe the compilation.
+     * A diagnostic that a filter rejects is not passed on. Filters only apply if there is a
+     * listener, since javac prints the diagnostics itself otherwise.
+     *
+     * @param filter the filter that returns whether to pass a diagnostic on to the listeners
+     */
+    public void addDiagnosticFilter(
+            Predicate<? super Diagnostic<? extends JavaFileObject>> filter) {
+        diagnosticFilters.add(filter);
+    }
+
+    /**
+     * Registers a listener that javac notifies when it starts and finishes each phase of the
+     * compilation task, such as parsing or analyzing a compilation unit.
+     *
+     * @param listener the listener to add to the {@link JavacTask}
+     */
+    public void addTaskListener(TaskListener listener) {
+        taskListeners.add(listener);
+    }
+
+    /**
+     * Registers a function that creates a task listener for the compilation task once it is built,
+     * for listeners that need the task itself, e.g. to look up source positions with {@link
+     * com.sun.source.util.Trees#instance(JavaCompiler.CompilationTask)}.
+     *
+     * @param factory the function that returns the listener to add to the given {@link JavacTask}
+     */
+    public void addTaskListenerFactory(
+            Function<? super JavacTask, ? extends TaskListener> factory) {
+        taskListenerFactories.add(factory);
+    }
+
+    /**
+     * Registers a function that wraps each annotation processor of the compilation task, e.g. to
+     * measure or observe it. The processors are discovered like javac does; if that is not
+     * possible, e.g. because they are loaded from a module path, they remain unwrapped.
+     *
+     * @param wrapper the function that returns the processor to use in place of the given one
+     */
+    public void addProcessorWrapper(UnaryOperator<Processor> wrapper) {
+        processorWrappers.add(wrapper);
+    }
+
+    /**
+     * Returns the javac options the compilation task will be created with.
+     *
+     * @return an unmodifiable list of the recognized javac options, including any options added to
+     *     compile a subset of the source files
+     */
+    public List<String> getOptions() {
+        List<String> allOptions = new ArrayList<>(options.getRecognizedOptions());
+        allOptions.addAll(additionalOptions);
+        return Collections.unmodifiableList(allOptions);
+    }
+
+    /**
+     * Returns the source files the compilation task will compile.
+     *
+     * @return an unmodifiable list of the source files to compile
+     */
+    public List<File> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Restricts the compilation to a subset of the source files. The source files that are no
+     * longer compiled remain available to the compiler through the source path, so the retained
+     * files can still refer to them; they are not subject to annotation processing and produce no
+     * class files.
+     *
+     * <p>If no {@code -sourcepath} was given, one is derived from the package declarations of the
+     * excluded files. If the source root of an excluded file cannot be derived, because its
+     * directory does not match its package, all files remain part of the compilation.
+     *
+     * @param retainedFiles the files to keep compiling; files not given on the command line are
+     *     ignored
+     * @return whether the compilation was restricted
+     */
+    public boolean restrictFiles(Collection<File> retainedFiles) {
+        Set<Path> retained =
+                retainedFiles.stream().map(SourceRoots::normalize).collect(Collectors.toSet());
+        List<File> kept = new ArrayList<>();
+        List<File> excluded = new ArrayList<>();
+        for (File file : files) {
+            (retained.contains(SourceRoots.normalize(file)) ? kept : excluded).add(file);
+        }
+        if (excluded.isEmpty()) {
+            return true;
+        }
+
+        List<String> contextOptions = new ArrayList<>();
+        List<String> currentOptions = getOptions();
+        if (!currentOptions.contains("-sourcepath") && !currentOptions.contains("--source-path")) {
+            Set<Path> roots = new LinkedHashSet<>();
+            for (File file : excluded) {
+                Path root = SourceRoots.inferRoot(file.toPath());
+                if (root == null) {
+                    return false;
                 }
+                roots.add(root);
             }
-
-            return new JavacOptions(recognizedOptions, classNames, files, unrecognizedOptions);
+            contextOptions.add("-sourcepath");
+            contextOptions.add(
+                    roots.stream()
+                            .map(Path::toString)
+                            .collect(Collectors.joining(File.pathSeparator)));
         }
+        if (currentOptions.stream().noneMatch(option -> option.startsWith("-implicit:"))) {
+            contextOptions.add("-implicit:none");
+        }
+
+        additionalOptions.addAll(contextOptions);
+        upToDate = kept.isEmpty() && options.getClassNames().isEmpty();
+        files = kept;
+        return true;
+    }
 
-        List<String> getRecognizedOptions() {
-            return Collections.unmodifiableList(recognizedOptions);
+    /**
+     * Returns whether {@link #restrictFiles(Collection)} can restrict the compilation to any subset
+     * of the source files, i.e. whether a source path was given or the source roots of all source
+     * files can be derived. Unlike {@code restrictFiles}, this does not change the builder.
+     *
+     * @return whether restricting the compilation to any subset of the source files succeeds
+     */
+    boolean canRestrictFiles() {
+        List<String> currentOptions = getOptions();
+        return currentOptions.contains("-sourcepath")
+                || currentOptions.contains("--source-path")
+                || files.stream().allMatch(file -> SourceRoots.inferRoot(file.toPath()) != null);
+    }
+
+    /**
+     * Returns this builder's in-memory file manager, through which the compilation task reads and
+     * writes its files. If none exists yet, the method lazily creates one and reuses it on
+     * subsequent calls. Until it is configured otherwise, it behaves like the standard file
+     * manager, except that javac skips the checks that need its own file manager, see {@link
+     * #setSourceContents(Map)}.
+     *
+     * @return the in-memory file manager instance
+     */
+    public InMemoryFileManager getOrCreateInMemoryFileManager() {
+        if (this.inMemoryFileManager == null) {
+            this.inMemoryFileManager = new InMemoryFileManager(fileManager);
         }
+        return this.inMemoryFileManager;
+    }
 
-        List<File> getFiles() {
-            return Collections.unmodifiableList(files);
+    /**
+     * Sets the index that the compilation task looks up the classes of the jars on the class path
+     * in, instead of reading each jar's central directory, see {@link ClasspathIndex}. The index is
+     * not used together with the {@link #getOrCreateInMemoryFileManager() in-memory file manager},
+     * whose delegate keeps its opened jars across compilations anyway, nor where it would change
+     * the diagnostics, see {@link #canUseClasspathIndex()}.
+     *
+     * @param classpathIndex the index to use, or {@code null} to search the jars as usual
+     */
+    public void setClasspathIndex(ClasspathIndex classpathIndex) {
+        this.classpathIndex = classpathIndex;
+    }
+
+    /**
+     * Returns whether the compilation task can look up the class path in the index without changing
+     * its diagnostics. javac runs some of its checks only if the task's file manager is its own:
+     * javac 8 only then warns about {@code -source 7} without a boot class path, and later versions
+     * also only then read the JDK's symbol file, which they need to warn about internal APIs such
+     * as {@code sun.misc.Unsafe}. The index is thus only used with javac 8 and a source version of
+     * at least 8.
+     */
+    boolean canUseClasspathIndex() {
+        for (SourceVersion version : compiler.getSourceVersions()) {
+            if (version.compareTo(SourceVersion.RELEASE_8) > 0) {
+                return false;
+            }
+        }
+        List<String> currentOptions = getOptions();
+        int index = currentOptions.lastIndexOf("-source");
+        if (index < 0 || index + 1 == currentOptions.size()) {
+            return true;
         }
+        String source = currentOptions.get(index + 1);
+        return source.equals("8") || source.equals("1.8");
+    }
 
-        List<String> getClassNames() {
-            return Collections.unmodifiableList(classNames);
+    /**
+     * Makes the compilation task read the source files to compile from the given content instead
+     * of from disk, e.g. content that several tasks share. Unlike the overlays of the {@link
+     * #getOrCreateInMemoryFileManager() in-memory file manager}, this keeps the standard file
+     * manager, whose type javac checks before it warns about options such as {@code -source 8}
+     * without a boot class path. Files found on the source path are still read from disk, and the
+     * content is ignored if the in-memory file manager is used.
+     *
+     * @param sourceContents the content of source files, keyed by their path
+     */
+    public void setSourceContents(Map<Path, String> sourceContents) {
+        Map<Path, String> normalized = new HashMap<>();
+        sourceContents.forEach(
+                (path, content) -> normalized.put(path.toAbsolutePath().normalize(), content));
+        this.sourceContents = normalized;
+    }
+
+    /** Returns file objects that read the source contents of files that have one. */
+    private Iterable<? extends JavaFileObject> withSourceContents(
+            Iterable<? extends JavaFileObject> javaFiles) {
+        if (sourceContents.isEmpty()) {
+            return javaFiles;
         }
+        List<JavaFileObject> result = new ArrayList<>();
+        for (JavaFileObject file : javaFiles) {
+            URI uri = file.toUri();
+            String content =
+                    "file".equals(uri.getScheme())
+                            ? sourceContents.get(Paths.get(uri).toAbsolutePath().normalize())
+                            : null;
+            result.add(content != null ? InMemoryFileManager.overlay(file, content) : file);
+        }
+        return result;
+    }
 
-        List<String> getUnrecognizedOptions() {
-            return Collections.unmodifiableList(unrecognizedOptions);
+    /**
+     * Builds a fully configured {@link javax.tools.JavaCompiler.CompilationTask}.
+     *
+     * @return a CompilationTask ready to be executed
+     * @throws IllegalStateException if task listeners or processor wrappers were added, but the
+     *     compiler is not javac
+     */
+    public JavaCompiler.CompilationTask build() {
+        List<String> allOptions = getOptions();
+        JavaFileManager taskFileManager;
+        Iterable<? extends JavaFileObject> javaFiles;
+        if (inMemoryFileManager != null) {
+            taskFileManager = inMemoryFileManager;
+            javaFiles = inMemoryFileManager.getJavaFileObjectsFromFiles(files);
+        } else {
+            taskFileManager =
+                    classpathIndex != null && canUseClasspathIndex()
+                            ? new ClasspathIndexFileManager(fileManager, classpathIndex)
+                            : fileManager;
+            javaFiles = withSourceContents(fileManager.getJavaFileObjectsFromFiles(files));
+        }
+        JavaCompiler.CompilationTask task =
+                compiler.getTask(
+                        null,
+                        taskFileManager,
+                        createDiagnosticListener(),
+                        allOptions,
+                        options.getClassNames(),
+                        javaFiles);
+        if (taskListeners.isEmpty()
+                && taskListenerFactories.isEmpty()
+                && processorWrappers.isEmpty()) {
+            return task;
+        }
+        if (!(task instanceof JavacTask)) {
+            throw new IllegalStateException(
+                    "Task listeners and processor wrappers require javac, not "
+                            + task.getClass().getName());
         }
+        JavacTask javacTask = (JavacTask) task;
+        taskListeners.forEach(javacTask::addTaskListener);
+        for (Function<? super JavacTask, ? extends TaskListener> factory : taskListenerFactories) {
+            javacTask.addTaskListener(factory.apply(javacTask));
+        }
+        if (processorWrappers.isEmpty()) {
+            return javacTask;
+        }
+        return AnnotationProcessors.wrap(
+                javacTask, taskFileManager, allOptions, processorWrappers);
+    }
 
-        @Override
-        public String toString() {
-            return String.format(
-                    "recognizedOptions = %s; classNames = %s; files = %s; unrecognizedOptions = %s",
-                    recognizedOptions, classNames, files, unrecognizedOptions);
+    /**
+     * Combines the diagnostic filters, the diagnostic collector and all additional listeners into a
+     * single listener.
+     */
+    private DiagnosticListener<? super JavaFileObject> createDiagnosticListener() {
+        if (additionalListeners.isEmpty()
+                && (diagnosticFilters.isEmpty() || diagnosticListener == null)) {
+            return diagnosticListener;
+        }
+        List<DiagnosticListener<? super JavaFileObject>> listeners = new ArrayList<>();
+        if (diagnosticListener != null) {
+            listeners.add(diagnosticListener);
         }
+        listeners.addAll(additionalListeners);
+        return diagnostic -> {
+            for (Predicate<? super Diagnostic<? extends JavaFileObject>> filter :
+                    diagnosticFilters) {
+                if (!filter.test(diagnostic)) {
+                    return;
+                }
+            }
+            listeners.forEach(listener -> listener.report(diagnostic));
+        };
     }
 }
@@ -1,19 +1,51 @@
 package io.github.eisopux.diagnostics.core;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
-import javax.tools.*;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
 
 /**
  * CompilerRunner sets up and executes a Java compilation task using the system Java compiler.
- * Integrates custom data {@link Collector}(s) and a {@link Reporter} to process and format the
- * collected output.
+ * Integrates custom data {@link Collector}(s), optional {@link ReportStage}s and a {@link
+ * Reporter} to collect, post-process and format the output.
  */
 public class CompilerRunner {
 
     private final List<Collector> collectors = new ArrayList<>();
+    private final List<Supplier<? extends Collector>> collectorFactories = new ArrayList<>();
+    private final List<ReportStage> stages = new ArrayList<>();
     private Reporter reporter;
+    private int shardCount = 1;
+    private boolean parallelCollectors;
+    private boolean collectorTimes;
+    private RunMetrics metrics;
+    private boolean metricsSection;
+    private TerminationPolicy terminationPolicy;
+    private ClasspathIndex classpathIndex;
+    private final Map<String, List<String>> variants = new LinkedHashMap<>();
 
     /**
      * Adds a Collector to the compilation process.
@@ -26,6 +58,169 @@ public class CompilerRunner {
         return this;
     }
 
+    /**
+     * Adds a Collector to the compilation process that is created afresh for every compilation
+     * task. Sharded runs (see {@link #setShardCount(int)}) compile several tasks and therefore only
+     * support collectors added this way.
+     *
+     * @param collectorFactory creates the Collector for each compilation task
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner addCollector(Supplier<? extends Collector> collectorFactory) {
+        this.collectorFactories.add(collectorFactory);
+        return this;
+    }
+
+    /**
+     * Adds a ReportStage that processes the collected data before it is passed to the Reporter.
+     * Stages run in the order in which they were added.
+     *
+     * @param stage the ReportStage to add
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner addStage(ReportStage stage) {
+        this.stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Sets the number of shards that {@link #run(String[])} splits the source files into. Each
+     * shard is compiled as its own compilation task, concurrently with the others, while the files
+     * of all other shards remain available through the source path. The shards' report data is
+     * merged by {@link Shards#merge} before it is passed to the Reporter, so that the diagnostics
+     * are those of an unsharded run, except for javac's summary notes of deferred warnings, which
+     * each shard emits for its own files.
+     *
+     * @param shardCount the maximum number of concurrent compilation tasks; 1 disables sharding
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner setShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    /**
+     * Sets whether {@link Collector#onAfterCompile(CompilationReportData)} is called concurrently
+     * for collectors that do not depend on each other (see {@link Collector#getDependencies()}), or
+     * on one collector after the other, in the order in which they were added, which is the
+     * default. Either way, a collector is only called once the collectors it depends on have
+     * returned. Only enable this if every collector that post-processes the sections of another
+     * collector declares the dependency.
+     *
+     * @param parallelCollectors whether to finish independent collectors concurrently, {@code
+     *     false} by default
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner setParallelCollectors(boolean parallelCollectors) {
+        this.parallelCollectors = parallelCollectors;
+        return this;
+    }
+
+    /**
+     * Sets whether the time each collector spends in {@link
+     * Collector#onBeforeCompile(CompilationTaskBuilder)} and {@link
+     * Collector#onAfterCompile(CompilationReportData)} is reported in the {@code "collectors"}
+     * section, with one record per collector and compilation task: the collector's class ({@code
+     * "collector"}) and the wall times of both calls ({@code "beforeCompileMillis"}, {@code
+     * "afterCompileMillis"}).
+     *
+     * @param collectorTimes whether to report the times of the collectors, {@code false} by default
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner setCollectorTimes(boolean collectorTimes) {
+        this.collectorTimes = collectorTimes;
+        return this;
+    }
+
+    /**
+     * Sets the metrics that each run records its steps and counts into, see {@link RunMetrics}. The
+     * diagnostics are counted once all stages have processed them, i.e. as they are reported.
+     *
+     * @param metrics the metrics to record into, or {@code null} to record none, the default
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Sets whether the metrics set with {@link #setMetrics(RunMetrics)} are added to the report as
+     * the {@code "metrics"} section, see {@link RunMetrics#toRecords()}. The section is added
+     * right before the report is generated, so it does not cover generating the report itself.
+     *
+     * @param metricsSection whether to report the metrics, {@code false} by default
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner setMetricsSection(boolean metricsSection) {
+        this.metricsSection = metricsSection;
+        return this;
+    }
+
+    /**
+     * Sets the policy that decides when a compilation is stopped early, e.g. after a number of
+     * errors. A stopped compilation is reported with the diagnostics collected so far and a {@code
+     * "truncated"} section, see {@link TerminationPolicy}.
+     *
+     * @param terminationPolicy the policy to apply to each run, or {@code null} to always let the
+     *     compilation finish, the default
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner setTerminationPolicy(TerminationPolicy terminationPolicy) {
+        this.terminationPolicy = terminationPolicy;
+        return this;
+    }
+
+    /**
+     * Sets the index that each compilation task looks up the classes of the jars on the class path
+     * in, see {@link ClasspathIndex}, so that short runs with large class paths do not read the
+     * central directory of every jar. The index is only used where it does not change the
+     * diagnostics, i.e. with javac 8 and a source version of at least 8.
+     *
+     * @param classpathIndex the index to use, or {@code null} to search the jars as usual, the
+     *     default
+     * @return this CompilerRunner instance for method chaining
+     */
+    public CompilerRunner setClasspathIndex(ClasspathIndex classpathIndex) {
+        this.classpathIndex = classpathIndex;
+        return this;
+    }
+
+    /**
+     * Adds a variant to the compilation matrix of {@link #run(String[])}. With variants, the same
+     * arguments are compiled once per variant, with the variant's options appended, e.g. to check a
+     * code base against several {@code --release} versions or lint settings in one run. The
+     * variants are compiled concurrently; they read each source file only once, from a shared
+     * cache, and write their class files, the sources generated by annotation processors and
+     * native headers to temporary directories ({@code -d}, {@code -s} and {@code -h}), which are
+     * deleted afterwards, since they would otherwise overwrite each other's.
+     *
+     * <p>The report data of the variants is merged by {@link Matrix#merge}: each diagnostic is
+     * tagged with its variant (see {@link DiagnosticRecord#getVariant()}), the {@code "variants"}
+     * section summarizes each variant and the {@code "variantDifferences"} section lists the
+     * diagnostics that not all variants report. A variant whose arguments are invalid reports the
+     * problems as error diagnostics, and a variant whose compilation fails, e.g. because the JDK
+     * does not support its {@code --release}, reports the failure in the {@code "error"} section,
+     * like a job of a {@link BatchRunner}. Like sharded runs, matrix runs only support collectors
+     * added as factories; the source files of a variant are not sharded.
+     *
+     * @param name the name of the variant, unique within the matrix
+     * @param options the javac options to append to the arguments of the run, which override
+     *     options of the arguments that javac only takes once, such as {@code --release}
+     * @return this CompilerRunner instance for method chaining
+     * @throws IllegalArgumentException if a variant of the same name was already added
+     */
+    public CompilerRunner addVariant(String name, List<String> options) {
+        if (variants.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate variant: " + name);
+        }
+        variants.put(name, new ArrayList<>(options));
+        return this;
+    }
+
     /**
      * Sets the Reporter that will generate the final output report.
      *
@@ -41,34 +236,483 @@ public class CompilerRunner {
      * Executes a compilation task. The following steps are taken:
      *
      * <ul>
-     *   <li>Building a CompilationTaskBuilder from the provided command-line arguments
+     *   <li>Building a CompilationTaskBuilder from the provided command-line arguments; if they
+     *       are invalid, the report only holds the problems as error diagnostics. With {@link
+     *       #addVariant(String, List) variants}, one builder is created and compiled per variant
      *   <li>Calling {@link Collector#onBeforeCompile(CompilationTaskBuilder)} on each collector
-     *   <li>Building and executing the compilation task
+     *   <li>Building and executing the compilation task, unless a collector found it to be
+     *       up-to-date, and stopping it early if the {@link TerminationPolicy} applies
      *   <li>Creating a CompilationReportData instance and allowing each collector to finalize its
-     *       data via {@link Collector#onAfterCompile(CompilationReportData)}
+     *       data via {@link Collector#onAfterCompile(CompilationReportData)}, concurrently for
+     *       collectors that do not depend on each other
+     *   <li>Passing the report data through each {@link ReportStage}
+     *   <li>Recording the metrics set with {@link #setMetrics(RunMetrics)}, if any
      *   <li>Passing the aggregated report data to the Reporter to generate a formatted output
      * </ul>
      *
      * @param args the command-line arguments to be used in the compilation task
      */
     public void run(String[] args) {
+        if (!variants.isEmpty()) {
+            runMatrix(args);
+            return;
+        }
+        CompilationTaskBuilder builder;
+        try {
+            builder =
+                    CompilationTaskBuilder.fromArgs(
+                            args, metrics != null ? metrics : new RunMetrics());
+        } catch (InvalidArgumentsException e) {
+            reportInvalidArguments(e);
+            return;
+        }
+        if (shardCount > 1 && builder.getFiles().size() > 1) {
+            runSharded(builder);
+        } else {
+            run(builder);
+        }
+    }
 
-        CompilationTaskBuilder builder = CompilationTaskBuilder.fromArgs(args);
-        collectors.forEach(c -> c.onBeforeCompile(builder));
+    /**
+     * Executes a compilation task from an already created CompilationTaskBuilder, for example one
+     * that shares a warm compiler through a {@link CompilerSession}. Apart from how the builder is
+     * obtained, this is identical to {@link #run(String[])}.
+     *
+     * @param builder the CompilationTaskBuilder to create the compilation task with
+     */
+    public void run(CompilationTaskBuilder builder) {
+        report(compile(builder, startMonitor()));
+    }
+
+    /**
+     * Reports the problems with arguments that could not be turned into a compilation task, e.g.
+     * by {@link CompilerSession#newTaskBuilder(String[])}, as the error diagnostics of an
+     * otherwise empty report. This is how {@link #run(String[])} reports invalid arguments.
+     *
+     * @param e the exception that describes the problems with the arguments
+     */
+    public void reportInvalidArguments(InvalidArgumentsException e) {
+        report(invalidArgumentsReport(e));
+    }
+
+    private static CompilationReportData invalidArgumentsReport(InvalidArgumentsException e) {
+        CompilationReportData reportData = new CompilationReportData();
+        reportData.putTypedSection(
+                "diagnostics", DiagnosticRecord.class, new ArrayList<>(e.getDiagnostics()));
+        return reportData;
+    }
+
+    /** Starts to apply the termination policy to a run, or returns null if there is none. */
+    private TerminationPolicy.Monitor startMonitor() {
+        return terminationPolicy != null ? terminationPolicy.start() : null;
+    }
+
+    /** Compiles the shards concurrently and reports their merged data. */
+    private void runSharded(CompilationTaskBuilder builder) {
+        if (!collectors.isEmpty()) {
+            throw new IllegalStateException(
+                    "Sharded runs require collectors to be added as factories");
+        }
+        List<File> files = builder.getFiles();
+        List<List<File>> shards = Shards.partition(files, shardCount);
+        if (shards.size() == 1 || !builder.canRestrictFiles()) {
+            // One package, or the files cannot be made available to each other; compile at once.
+            run(builder);
+            return;
+        }
+
+        long start = System.nanoTime();
+        JavaCompiler compiler = CompilationTaskBuilder.getSystemJavaCompiler();
+        record(RunMetrics.Step.LOOKUP_COMPILER, start);
+        List<StandardJavaFileManager> fileManagers = new ArrayList<>();
+        List<CompilationTaskBuilder> shardBuilders = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(shards.size());
+        try {
+            for (List<File> shard : shards) {
+                // File managers are not thread-safe, so every shard gets its own.
+                StandardJavaFileManager fileManager =
+                        compiler.getStandardFileManager(null, null, null);
+                fileManagers.add(fileManager);
+                CompilationTaskBuilder shardBuilder =
+                        CompilationTaskBuilder.fromOptions(
+                                compiler, fileManager, builder.getParsedOptions());
+                if (!shardBuilder.restrictFiles(shard)) {
+                    throw new IllegalStateException("Cannot restrict a shard to its files");
+                }
+                shardBuilders.add(shardBuilder);
+            }
+
+            TerminationPolicy.Monitor monitor = startMonitor();
+            List<Future<CompilationReportData>> futures = new ArrayList<>();
+            for (CompilationTaskBuilder shardBuilder : shardBuilders) {
+                futures.add(executor.submit(() -> compile(shardBuilder, monitor)));
+            }
+            List<CompilationReportData> reports = new ArrayList<>();
+            for (Future<CompilationReportData> future : futures) {
+                reports.add(future.get());
+            }
+            report(Shards.merge(files, shards, reports));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while compiling shards", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Compiling a shard failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (StandardJavaFileManager fileManager : fileManagers) {
+                try {
+                    fileManager.close();
+                } catch (IOException e) {
+                    // Nothing useful can be done about a file manager that fails to close.
+                }
+            }
+        }
+    }
+
+    /** Compiles the variants of the matrix concurrently and reports their merged data. */
+    private void runMatrix(String[] args) {
+        if (!collectors.isEmpty()) {
+            throw new IllegalStateException(
+                    "Matrix runs require collectors to be added as factories");
+        }
+        RunMetrics runMetrics = metrics != null ? metrics : new RunMetrics();
+        long start = System.nanoTime();
+        JavaCompiler compiler = CompilationTaskBuilder.getSystemJavaCompiler();
+        record(RunMetrics.Step.LOOKUP_COMPILER, start);
+        List<String> names = new ArrayList<>(variants.keySet());
+        Map<Charset, Map<Path, String>> sources = new HashMap<>();
+        List<StandardJavaFileManager> fileManagers = new ArrayList<>();
+        List<Path> outputDirectories = new ArrayList<>();
+        List<CompilationReportData> reports = new ArrayList<>();
+        List<Future<CompilationReportData>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(names.size());
+        try {
+            for (String name : names) {
+                List<String> variantArgs = new ArrayList<>(Arrays.asList(args));
+                variantArgs.addAll(variants.get(name));
+                // Concurrent variants must not write class files, generated sources or headers
+                // to the same place. javac uses the last of each of these options, so this
+                // overrides any of the arguments.
+                for (String option : Arrays.asList("-d", "-s", "-h")) {
+                    Path outputDirectory = Files.createTempDirectory("javac-diagnostics-matrix");
+                    outputDirectories.add(outputDirectory);
+                    variantArgs.add(option);
+                    variantArgs.add(outputDirectory.toString());
+                }
+                // File managers are not thread-safe, so every variant gets its own.
+                StandardJavaFileManager fileManager =
+                        compiler.getStandardFileManager(null, null, null);
+                fileManagers.add(fileManager);
+                CompilationTaskBuilder builder;
+                try {
+                    builder =
+                            CompilationTaskBuilder.fromArgs(
+                                    compiler,
+                                    fileManager,
+                                    variantArgs.toArray(new String[0]),
+                                    runMetrics);
+                } catch (InvalidArgumentsException e) {
+                    reports.add(invalidArgumentsReport(e));
+                    futures.add(null);
+                    continue;
+                }
+                Charset encoding = getEncoding(builder.getOptions());
+                Map<Path, String> contents = new HashMap<>();
+                for (File file : builder.getFiles()) {
+                    String content = readSource(sources, file, encoding);
+                    if (content != null) {
+                        contents.put(SourceRoots.normalize(file), content);
+                    }
+                }
+                builder.setSourceContents(contents);
+                TerminationPolicy.Monitor monitor = startMonitor();
+                reports.add(null);
+                futures.add(executor.submit(() -> compile(builder, monitor)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                if (futures.get(i) == null) {
+                    continue;
+                }
+                try {
+                    reports.set(i, futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // E.g. a release that this JDK does not support; the other variants go on.
+                    Map<String, Object> error = new LinkedHashMap<>();
+                    error.put("message", e.getCause().toString());
+                    CompilationReportData reportData = new CompilationReportData();
+                    reportData.putSection("error", Collections.singletonList(error));
+                    reports.set(i, reportData);
+                }
+            }
+            report(Matrix.merge(names, new ArrayList<>(variants.values()), reports));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while compiling variants", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create an output directory", e);
+        } finally {
+            executor.shutdownNow();
+            for (StandardJavaFileManager fileManager : fileManagers) {
+                try {
+                    fileManager.close();
+                } catch (IOException e) {
+                    // Nothing useful can be done about a file manager that fails to close.
+                }
+            }
+            outputDirectories.forEach(CompilerRunner::deleteRecursively);
+        }
+    }
+
+    /** Deletes a directory with all its content, leaving behind what cannot be deleted. */
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException | UncheckedIOException e) {
+            // A temporary directory that cannot be deleted is only a nuisance.
+        }
+    }
+
+    /** Returns the charset that javac reads source files in with the given options. */
+    private static Charset getEncoding(List<String> options) {
+        int index = options.lastIndexOf("-encoding");
+        if (index >= 0 && index + 1 < options.size()) {
+            try {
+                return Charset.forName(options.get(index + 1));
+            } catch (IllegalArgumentException e) {
+                // javac reports the unsupported encoding itself.
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * Returns the content of a source file, which is read from disk only by the first variant
+     * that compiles it in the given encoding, or null if it cannot be read or decoded, in which
+     * case javac reads the file and reports the problem itself.
+     */
+    private static String readSource(
+            Map<Charset, Map<Path, String>> sources, File file, Charset encoding) {
+        Map<Path, String> contents = sources.computeIfAbsent(encoding, e -> new HashMap<>());
+        Path path = SourceRoots.normalize(file);
+        String content = contents.get(path);
+        if (content == null) {
+            try {
+                content =
+                        encoding.newDecoder()
+                                .decode(ByteBuffer.wrap(Files.readAllBytes(path)))
+                                .toString();
+            } catch (IOException e) {
+                return null;
+            }
+            contents.put(path, content);
+        }
+        return content;
+    }
+
+    /**
+     * Passes the report data through all stages, in order, and then to the Reporter, recording the
+     * metrics if requested.
+     */
+    private void report(CompilationReportData reportData) {
+        long start = System.nanoTime();
+        stages.forEach(stage -> stage.process(reportData));
+        record(RunMetrics.Step.PROCESS_STAGES, start);
+
+        if (metrics != null) {
+            List<DiagnosticRecord> diagnostics =
+                    reportData.getTypedSection(
+                            "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+            if (diagnostics != null) {
+                metrics.countDiagnostics(diagnostics);
+            }
+            if (metricsSection) {
+                reportData.putSection("metrics", metrics.toRecords());
+            }
+        }
 
-        JavaCompiler.CompilationTask task = builder.build();
+        start = System.nanoTime();
+        reporter.generateReport(reportData);
+        record(RunMetrics.Step.REPORT, start);
+    }
+
+    /** Adds the time since {@code start} to a step of the metrics, if any. */
+    private void record(RunMetrics.Step step, long start) {
+        if (metrics != null) {
+            metrics.addTime(step, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs a single compilation task with its collectors and returns the data they collected.
+     *
+     * @param builder the CompilationTaskBuilder to create the compilation task with
+     * @param monitor the termination policy of the run, or null to let the compilation finish
+     * @return the data collected during the compilation
+     */
+    private CompilationReportData compile(
+            CompilationTaskBuilder builder, TerminationPolicy.Monitor monitor) {
+        List<Collector> taskCollectors = new ArrayList<>(collectors);
+        collectorFactories.forEach(factory -> taskCollectors.add(factory.get()));
+        if (classpathIndex != null) {
+            builder.setClasspathIndex(classpathIndex);
+        }
 
-        boolean success = task.call();
+        long start = System.nanoTime();
+        long[] beforeNanos = new long[taskCollectors.size()];
+        for (int i = 0; i < taskCollectors.size(); i++) {
+            long collectorStart = System.nanoTime();
+            taskCollectors.get(i).onBeforeCompile(builder);
+            beforeNanos[i] = System.nanoTime() - collectorStart;
+        }
+        record(RunMetrics.Step.PREPARE_COLLECTORS, start);
+
+        // The monitor listens after all collectors, so they see the diagnostic that stops javac.
+        if (monitor != null && !builder.isUpToDate()) {
+            builder.addDiagnosticListener(monitor);
+            builder.addTaskListener(monitor);
+        }
+        start = System.nanoTime();
+        boolean success;
+        boolean stopped = false;
+        try {
+            success = builder.isUpToDate() || builder.build().call();
+        } catch (RuntimeException e) {
+            if (monitor == null || !monitor.isAbort(e)) {
+                throw e;
+            }
+            success = false;
+            stopped = true;
+        }
+        record(RunMetrics.Step.COMPILE, start);
+        if (metrics != null && !builder.isUpToDate()) {
+            metrics.add(RunMetrics.Counter.COMPILATIONS, 1);
+            metrics.add(RunMetrics.Counter.SOURCE_FILES, builder.getFiles().size());
+        }
 
         CompilationReportData reportData = new CompilationReportData();
+        if (stopped) {
+            // Added first, so that collectors can tell that the compilation did not finish.
+            reportData.putSection(
+                    "truncated",
+                    Collections.singletonList(new LinkedHashMap<>(monitor.getTruncation())));
+        }
+
+        start = System.nanoTime();
+        long[] afterNanos = finishCollectors(taskCollectors, reportData);
+        record(RunMetrics.Step.FINISH_COLLECTORS, start);
 
-        collectors.forEach(c -> c.onAfterCompile(reportData));
+        if (collectorTimes) {
+            List<Map<String, Object>> times = new ArrayList<>();
+            for (int i = 0; i < taskCollectors.size(); i++) {
+                Map<String, Object> record = new LinkedHashMap<>();
+                record.put("collector", taskCollectors.get(i).getClass().getName());
+                record.put("beforeCompileMillis", beforeNanos[i] / 1_000_000.0);
+                record.put("afterCompileMillis", afterNanos[i] / 1_000_000.0);
+                times.add(record);
+            }
+            reportData.putSection("collectors", times);
+        }
 
         if (success) {
             // Placeholder for future use. Bool `success` is true iff compilation
             // completes without any errors. Add logic here if a specific Collector
             // or other feature requires a successful compilation.
         }
-        reporter.generateReport(reportData);
+        return reportData;
+    }
+
+    /**
+     * Calls {@link Collector#onAfterCompile(CompilationReportData)} on all collectors, each once
+     * the collectors it depends on have returned, and returns the time each call took.
+     */
+    private long[] finishCollectors(
+            List<Collector> taskCollectors, CompilationReportData reportData) {
+        long[] nanos = new long[taskCollectors.size()];
+        List<List<Integer>> dependencies = new ArrayList<>();
+        for (Collector collector : taskCollectors) {
+            List<Integer> indexes = new ArrayList<>();
+            for (Class<? extends Collector> type : collector.getDependencies()) {
+                for (int j = 0; j < taskCollectors.size(); j++) {
+                    Collector other = taskCollectors.get(j);
+                    if (other != collector && type.isInstance(other)) {
+                        indexes.add(j);
+                    }
+                }
+            }
+            dependencies.add(indexes);
+        }
+        List<Integer> order = new ArrayList<>();
+        int[] state = new int[taskCollectors.size()];
+        for (int i = 0; i < taskCollectors.size(); i++) {
+            sortTopologically(i, dependencies, state, order, taskCollectors);
+        }
+
+        if (!parallelCollectors || taskCollectors.size() < 2) {
+            for (int i : order) {
+                nanos[i] = finish(taskCollectors.get(i), reportData);
+            }
+            return nanos;
+        }
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[taskCollectors.size()];
+        for (int i : order) {
+            CompletableFuture<?>[] prerequisites =
+                    dependencies.get(i).stream()
+                            .map(j -> futures[j])
+                            .toArray(CompletableFuture<?>[]::new);
+            Collector collector = taskCollectors.get(i);
+            int index = i;
+            futures[i] =
+                    CompletableFuture.allOf(prerequisites)
+                            .thenRunAsync(
+                                    () -> {
+                                        nanos[index] = finish(collector, reportData);
+                                    });
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+        return nanos;
+    }
+
+    /** Calls onAfterCompile on a collector and returns the time the call took. */
+    private static long finish(Collector collector, CompilationReportData reportData) {
+        long start = System.nanoTime();
+        collector.onAfterCompile(reportData);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Appends a collector to the order after the collectors it depends on, by a depth-first search
+     * whose state is 0 for unvisited, 1 for in-progress and 2 for finished collectors.
+     */
+    private static void sortTopologically(
+            int index,
+            List<List<Integer>> dependencies,
+            int[] state,
+            List<Integer> order,
+            List<Collector> taskCollectors) {
+        if (state[index] == 2) {
+            return;
+        }
+        if (state[index] == 1) {
+            throw new IllegalStateException(
+                    "Collectors depend on each other: "
+                            + taskCollectors.get(index).getClass().getName());
+        }
+        state[index] = 1;
+        for (int dependency : dependencies.get(index)) {
+            sortTopologically(dependency, dependencies, state, order, taskCollectors);
+        }
+        state[index] = 2;
+        order.add(index);
     }
 }
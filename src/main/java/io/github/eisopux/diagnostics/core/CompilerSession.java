@@ -0,0 +1,116 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * CompilerSession keeps a {@link JavaCompiler} and its {@link StandardJavaFileManager}s warm
+ * across several compilation runs, so that long-running processes (such as a compile daemon) only
+ * pay the compiler lookup, class loading and JIT warm-up cost once.
+ *
+ * <p>A file manager remembers location options (e.g. {@code -classpath}) that were applied to it
+ * by earlier tasks, so file managers are only reused between runs with identical recognized
+ * options. The least recently used file managers are closed once more than {@code
+ * maxFileManagers} distinct option sets are in use.
+ *
+ * <p>Neither the compiler's file managers nor this class are thread-safe; compilation runs of a
+ * single session must not overlap.
+ */
+public class CompilerSession implements Closeable {
+
+    private static final int DEFAULT_MAX_FILE_MANAGERS = 4;
+
+    private final JavaCompiler compiler;
+    private final int maxFileManagers;
+
+    /** File manager used to recognize options before the matching file manager is known. */
+    private final StandardJavaFileManager optionsFileManager;
+
+    /** Warm file managers keyed by the recognized options they have been configured with. */
+    private final Map<List<String>, StandardJavaFileManager> fileManagers;
+
+    /**
+     * Creates a session around the system Java compiler.
+     *
+     * @throws IllegalStateException if no system Java compiler is found
+     */
+    public CompilerSession() {
+        this(DEFAULT_MAX_FILE_MANAGERS);
+    }
+
+    /**
+     * Creates a session around the system Java compiler.
+     *
+     * @param maxFileManagers the number of distinct option sets to keep file managers for
+     * @throws IllegalStateException if no system Java compiler is found
+     */
+    public CompilerSession(int maxFileManagers) {
+        if (maxFileManagers < 1) {
+            throw new IllegalArgumentException("maxFileManagers must be positive");
+        }
+        this.compiler = CompilationTaskBuilder.getSystemJavaCompiler();
+        this.maxFileManagers = maxFileManagers;
+        this.optionsFileManager = compiler.getStandardFileManager(null, null, null);
+        this.fileManagers = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the compiler shared by all runs of this session.
+     *
+     * @return the warm Java compiler
+     */
+    public JavaCompiler getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * Creates a CompilationTaskBuilder for the given command-line arguments that reuses the warm
+     * compiler and, if one was already configured with the same options, a warm file manager.
+     *
+     * @param args the command-line arguments to be parsed and used for the compilation task
+     * @return a configured CompilationTaskBuilder ready to build a CompilationTask
+     * @throws IllegalArgumentException if the arguments contain unrecognized options
+     */
+    public CompilationTaskBuilder newTaskBuilder(String[] args) {
+        JavacOptions options = JavacOptions.parse(compiler, optionsFileManager, args);
+        return CompilationTaskBuilder.fromOptions(
+                compiler, getFileManager(options.getRecognizedOptions()), options);
+    }
+
+    private StandardJavaFileManager getFileManager(List<String> recognizedOptions) {
+        StandardJavaFileManager fileManager = fileManagers.get(recognizedOptions);
+        if (fileManager == null) {
+            fileManager = compiler.getStandardFileManager(null, null, null);
+            fileManagers.put(recognizedOptions, fileManager);
+            if (fileManagers.size() > maxFileManagers) {
+                Map.Entry<List<String>, StandardJavaFileManager> eldest =
+                        fileManagers.entrySet().iterator().next();
+                fileManagers.remove(eldest.getKey());
+                closeQuietly(eldest.getValue());
+            }
+        }
+        return fileManager;
+    }
+
+    /** Closes all file managers held by this session. */
+    @Override
+    public void close() {
+        fileManagers.values().forEach(CompilerSession::closeQuietly);
+        fileManagers.clear();
+        closeQuietly(optionsFileManager);
+    }
+
+    private static void closeQuietly(StandardJavaFileManager fileManager) {
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            // Nothing useful can be done about a file manager that fails to close.
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * An immutable record of a single compilation diagnostic, as stored in the {@code "diagnostics"}
+ * section of a {@link CompilationReportData}.
+ *
+ * <p>The key/value view of a record uses the keys {@code "source"}, {@code "kind"}, {@code
+ * "position"}, {@code "startPosition"}, {@code "endPosition"}, {@code "lineNumber"}, {@code
+ * "columnNumber"}, {@code "code"} and {@code "message"}, {@code "processor"} if the diagnostic was
+ * attributed to the annotation processor that reported it, and {@code "variant"} if it was reported
+ * by one variant of a compilation matrix. The line and column numbers of the start and end
+ * positions are not part of it; {@link #fromMap(Map)} reads them if present.
+ */
+public final class DiagnosticRecord implements ReportRecord {
+
+    /** Matches the {@code [processor]} or {@code [processor:key]} prefix of a message. */
+    private static final Pattern PROCESSOR_PATTERN =
+            Pattern.compile("^\\[([^:\\]]+)(?::[^\\]]+)?\\]");
+
+    private final String source;
+    private final Diagnostic.Kind kind;
+    private final long position;
+    private final long startPosition;
+    private final long endPosition;
+    private final long lineNumber;
+    private final long columnNumber;
+    private final long startLineNumber;
+    private final long startColumnNumber;
+    private final long endLineNumber;
+    private final long endColumnNumber;
+    private final String code;
+    private final String message;
+    private final String processor;
+    private final String variant;
+
+    /**
+     * Creates a diagnostic record without the line and column numbers of its range.
+     *
+     * @param source the URI of the source file, or {@code "unknown"}
+     * @param kind the kind of the diagnostic
+     * @param position the character offset of the diagnostic, or {@link Diagnostic#NOPOS}
+     * @param startPosition the character offset where the diagnostic's range starts
+     * @param endPosition the character offset where the diagnostic's range ends
+     * @param lineNumber the 1-based line number of the position
+     * @param columnNumber the 1-based column number of the position
+     * @param code the diagnostic code, or {@code null}
+     * @param message the localized message
+     */
+    public DiagnosticRecord(
+            String source,
+            Diagnostic.Kind kind,
+            long position,
+            long startPosition,
+            long endPosition,
+            long lineNumber,
+            long columnNumber,
+            String code,
+            String message) {
+        this(
+                source,
+                kind,
+                position,
+                startPosition,
+                endPosition,
+                lineNumber,
+                columnNumber,
+                Diagnostic.NOPOS,
+                Diagnostic.NOPOS,
+                Diagnostic.NOPOS,
+                Diagnostic.NOPOS,
+                code,
+                message);
+    }
+
+    /**
+     * Creates a diagnostic record. Unlike javac's column numbers, which may expand tabs, the
+     * column numbers of the range count UTF-16 code units, see {@link LineIndex}.
+     *
+     * @param source the URI of the source file, or {@code "unknown"}
+     * @param kind the kind of the diagnostic
+     * @param position the character offset of the diagnostic, or {@link Diagnostic#NOPOS}
+     * @param startPosition the character offset where the diagnostic's range starts
+     * @param endPosition the character offset where the diagnostic's range ends
+     * @param lineNumber the 1-based line number of the position
+     * @param columnNumber the 1-based column number of the position
+     * @param startLineNumber the 1-based line number of the start position, or {@link
+     *     Diagnostic#NOPOS}
+     * @param startColumnNumber the 1-based column number of the start position, or {@link
+     *     Diagnostic#NOPOS}
+     * @param endLineNumber the 1-based line number of the end position, or {@link
+     *     Diagnostic#NOPOS}
+     * @param endColumnNumber the 1-based column number of the end position, i.e. of the first
+     *     character after the range, or {@link Diagnostic#NOPOS}
+     * @param code the diagnostic code, or {@code null}
+     * @param message the localized message
+     */
+    public DiagnosticRecord(
+            String source,
+            Diagnostic.Kind kind,
+            long position,
+            long startPosition,
+            long endPosition,
+            long lineNumber,
+            long columnNumber,
+            long startLineNumber,
+            long startColumnNumber,
+            long endLineNumber,
+            long endColumnNumber,
+            String code,
+            String message) {
+        this(
+                source,
+                kind,
+                position,
+                startPosition,
+                endPosition,
+                lineNumber,
+                columnNumber,
+                startLineNumber,
+                startColumnNumber,
+                endLineNumber,
+                endColumnNumber,
+                code,
+                message,
+                null,
+                null);
+    }
+
+    private DiagnosticRecord(
+            String source,
+            Diagnostic.Kind kind,
+            long position,
+            long startPosition,
+            long endPosition,
+            long lineNumber,
+            long columnNumber,
+            long startLineNumber,
+            long startColumnNumber,
+            long endLineNumber,
+            long endColumnNumber,
+            String code,
+            String message,
+            String processor,
+            String variant) {
+        this.source = source;
+        this.kind = kind;
+        this.position = position;
+        this.startPosition = startPosition;
+        this.endPosition = endPosition;
+        this.lineNumber = lineNumber;
+        this.columnNumber = columnNumber;
+        this.startLineNumber = startLineNumber;
+        this.startColumnNumber = startColumnNumber;
+        this.endLineNumber = endLineNumber;
+        this.endColumnNumber = endColumnNumber;
+        this.code = code;
+        this.message = message;
+        this.processor = processor;
+        this.variant = variant;
+    }
+
+    /**
+     * Creates the record of a diagnostic reported by javac, without the line and column numbers of
+     * its range. The message is rendered right away so that the diagnostic itself does not need to
+     * be retained.
+     *
+     * @param diag the diagnostic reported by javac
+     * @return the record describing the diagnostic
+     */
+    public static DiagnosticRecord of(Diagnostic<? extends JavaFileObject> diag) {
+        return of(diag, (LineIndex) null);
+    }
+
+    /**
+     * Creates the record of a diagnostic reported by javac, with the line and column numbers of its
+     * range taken from the line index of its source file.
+     *
+     * @param diag the diagnostic reported by javac
+     * @param lineIndexes the line indexes of the compilation's source files
+     * @return the record describing the diagnostic
+     */
+    public static DiagnosticRecord of(
+            Diagnostic<? extends JavaFileObject> diag, LineIndex.Cache lineIndexes) {
+        return of(diag, diag.getStartPosition() >= 0 ? lineIndexes.get(diag.getSource()) : null);
+    }
+
+    private static DiagnosticRecord of(
+            Diagnostic<? extends JavaFileObject> diag, LineIndex lineIndex) {
+        long start = diag.getStartPosition();
+        long end = diag.getEndPosition() >= start ? diag.getEndPosition() : start;
+        boolean hasRange = lineIndex != null && start >= 0;
+        return new DiagnosticRecord(
+                diag.getSource() != null ? diag.getSource().toUri().toString() : "unknown",
+                diag.getKind(),
+                diag.getPosition(),
+                diag.getStartPosition(),
+                diag.getEndPosition(),
+                diag.getLineNumber(),
+                diag.getColumnNumber(),
+                hasRange ? lineIndex.getLineNumber(start) : Diagnostic.NOPOS,
+                hasRange ? lineIndex.getColumnNumber(start) : Diagnostic.NOPOS,
+                hasRange ? lineIndex.getLineNumber(end) : Diagnostic.NOPOS,
+                hasRange ? lineIndex.getColumnNumber(end) : Diagnostic.NOPOS,
+                diag.getCode(),
+                diag.getMessage(null));
+    }
+
+    /**
+     * Creates a record from the key/value pairs of a {@code "diagnostics"} section record, e.g. one
+     * that was read back from JSON. Missing positions default to {@link Diagnostic#NOPOS}.
+     *
+     * @param diag the key/value pairs describing the diagnostic
+     * @return the record describing the diagnostic
+     */
+    public static DiagnosticRecord fromMap(Map<String, Object> diag) {
+        Object source = diag.get("source");
+        Object code = diag.get("code");
+        Object message = diag.get("message");
+        Object processor = diag.get("processor");
+        Object variant = diag.get("variant");
+        return new DiagnosticRecord(
+                source != null ? source.toString() : "unknown",
+                toKind(diag.get("kind")),
+                toLong(diag.get("position")),
+                toLong(diag.get("startPosition")),
+                toLong(diag.get("endPosition")),
+                toLong(diag.get("lineNumber")),
+                toLong(diag.get("columnNumber")),
+                toLong(diag.get("startLineNumber")),
+                toLong(diag.get("startColumnNumber")),
+                toLong(diag.get("endLineNumber")),
+                toLong(diag.get("endColumnNumber")),
+                code != null ? code.toString() : null,
+                message != null ? message.toString() : null,
+                processor != null ? processor.toString() : null,
+                variant != null ? variant.toString() : null);
+    }
+
+    private static Diagnostic.Kind toKind(Object kind) {
+        if (kind instanceof Diagnostic.Kind) {
+            return (Diagnostic.Kind) kind;
+        }
+        if (kind == null) {
+            return Diagnostic.Kind.OTHER;
+        }
+        try {
+            return Diagnostic.Kind.valueOf(kind.toString().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Diagnostic.Kind.OTHER;
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : Diagnostic.NOPOS;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Diagnostic.Kind getKind() {
+        return kind;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getStartPosition() {
+        return startPosition;
+    }
+
+    public long getEndPosition() {
+        return endPosition;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public long getColumnNumber() {
+        return columnNumber;
+    }
+
+    public long getStartLineNumber() {
+        return startLineNumber;
+    }
+
+    public long getStartColumnNumber() {
+        return startColumnNumber;
+    }
+
+    public long getEndLineNumber() {
+        return endLineNumber;
+    }
+
+    public long getEndColumnNumber() {
+        return endColumnNumber;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the name of the annotation processor or checker that reported the diagnostic: the
+     * processor it was {@link #withProcessor(String) attributed} to, or else the name given by the
+     * {@code [processor]} or {@code [processor:key]} prefix of its message.
+     *
+     * @return the name of the processor, or {@code null} if the diagnostic was not attributed and
+     *     the message has no such prefix
+     */
+    public String getProcessor() {
+        if (processor != null) {
+            return processor;
+        }
+        if (message == null || !message.startsWith("[")) {
+            return null;
+        }
+        Matcher matcher = PROCESSOR_PATTERN.matcher(message);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Returns the annotation processor that the diagnostic was attributed to.
+     *
+     * @return the class name of the processor, or {@code null} if the diagnostic was not
+     *     attributed
+     */
+    public String getAttributedProcessor() {
+        return processor;
+    }
+
+    /**
+     * Returns a copy of this record that is attributed to the annotation processor that reported
+     * it, e.g. by {@link io.github.eisopux.diagnostics.collectors.ProcessorCollector}.
+     *
+     * @param processor the class name of the processor, or {@code null} to remove the attribution
+     * @return the attributed record
+     */
+    public DiagnosticRecord withProcessor(String processor) {
+        return new DiagnosticRecord(
+                source,
+                kind,
+                position,
+                startPosition,
+                endPosition,
+                lineNumber,
+                columnNumber,
+                startLineNumber,
+                startColumnNumber,
+                endLineNumber,
+                endColumnNumber,
+                code,
+                message,
+                processor,
+                variant);
+    }
+
+    /**
+     * Returns the variant of a compilation matrix that reported the diagnostic, see {@link
+     * CompilerRunner#addVariant(String, List)}.
+     *
+     * @return the name of the variant, or {@code null} if the diagnostic was not reported by a
+     *     variant
+     */
+    public String getVariant() {
+        return variant;
+    }
+
+    /**
+     * Returns a copy of this record that is tagged with the variant of a compilation matrix that
+     * reported it.
+     *
+     * @param variant the name of the variant, or {@code null} to remove the tag
+     * @return the tagged record
+     */
+    public DiagnosticRecord withVariant(String variant) {
+        return new DiagnosticRecord(
+                source,
+                kind,
+                position,
+                startPosition,
+                endPosition,
+                lineNumber,
+                columnNumber,
+                startLineNumber,
+                startColumnNumber,
+                endLineNumber,
+                endColumnNumber,
+                code,
+                message,
+                processor,
+                variant);
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> diagMap = new HashMap<>();
+        diagMap.put("message", message);
+        diagMap.put("lineNumber", lineNumber);
+        diagMap.put("columnNumber", columnNumber);
+        diagMap.put("kind", kind);
+        diagMap.put("code", code);
+        diagMap.put("source", source);
+        diagMap.put("position", position);
+        diagMap.put("startPosition", startPosition);
+        diagMap.put("endPosition", endPosition);
+        if (processor != null) {
+            diagMap.put("processor", processor);
+        }
+        if (variant != null) {
+            diagMap.put("variant", variant);
+        }
+        return diagMap;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DiagnosticRecord)) {
+            return false;
+        }
+        DiagnosticRecord other = (DiagnosticRecord) obj;
+        return position == other.position
+                && startPosition == other.startPosition
+                && endPosition == other.endPosition
+                && lineNumber == other.lineNumber
+                && columnNumber == other.columnNumber
+                && startLineNumber == other.startLineNumber
+                && startColumnNumber == other.startColumnNumber
+                && endLineNumber == other.endLineNumber
+                && endColumnNumber == other.endColumnNumber
+                && kind == other.kind
+                && Objects.equals(source, other.source)
+                && Objects.equals(code, other.code)
+                && Objects.equals(message, other.message)
+                && Objects.equals(processor, other.processor)
+                && Objects.equals(variant, other.variant);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(
+                source,
+                kind,
+                position,
+                startPosition,
+                endPosition,
+                lineNumber,
+                columnNumber,
+                startLineNumber,
+                startColumnNumber,
+                endLineNumber,
+                endColumnNumber,
+                code,
+                message,
+                processor,
+                variant);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
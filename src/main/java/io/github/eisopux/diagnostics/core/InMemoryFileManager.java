@@ -0,0 +1,289 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * A {@link JavaFileManager} that keeps class output in memory, or discards it, and that compiles
+ * source files from in-memory overlays, e.g. the unsaved buffers of an editor, instead of their
+ * content on disk.
+ *
+ * <p>Everything else is forwarded to a {@link StandardJavaFileManager}, which usually outlives this
+ * file manager so that its opened class path archives are reused across compilations (see {@link
+ * CompilerSession}). Closing this file manager therefore does not close the delegate.
+ *
+ * <p>Overlays replace the content of existing source files, both of the files to compile and of
+ * files found on the source path; they are matched by their normalized absolute path.
+ */
+public class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    /** What happens to the class files that javac generates. */
+    public enum ClassOutput {
+        /** Class files are written by the delegate, as javac would do. */
+        WRITE,
+        /** Class files are not written anywhere. */
+        DISCARD,
+        /** Class files are kept in memory, see {@link #getClassOutput()}. */
+        KEEP
+    }
+
+    private ClassOutput classOutput = ClassOutput.WRITE;
+    private final Map<Path, Overlay> overlays = new HashMap<>();
+    private final Map<String, byte[]> keptClasses =
+            Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Creates an in-memory file manager that forwards to the given file manager.
+     *
+     * @param fileManager the file manager to forward to
+     */
+    public InMemoryFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    /**
+     * Sets what happens to the class files that javac generates. Source files and resources that
+     * annotation processors generate are always written by the delegate.
+     *
+     * @param classOutput the treatment of class files, {@link ClassOutput#WRITE} by default
+     * @return this InMemoryFileManager instance for method chaining
+     */
+    public InMemoryFileManager setClassOutput(ClassOutput classOutput) {
+        this.classOutput = classOutput;
+        return this;
+    }
+
+    /**
+     * Returns the class files generated with {@link ClassOutput#KEEP}.
+     *
+     * @return an unmodifiable map from the binary class names to the class file contents
+     */
+    public Map<String, byte[]> getClassOutput() {
+        synchronized (keptClasses) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(keptClasses));
+        }
+    }
+
+    /**
+     * Compiles the given source file from the given content instead of its content on disk.
+     *
+     * @param file the source file to overlay
+     * @param content the content to compile instead
+     * @return this InMemoryFileManager instance for method chaining
+     */
+    public InMemoryFileManager putOverlay(File file, String content) {
+        overlays.put(SourceRoots.normalize(file), new Overlay(content, System.currentTimeMillis()));
+        return this;
+    }
+
+    /**
+     * Compiles the given source file from its content on disk again.
+     *
+     * @param file the source file to no longer overlay
+     * @return this InMemoryFileManager instance for method chaining
+     */
+    public InMemoryFileManager removeOverlay(File file) {
+        overlays.remove(SourceRoots.normalize(file));
+        return this;
+    }
+
+    /**
+     * Returns file objects for the given source files, which read the overlays of overlaid files.
+     *
+     * @param files the source files
+     * @return the file objects to compile
+     */
+    public Iterable<? extends JavaFileObject> getJavaFileObjectsFromFiles(
+            Iterable<? extends File> files) {
+        return withOverlays(fileManager.getJavaFileObjectsFromFiles(files));
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(
+            Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+            throws IOException {
+        Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+        if (overlays.isEmpty() || !kinds.contains(JavaFileObject.Kind.SOURCE)) {
+            return files;
+        }
+        return withOverlays(files);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForInput(
+            Location location, String className, JavaFileObject.Kind kind) throws IOException {
+        JavaFileObject file = super.getJavaFileForInput(location, className, kind);
+        return file != null ? withOverlay(file) : null;
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(
+            Location location, String className, JavaFileObject.Kind kind, FileObject sibling)
+            throws IOException {
+        if (kind != JavaFileObject.Kind.CLASS
+                || !location.isOutputLocation()
+                || classOutput == ClassOutput.WRITE) {
+            return super.getJavaFileForOutput(location, className, kind, unwrap(sibling));
+        }
+        return new ClassOutputFile(className);
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        return super.inferBinaryName(location, unwrap(file));
+    }
+
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b) {
+        if (a instanceof ClassOutputFile || b instanceof ClassOutputFile) {
+            return a == b;
+        }
+        return super.isSameFile(unwrap(a), unwrap(b));
+    }
+
+    /** Releases the kept class files; the delegate stays open. */
+    @Override
+    public void close() {
+        keptClasses.clear();
+    }
+
+    private List<JavaFileObject> withOverlays(Iterable<? extends JavaFileObject> files) {
+        List<JavaFileObject> result = new ArrayList<>();
+        for (JavaFileObject file : files) {
+            result.add(withOverlay(file));
+        }
+        return result;
+    }
+
+    /** Returns a file object that reads the file's overlay, or the file itself if it has none. */
+    private JavaFileObject withOverlay(JavaFileObject file) {
+        if (overlays.isEmpty() || file.getKind() != JavaFileObject.Kind.SOURCE) {
+            return file;
+        }
+        URI uri = file.toUri();
+        if (!"file".equals(uri.getScheme())) {
+            return file;
+        }
+        Overlay overlay = overlays.get(Paths.get(uri).toAbsolutePath().normalize());
+        return overlay != null ? new OverlayFile(file, overlay) : file;
+    }
+
+    /**
+     * Returns a file object that reads the given content instead of the file's content, for
+     * compilation tasks that use the delegate itself instead of an in-memory file manager.
+     */
+    static JavaFileObject overlay(JavaFileObject file, String content) {
+        return new OverlayFile(file, new Overlay(content, System.currentTimeMillis()));
+    }
+
+    /** Returns the delegate's own file object for a file object of this file manager. */
+    private static FileObject unwrap(FileObject file) {
+        return file instanceof OverlayFile ? ((OverlayFile) file).getDelegate() : file;
+    }
+
+    /** Returns the delegate's own file object for a file object of this file manager. */
+    private static JavaFileObject unwrap(JavaFileObject file) {
+        return file instanceof OverlayFile ? ((OverlayFile) file).getDelegate() : file;
+    }
+
+    /** The in-memory content of a source file. */
+    private static final class Overlay {
+        final String content;
+        final long lastModified;
+
+        Overlay(String content, long lastModified) {
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /** A source file whose content is read from an overlay. */
+    private static final class OverlayFile extends ForwardingJavaFileObject<JavaFileObject> {
+        private final Overlay overlay;
+
+        OverlayFile(JavaFileObject file, Overlay overlay) {
+            super(file);
+            this.overlay = overlay;
+        }
+
+        JavaFileObject getDelegate() {
+            return fileObject;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return overlay.content;
+        }
+
+        @Override
+        public Reader openReader(boolean ignoreEncodingErrors) {
+            return new StringReader(overlay.content);
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(overlay.content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public long getLastModified() {
+            return overlay.lastModified;
+        }
+    }
+
+    /** A class file that is kept in memory or discarded. */
+    private final class ClassOutputFile extends SimpleJavaFileObject {
+        private final String className;
+
+        ClassOutputFile(String className) {
+            super(
+                    URI.create("mem:///" + className.replace('.', '/') + Kind.CLASS.extension),
+                    Kind.CLASS);
+            this.className = className;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            if (classOutput == ClassOutput.DISCARD) {
+                return new OutputStream() {
+                    @Override
+                    public void write(int b) {}
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {}
+                };
+            }
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    keptClasses.put(className, toByteArray());
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Thrown when command-line arguments cannot be turned into a compilation task, e.g. because of an
+ * unrecognized option or an unreadable argument file. The problems are also available as error
+ * diagnostics, with the codes javac uses for them, so that they can be reported like any other
+ * diagnostic.
+ */
+public class InvalidArgumentsException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<DiagnosticRecord> diagnostics;
+
+    /**
+     * Creates an exception for the given problems.
+     *
+     * @param diagnostics the problems with the arguments, at least one
+     */
+    public InvalidArgumentsException(List<DiagnosticRecord> diagnostics) {
+        super(
+                diagnostics.stream()
+                        .map(DiagnosticRecord::getMessage)
+                        .collect(Collectors.joining("\n")));
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * Returns the problems with the arguments.
+     *
+     * @return an unmodifiable list of error diagnostics without a source file
+     */
+    public List<DiagnosticRecord> getDiagnostics() {
+        return diagnostics;
+    }
+}
@@ -0,0 +1,228 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.PatternSyntaxException;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.Diagnostic;
+import javax.tools.OptionChecker;
+
+/**
+ * JavacOptions encapsulates the parsing of command-line arguments for the Java compiler.
+ *
+ * <p>Like javac, arguments of the form {@code @file} are replaced by the arguments read from the
+ * argument file (see {@link ArgFiles}) and {@code @@arg} stands for the literal {@code @arg}. In
+ * addition, a directory stands for all Java source files below it, and a glob pattern such as
+ * {@code src/**}{@code /*.java} for all Java source files that match it; see {@link SourceFiles}.
+ * An argument that names an existing file or directory is taken literally, even if it contains glob
+ * characters.
+ *
+ * <p>Only arguments that start with {@code -} are looked up as options, and, as javac does,
+ * arguments that end with {@code .java} are taken to be source files without checking that they
+ * exist; javac reports missing files itself. Parsing is therefore cheap even for tens of thousands
+ * of source files. Problems with the arguments are collected as error diagnostics instead of being
+ * thrown right away.
+ */
+final class JavacOptions {
+    private final List<String> recognizedOptions;
+    private final List<String> classNames;
+    private final List<File> files;
+    private final List<String> unrecognizedOptions;
+    private final List<DiagnosticRecord> errors;
+
+    private JavacOptions(
+            List<String> recognizedOptions,
+            List<String> classNames,
+            List<File> files,
+            List<String> unrecognizedOptions,
+            List<DiagnosticRecord> errors) {
+        this.recognizedOptions = recognizedOptions;
+        this.classNames = classNames;
+        this.files = files;
+        this.unrecognizedOptions = unrecognizedOptions;
+        this.errors = errors;
+    }
+
+    static JavacOptions parse(OptionChecker primary, OptionChecker secondary, String... arguments) {
+
+        List<String> recognizedOptions = new ArrayList<>();
+        List<String> unrecognizedOptions = new ArrayList<>();
+        List<String> classNames = new ArrayList<>();
+        List<DiagnosticRecord> errors = new ArrayList<>();
+        // The source files, each either a single file or the pending expansion of an argument.
+        List<Object> sources = new ArrayList<>();
+
+        List<String> expanded = expandArgFiles(arguments, errors);
+        for (int i = 0; i < expanded.size(); i++) {
+            String argument = expanded.get(i);
+            if (!argument.startsWith("-")) {
+                if (SourceFiles.isPattern(argument) && !new File(argument).exists()) {
+                    try {
+                        sources.add(
+                                new Expansion(argument, SourceFiles.expandPattern(argument), true));
+                    } catch (PatternSyntaxException e) {
+                        errors.add(
+                                error(
+                                        "compiler.err.file.not.found",
+                                        "file not found: " + argument + " ("
+                                                + e.getDescription() + ")"));
+                    }
+                } else if (argument.endsWith(".java")) {
+                    sources.add(new File(argument));
+                } else {
+                    File file = new File(argument);
+                    if (file.isDirectory()) {
+                        sources.add(
+                                new Expansion(
+                                        argument,
+                                        SourceFiles.expandDirectory(file.toPath()),
+                                        false));
+                    } else if (file.exists()) {
+                        sources.add(file);
+                    } else if (SourceVersion.isName(argument)) {
+                        classNames.add(argument);
+                    } else {
+                        unrecognizedOptions.add(argument);
+                        errors.add(error("compiler.err.invalid.flag", "invalid flag: " + argument));
+                    }
+                }
+                continue;
+            }
+
+            int optionCount = primary.isSupportedOption(argument);
+            if (optionCount < 0) {
+                optionCount = secondary.isSupportedOption(argument);
+            }
+            if (optionCount < 0) {
+                unrecognizedOptions.add(argument);
+                errors.add(error("compiler.err.invalid.flag", "invalid flag: " + argument));
+            } else if (i + optionCount >= expanded.size()) {
+                errors.add(error("compiler.err.req.arg", argument + " requires an argument"));
+                break;
+            } else {
+                recognizedOptions.addAll(expanded.subList(i, i + optionCount + 1));
+                i += optionCount;
+            }
+        }
+
+        List<File> files = joinSources(sources, errors);
+        return new JavacOptions(recognizedOptions, classNames, files, unrecognizedOptions, errors);
+    }
+
+    /** Replaces each {@code @file} argument by the arguments of the file, as javac does. */
+    private static List<String> expandArgFiles(String[] arguments, List<DiagnosticRecord> errors) {
+        List<String> expanded = new ArrayList<>(arguments.length);
+        for (String argument : arguments) {
+            if (argument.length() < 2 || argument.charAt(0) != '@') {
+                expanded.add(argument);
+            } else if (argument.charAt(1) == '@') {
+                expanded.add(argument.substring(1));
+            } else {
+                String argFile = argument.substring(1);
+                try {
+                    expanded.addAll(ArgFiles.read(Paths.get(argFile)));
+                } catch (IOException | IllegalArgumentException e) {
+                    errors.add(error("compiler.err.cant.read.file", "cannot read: " + argFile));
+                }
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Waits for the expansions of directories and patterns and returns all source files in the
+     * order of the arguments, without duplicates.
+     */
+    private static List<File> joinSources(List<Object> sources, List<DiagnosticRecord> errors) {
+        Set<File> files = new LinkedHashSet<>();
+        for (Object source : sources) {
+            if (source instanceof File) {
+                files.add((File) source);
+                continue;
+            }
+            Expansion expansion = (Expansion) source;
+            try {
+                List<File> expandedFiles = expansion.files.join();
+                if (expandedFiles.isEmpty() && expansion.pattern) {
+                    errors.add(
+                            error(
+                                    "compiler.err.file.not.found",
+                                    "file not found: " + expansion.argument));
+                }
+                files.addAll(expandedFiles);
+            } catch (UncheckedIOException e) {
+                errors.add(
+                        error(
+                                "compiler.err.cant.read.file",
+                                "cannot read: " + expansion.argument + " ("
+                                        + e.getCause().getMessage() + ")"));
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static DiagnosticRecord error(String code, String message) {
+        return new DiagnosticRecord(
+                "unknown",
+                Diagnostic.Kind.ERROR,
+                Diagnostic.NOPOS,
+                Diagnostic.NOPOS,
+                Diagnostic.NOPOS,
+                Diagnostic.NOPOS,
+                Diagnostic.NOPOS,
+                code,
+                message);
+    }
+
+    List<String> getRecognizedOptions() {
+        return Collections.unmodifiableList(recognizedOptions);
+    }
+
+    List<File> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    List<String> getClassNames() {
+        return Collections.unmodifiableList(classNames);
+    }
+
+    List<String> getUnrecognizedOptions() {
+        return Collections.unmodifiableList(unrecognizedOptions);
+    }
+
+    /** Returns the problems with the arguments as error diagnostics, empty if there are none. */
+    List<DiagnosticRecord> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "recognizedOptions = %s; classNames = %s; files = %s; unrecognizedOptions = %s",
+                recognizedOptions, classNames, files, unrecognizedOptions);
+    }
+
+    /** The pending expansion of a directory or pattern argument. */
+    private static final class Expansion {
+        final String argument;
+        final ForkJoinTask<List<File>> files;
+
+        /** Whether the argument is a pattern rather than a directory. */
+        final boolean pattern;
+
+        Expansion(String argument, ForkJoinTask<List<File>> files, boolean pattern) {
+            this.argument = argument;
+            this.files = files;
+            this.pattern = pattern;
+        }
+    }
+}
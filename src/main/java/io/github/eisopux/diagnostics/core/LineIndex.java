@@ -0,0 +1,126 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * The start offsets of the lines of a source file, which map the character offsets of javac's
+ * diagnostics to line and column numbers in time logarithmic in the number of lines.
+ *
+ * <p>Offsets and columns count UTF-16 code units, i.e. Java {@code char}s, like javac's positions
+ * and the character positions of the Language Server Protocol; tabs count as one column. Lines end
+ * at {@code \n}, {@code \r} or {@code \r\n}.
+ */
+public final class LineIndex {
+
+    /** The offset of the first character of each line, in ascending order. */
+    private final int[] lineStarts;
+
+    private final int length;
+
+    private LineIndex(int[] lineStarts, int length) {
+        this.lineStarts = lineStarts;
+        this.length = length;
+    }
+
+    /**
+     * Builds the line index of the given content.
+     *
+     * @param content the content of a source file
+     * @return the line index of the content
+     */
+    public static LineIndex of(CharSequence content) {
+        int[] lineStarts = new int[16];
+        int lineCount = 1;
+        int length = content.length();
+        for (int i = 0; i < length; i++) {
+            char c = content.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == length || content.charAt(i + 1) != '\n'))) {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                }
+                lineStarts[lineCount++] = i + 1;
+            }
+        }
+        return new LineIndex(Arrays.copyOf(lineStarts, lineCount), length);
+    }
+
+    /**
+     * Returns the line number of a character offset.
+     *
+     * @param offset the character offset
+     * @return the 1-based line number, or {@link Diagnostic#NOPOS} if the offset is not within the
+     *     content or directly at its end
+     */
+    public long getLineNumber(long offset) {
+        return contains(offset) ? lineOf((int) offset) + 1 : Diagnostic.NOPOS;
+    }
+
+    /**
+     * Returns the column number of a character offset within its line.
+     *
+     * @param offset the character offset
+     * @return the 1-based column number, or {@link Diagnostic#NOPOS} if the offset is not within
+     *     the content or directly at its end
+     */
+    public long getColumnNumber(long offset) {
+        return contains(offset) ? offset - lineStarts[lineOf((int) offset)] + 1 : Diagnostic.NOPOS;
+    }
+
+    private boolean contains(long offset) {
+        return offset >= 0 && offset <= length;
+    }
+
+    /** Returns the 0-based line of an offset within the content. */
+    private int lineOf(int offset) {
+        int index = Arrays.binarySearch(lineStarts, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * The line indexes of the source files of a compilation. Each index is built from the content
+     * the compiler read, which javac usually still holds, when it is first needed.
+     */
+    public static final class Cache {
+        private final Map<String, LineIndex> indexes = new HashMap<>();
+
+        /** The most recently requested file, since javac reports diagnostics file by file. */
+        private JavaFileObject lastFile;
+
+        private LineIndex lastIndex;
+
+        /**
+         * Returns the line index of a source file.
+         *
+         * @param file the source file, or {@code null}
+         * @return the line index of the file, or {@code null} if there is no file or its content
+         *     cannot be read
+         */
+        public synchronized LineIndex get(JavaFileObject file) {
+            if (file == null) {
+                return null;
+            }
+            if (file == lastFile) {
+                return lastIndex;
+            }
+            String uri = file.toUri().toString();
+            LineIndex index = indexes.get(uri);
+            if (index == null) {
+                try {
+                    index = LineIndex.of(file.getCharContent(true));
+                } catch (IOException | UnsupportedOperationException e) {
+                    return null;
+                }
+                indexes.put(uri, index);
+            }
+            lastFile = file;
+            lastIndex = index;
+            return index;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility methods to merge the reports of the variants of a compilation matrix, see {@link
+ * CompilerRunner#addVariant(String, List)}, into one.
+ */
+final class Matrix {
+
+    private Matrix() {}
+
+    /**
+     * Merges the reports of all variants into a single report.
+     *
+     * <p>The {@code "diagnostics"} section holds the diagnostics of all variants in variant order,
+     * each tagged with its variant. Every other section of a variant is concatenated with those of
+     * the other variants, with a {@code "variant"} key added to each of its records. Two sections
+     * are added:
+     *
+     * <ul>
+     *   <li>{@code "variants"}, with one record per variant: its name ({@code "variant"}), its
+     *       options ({@code "options"}) and the number of its diagnostics by kind ({@code
+     *       "errors"}, {@code "warnings"}, {@code "notes"})
+     *   <li>{@code "variantDifferences"}, with one record per diagnostic that some variants report
+     *       and others do not, in the order in which the variants first report them: its {@code
+     *       "source"}, {@code "lineNumber"}, {@code "columnNumber"}, {@code "kind"}, {@code "code"}
+     *       and {@code "message"}, and the names of the variants that report it ({@code
+     *       "reportedBy"}) and that do not ({@code "notReportedBy"})
+     * </ul>
+     *
+     * @param names the names of the variants, in the order in which they were added
+     * @param options the options of each variant, in the same order as {@code names}
+     * @param reports the report of each variant, in the same order as {@code names}
+     * @return the merged report
+     */
+    static CompilationReportData merge(
+            List<String> names, List<List<String>> options, List<CompilationReportData> reports) {
+        Map<String, List<Map<String, Object>>> sections = new LinkedHashMap<>();
+        List<DiagnosticRecord> diagnostics = new ArrayList<>();
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        Map<DiagnosticRecord, Set<String>> reportedBy = new LinkedHashMap<>();
+
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            CompilationReportData report = reports.get(i);
+            int[] counts = new int[3];
+            for (String sectionId : report.getSectionIds()) {
+                if (!sectionId.equals("diagnostics")) {
+                    List<Map<String, Object>> records =
+                            sections.computeIfAbsent(sectionId, k -> new ArrayList<>());
+                    for (Map<String, Object> record : report.getSection(sectionId)) {
+                        Map<String, Object> tagged = new LinkedHashMap<>();
+                        tagged.put("variant", name);
+                        tagged.putAll(record);
+                        records.add(tagged);
+                    }
+                    continue;
+                }
+                for (DiagnosticRecord diag :
+                        report.getTypedSection(
+                                sectionId, DiagnosticRecord.class, DiagnosticRecord::fromMap)) {
+                    diagnostics.add(diag.withVariant(name));
+                    reportedBy
+                            .computeIfAbsent(diag.withVariant(null), d -> new LinkedHashSet<>())
+                            .add(name);
+                    count(counts, diag);
+                }
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("variant", name);
+            summary.put("options", String.join(" ", options.get(i)));
+            summary.put("errors", counts[0]);
+            summary.put("warnings", counts[1]);
+            summary.put("notes", counts[2]);
+            summaries.add(summary);
+        }
+
+        List<Map<String, Object>> differences = new ArrayList<>();
+        for (Map.Entry<DiagnosticRecord, Set<String>> entry : reportedBy.entrySet()) {
+            if (entry.getValue().size() == names.size()) {
+                continue;
+            }
+            DiagnosticRecord diag = entry.getKey();
+            List<String> missing = new ArrayList<>(names);
+            missing.removeAll(entry.getValue());
+            Map<String, Object> difference = new LinkedHashMap<>();
+            difference.put("source", diag.getSource());
+            difference.put("lineNumber", diag.getLineNumber());
+            difference.put("columnNumber", diag.getColumnNumber());
+            difference.put("kind", diag.getKind() != null ? diag.getKind().name() : null);
+            difference.put("code", diag.getCode());
+            difference.put("message", diag.getMessage());
+            difference.put("reportedBy", new ArrayList<>(entry.getValue()));
+            difference.put("notReportedBy", missing);
+            differences.add(difference);
+        }
+
+        CompilationReportData merged = new CompilationReportData();
+        merged.putTypedSection("diagnostics", DiagnosticRecord.class, diagnostics);
+        sections.forEach(merged::putSection);
+        merged.putSection("variants", summaries);
+        merged.putSection("variantDifferences", differences);
+        return merged;
+    }
+
+    /** Counts a diagnostic as an error, a warning or a note. */
+    private static void count(int[] counts, DiagnosticRecord diag) {
+        if (diag.getKind() == null) {
+            counts[2]++;
+            return;
+        }
+        switch (diag.getKind()) {
+            case ERROR:
+                counts[0]++;
+                break;
+            case WARNING:
+            case MANDATORY_WARNING:
+                counts[1]++;
+                break;
+            default:
+                counts[2]++;
+                break;
+        }
+    }
+}
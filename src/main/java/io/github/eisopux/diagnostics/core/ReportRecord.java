@@ -0,0 +1,20 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.util.Map;
+
+/**
+ * A typed record of a {@link CompilationReportData} section. Collectors can store typed records
+ * instead of key/value pairs, so that reporters that know the record type can read them without
+ * boxing or map lookups, while all other consumers still see the key/value pairs of {@link
+ * #toMap()}.
+ */
+public interface ReportRecord {
+
+    /**
+     * Returns the key/value pairs of this record, as they appear in the key/value view of its
+     * section.
+     *
+     * @return a new, mutable map of this record's key/value pairs
+     */
+    Map<String, Object> toMap();
+}
@@ -0,0 +1,22 @@
+package io.github.eisopux.diagnostics.core;
+
+/**
+ * A ReportStage post-processes the data of a compilation after all {@link Collector}s have
+ * populated it and before the {@link Reporter} formats it, e.g. to filter or aggregate the
+ * diagnostics.
+ *
+ * <p>Stages see the complete data of a run, i.e. the merged data of all shards. Records that a
+ * {@link StreamingReporter} received while javac was running have already been reported and are
+ * not affected. A stage may process the data of several compilations, concurrently for the jobs of
+ * a {@link BatchRunner}, so it should not keep state between calls.
+ */
+public interface ReportStage {
+
+    /**
+     * Called once the report data of a compilation is complete. The stage may replace, add or
+     * remove sections of the report data.
+     *
+     * @param reportData the report data of the compilation
+     */
+    void process(CompilationReportData reportData);
+}
@@ -0,0 +1,298 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.tools.Diagnostic;
+
+/**
+ * RunMetrics measures the wrapper itself: how long each {@link Step} of a run takes, and how many
+ * arguments, source files, compilations, diagnostics and report bytes it handles.
+ *
+ * <p>A {@link CompilerRunner} or {@link BatchRunner} records into the metrics set with {@code
+ * setMetrics}. All values are counters that only grow, so one instance can be shared by several
+ * runs, also concurrently; the times of concurrent compilations, e.g. of shards, add up. The
+ * metrics can be reported as the records of a section ({@link #toRecords()}) or written in the
+ * Prometheus text format ({@link #writePrometheus(Path)}).
+ */
+public final class RunMetrics {
+
+    /** The prefix of the metric names in the Prometheus text format. */
+    private static final String PROMETHEUS_PREFIX = "javac_wrapper_";
+
+    /** The steps of a run that are timed, in the order in which they run. */
+    public enum Step {
+        /** Looking up the system Java compiler and creating its file manager. */
+        LOOKUP_COMPILER,
+        /** Parsing the command-line arguments, which checks whether each one is a file. */
+        PARSE_ARGUMENTS,
+        /** Calling {@link Collector#onBeforeCompile(CompilationTaskBuilder)} on all collectors. */
+        PREPARE_COLLECTORS,
+        /** Creating and calling the compilation task. */
+        COMPILE,
+        /** Calling {@link Collector#onAfterCompile(CompilationReportData)} on all collectors. */
+        FINISH_COLLECTORS,
+        /** Passing the report data through all {@link ReportStage}s. */
+        PROCESS_STAGES,
+        /** Generating the report. */
+        REPORT;
+
+        /** Returns the name of the step in reports, e.g. {@code "parse_arguments"}. */
+        String getLabel() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** The quantities of a run that are counted. */
+    public enum Counter {
+        /** The command-line arguments that were parsed. */
+        ARGUMENTS("Command-line arguments parsed."),
+        /** The source files that were compiled. */
+        SOURCE_FILES("Source files compiled."),
+        /** The compilation tasks that were run, e.g. one per shard. */
+        COMPILATIONS("Compilation tasks run."),
+        /** The bytes of the generated reports. */
+        REPORT_BYTES("Bytes of the generated reports.");
+
+        private final String help;
+
+        Counter(String help) {
+            this.help = help;
+        }
+
+        /** Returns the name of the counter in reports, e.g. {@code "source_files"}. */
+        String getLabel() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Map<Step, LongAdder> stepNanos = new EnumMap<>(Step.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final Map<Diagnostic.Kind, LongAdder> diagnostics =
+            new EnumMap<>(Diagnostic.Kind.class);
+
+    /** Creates metrics whose values are all zero. */
+    public RunMetrics() {
+        // The maps are never modified after construction, so they can be read concurrently.
+        for (Step step : Step.values()) {
+            stepNanos.put(step, new LongAdder());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+        for (Diagnostic.Kind kind : Diagnostic.Kind.values()) {
+            diagnostics.put(kind, new LongAdder());
+        }
+    }
+
+    /**
+     * Adds to the time spent in a step.
+     *
+     * @param step the step
+     * @param nanos the time to add, in nanoseconds
+     */
+    public void addTime(Step step, long nanos) {
+        stepNanos.get(step).add(nanos);
+    }
+
+    /**
+     * Returns the total time spent in a step.
+     *
+     * @param step the step
+     * @return the time in nanoseconds
+     */
+    public long getTime(Step step) {
+        return stepNanos.get(step).sum();
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter the counter
+     * @param amount the amount to add
+     */
+    public void add(Counter counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param counter the counter
+     * @return the value
+     */
+    public long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * Counts reported diagnostics by kind. Diagnostics without a kind count as {@link
+     * Diagnostic.Kind#OTHER}.
+     *
+     * @param records the diagnostics to count
+     */
+    public void countDiagnostics(List<DiagnosticRecord> records) {
+        long[] counts = new long[Diagnostic.Kind.values().length];
+        for (DiagnosticRecord record : records) {
+            Diagnostic.Kind kind = record.getKind();
+            counts[(kind != null ? kind : Diagnostic.Kind.OTHER).ordinal()]++;
+        }
+        for (Diagnostic.Kind kind : Diagnostic.Kind.values()) {
+            diagnostics.get(kind).add(counts[kind.ordinal()]);
+        }
+    }
+
+    /**
+     * Returns the number of reported diagnostics of a kind.
+     *
+     * @param kind the kind of diagnostics
+     * @return the number of diagnostics
+     */
+    public long getDiagnostics(Diagnostic.Kind kind) {
+        return diagnostics.get(kind).sum();
+    }
+
+    /**
+     * Returns a stream that writes through to the given one and adds every byte written to {@link
+     * Counter#REPORT_BYTES}.
+     *
+     * @param out the stream to count the bytes of
+     * @return the counting stream; closing it closes {@code out}
+     */
+    public OutputStream countBytes(OutputStream out) {
+        LongAdder bytes = counters.get(Counter.REPORT_BYTES);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytes.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytes.add(len);
+            }
+        };
+    }
+
+    /**
+     * Returns the metrics as the records of a report section, one per value: the step times as
+     * {@code {"name": "step_seconds", "step": "compile", "value": 1.5}}, the diagnostics as {@code
+     * {"name": "diagnostics", "kind": "WARNING", "value": 3}}, and the other counters as {@code
+     * {"name": "source_files", "value": 12}}.
+     *
+     * @return the records of the metrics
+     */
+    public List<Map<String, Object>> toRecords() {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (Step step : Step.values()) {
+            records.add(record("step_seconds", "step", step.getLabel(), seconds(getTime(step))));
+        }
+        for (Diagnostic.Kind kind : Diagnostic.Kind.values()) {
+            records.add(record("diagnostics", "kind", kind.name(), getDiagnostics(kind)));
+        }
+        for (Counter counter : Counter.values()) {
+            records.add(record(counter.getLabel(), null, null, get(counter)));
+        }
+        return records;
+    }
+
+    private static Map<String, Object> record(
+            String name, String labelName, String labelValue, Object value) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("name", name);
+        if (labelName != null) {
+            record.put(labelName, labelValue);
+        }
+        record.put("value", value);
+        return record;
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format, as counters whose names start
+     * with {@code javac_wrapper_} and end with {@code _total}, e.g. {@code
+     * javac_wrapper_step_seconds_total{step="compile"}}. The file is replaced atomically where the
+     * file system supports it, so that a collector that scrapes it, such as the textfile collector
+     * of the node exporter, never reads a partial file.
+     *
+     * @param file the file to write; an existing file is replaced
+     * @throws IOException if the file cannot be written
+     */
+    public void writePrometheus(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writePrometheus(writer);
+        }
+        try {
+            Files.move(
+                    temporary,
+                    file,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format, see {@link
+     * #writePrometheus(Path)}.
+     *
+     * @param writer the writer to write to; it is neither flushed nor closed
+     * @throws IOException if writing fails
+     */
+    public void writePrometheus(Writer writer) throws IOException {
+        writeType(writer, "step_seconds", "Wall time spent in each step of a run.");
+        for (Step step : Step.values()) {
+            writeSample(writer, "step_seconds", "step", step.getLabel(), seconds(getTime(step)));
+        }
+        writeType(writer, "diagnostics", "Diagnostics reported, by kind.");
+        for (Diagnostic.Kind kind : Diagnostic.Kind.values()) {
+            writeSample(writer, "diagnostics", "kind", kind.name(), getDiagnostics(kind));
+        }
+        for (Counter counter : Counter.values()) {
+            writeType(writer, counter.getLabel(), counter.help);
+            writeSample(writer, counter.getLabel(), null, null, get(counter));
+        }
+    }
+
+    private static void writeType(Writer writer, String name, String help) throws IOException {
+        String metric = PROMETHEUS_PREFIX + name + "_total";
+        writer.write("# HELP " + metric + " " + help + "\n");
+        writer.write("# TYPE " + metric + " counter\n");
+    }
+
+    private static void writeSample(
+            Writer writer, String name, String labelName, String labelValue, Object value)
+            throws IOException {
+        writer.write(PROMETHEUS_PREFIX);
+        writer.write(name);
+        writer.write("_total");
+        if (labelName != null) {
+            writer.write("{" + labelName + "=\"");
+            writer.write(
+                    labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+            writer.write("\"}");
+        }
+        writer.write(" " + value + "\n");
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+}
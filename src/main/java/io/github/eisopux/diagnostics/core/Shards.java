@@ -0,0 +1,172 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Utility methods to split the source files of a compilation into shards that are compiled
+ * concurrently, and to merge the shards' reports back into one.
+ */
+final class Shards {
+
+    private Shards() {}
+
+    /**
+     * Partitions source files into at most {@code shardCount} shards. Files of the same directory,
+     * i.e. usually of the same package, stay together, since they tend to depend on each other. The
+     * directories are distributed greedily, largest first, onto the shard with the fewest bytes of
+     * source code so far. The partition only depends on the files and their sizes.
+     *
+     * @param files the source files to partition
+     * @param shardCount the maximum number of shards
+     * @return the non-empty shards, each listing its files in command-line order
+     */
+    static List<List<File>> partition(List<File> files, int shardCount) {
+        Map<String, List<File>> byDirectory = new TreeMap<>();
+        for (File file : files) {
+            Path parent = SourceRoots.normalize(file).getParent();
+            byDirectory
+                    .computeIfAbsent(String.valueOf(parent), d -> new ArrayList<>())
+                    .add(file);
+        }
+
+        List<List<File>> groups = new ArrayList<>(byDirectory.values());
+        Map<List<File>, Long> groupSizes = new IdentityHashMap<>();
+        for (List<File> group : groups) {
+            groupSizes.put(group, group.stream().mapToLong(File::length).sum());
+        }
+        // The sort is stable, so equally sized groups keep their directory order.
+        groups.sort(Comparator.comparing((List<File> group) -> groupSizes.get(group)).reversed());
+
+        int count = Math.max(1, Math.min(shardCount, groups.size()));
+        List<Set<File>> shards = new ArrayList<>();
+        long[] shardSizes = new long[count];
+        for (int i = 0; i < count; i++) {
+            shards.add(new HashSet<>());
+        }
+        for (List<File> group : groups) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (shardSizes[i] < shardSizes[lightest]) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).addAll(group);
+            shardSizes[lightest] += groupSizes.get(group);
+        }
+
+        List<List<File>> ordered = new ArrayList<>();
+        for (Set<File> shard : shards) {
+            List<File> shardFiles = new ArrayList<>();
+            for (File file : files) {
+                if (shard.contains(file)) {
+                    shardFiles.add(file);
+                }
+            }
+            ordered.add(shardFiles);
+        }
+        return ordered;
+    }
+
+    /**
+     * Merges the reports of all shards into a single report that does not depend on the order in
+     * which the shards finished.
+     *
+     * <p>Sections are concatenated in shard order. In the {@code "diagnostics"} section, only
+     * diagnostics of a shard's own files are kept (other files are only compiled as context),
+     * diagnostics without a source file are deduplicated, and the result is ordered by the position
+     * of the source file on the command line, keeping javac's order within each file.
+     *
+     * <p>The diagnostics are those of an unsharded compilation except for the notes that javac
+     * emits instead of deferred mandatory warnings, i.e. the {@code compiler.note.<lint>.filename},
+     * {@code .plural} and {@code .recompile} notes of the deprecation, removal and unchecked lints.
+     * Each shard summarizes only its own files, so where an unsharded compilation reports one
+     * {@code .plural} note for several files, the merged report has one {@code .filename} or {@code
+     * .plural} note, with its {@code .recompile} note, per shard, attributed to that shard's first
+     * affected file. These notes are not merged, since their localized texts are not available.
+     *
+     * @param files all source files, in command-line order
+     * @param shards the files of each shard
+     * @param reports the report of each shard, in the same order as {@code shards}
+     * @return the merged report
+     */
+    static CompilationReportData merge(
+            List<File> files, List<List<File>> shards, List<CompilationReportData> reports) {
+        Map<String, Integer> fileIndex = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            fileIndex.put(SourceRoots.normalize(files.get(i)).toString(), i);
+        }
+
+        Map<String, List<Map<String, Object>>> sections = new LinkedHashMap<>();
+        List<List<DiagnosticRecord>> diagnosticsByFile = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            diagnosticsByFile.add(new ArrayList<>());
+        }
+        Set<DiagnosticRecord> sourceless = new LinkedHashSet<>();
+        boolean hasDiagnostics = false;
+
+        for (int shard = 0; shard < shards.size(); shard++) {
+            Set<String> ownFiles = new HashSet<>();
+            shards.get(shard).forEach(f -> ownFiles.add(SourceRoots.normalize(f).toString()));
+
+            CompilationReportData report = reports.get(shard);
+            for (String sectionId : report.getSectionIds()) {
+                if (!sectionId.equals("diagnostics")) {
+                    sections.computeIfAbsent(sectionId, k -> new ArrayList<>())
+                            .addAll(report.getSection(sectionId));
+                    continue;
+                }
+                hasDiagnostics = true;
+                for (DiagnosticRecord diag :
+                        report.getTypedSection(
+                                sectionId, DiagnosticRecord.class, DiagnosticRecord::fromMap)) {
+                    String path = sourcePath(diag.getSource());
+                    Integer index = path != null ? fileIndex.get(path) : null;
+                    if (index == null) {
+                        sourceless.add(diag);
+                    } else if (ownFiles.contains(path)) {
+                        diagnosticsByFile.get(index).add(diag);
+                    }
+                }
+            }
+        }
+
+        CompilationReportData merged = new CompilationReportData();
+        if (hasDiagnostics) {
+            List<DiagnosticRecord> diagnostics = new ArrayList<>();
+            diagnosticsByFile.forEach(diagnostics::addAll);
+            diagnostics.addAll(sourceless);
+            merged.putTypedSection("diagnostics", DiagnosticRecord.class, diagnostics);
+        }
+        sections.forEach(merged::putSection);
+        return merged;
+    }
+
+    /** Returns the normalized path of a diagnostic's source URI, or null if it is not a file. */
+    private static String sourcePath(String source) {
+        if (source == null) {
+            return null;
+        }
+        try {
+            URI uri = URI.create(source);
+            return "file".equals(uri.getScheme())
+                    ? Paths.get(uri).toAbsolutePath().normalize().toString()
+                    : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
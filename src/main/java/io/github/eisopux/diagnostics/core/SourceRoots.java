@@ -0,0 +1,79 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Utility methods to relate source files to the source roots that contain them. */
+final class SourceRoots {
+
+    /** How much of a source file is read when looking for its package declaration. */
+    private static final int HEADER_LIMIT = 16 * 1024;
+
+    private static final Pattern COMMENT =
+            Pattern.compile("//[^\\n]*|/\\*.*?(?:\\*/|$)", Pattern.DOTALL);
+
+    private static final Pattern PACKAGE =
+            Pattern.compile("\\bpackage\\s+([\\p{javaJavaIdentifierPart}.\\s]+?)\\s*;");
+
+    private SourceRoots() {}
+
+    /**
+     * Returns the absolute, normalized path of a file, for comparing files given in different ways.
+     */
+    static Path normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Derives the source root of a source file from its package declaration.
+     *
+     * @param file the source file
+     * @return the source root, or {@code null} if the file cannot be read or its directory does not
+     *     match its package
+     */
+    static Path inferRoot(Path file) {
+        String packageName;
+        try {
+            packageName = readPackageName(file);
+        } catch (IOException e) {
+            return null;
+        }
+        Path directory = file.toAbsolutePath().normalize().getParent();
+        if (packageName.isEmpty()) {
+            return directory;
+        }
+        String[] segments = packageName.split("\\.");
+        for (int i = segments.length - 1; i >= 0; i--) {
+            if (directory == null || !directory.getFileName().toString().equals(segments[i])) {
+                return null;
+            }
+            directory = directory.getParent();
+        }
+        return directory;
+    }
+
+    /** Returns the package declared by a source file, or the empty string for the unnamed one. */
+    private static String readPackageName(Path file) throws IOException {
+        byte[] buffer = new byte[HEADER_LIMIT];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while (length < buffer.length
+                    && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+        }
+        // Package declarations are ASCII, which all common source encodings agree on.
+        String header = new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
+        String code = COMMENT.matcher(header).replaceAll(" ");
+        int body = code.indexOf('{');
+        Matcher matcher = PACKAGE.matcher(body < 0 ? code : code.substring(0, body));
+        return matcher.find() ? matcher.group(1).replaceAll("\\s", "") : "";
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.eisopux.diagnostics.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SourceWatcher watches the source roots of a compilation for changes through a {@link
+ * WatchService}, so that long-running processes can recompile as soon as the sources change.
+ *
+ * <p>The source root of each source file is derived from its package declaration, or is the file's
+ * directory if the directory does not match the package. Each root is watched with all its
+ * subdirectories, including the ones created later; symbolic links to directories are not
+ * followed. {@link #awaitChanges(long, TimeUnit)} coalesces bursts of changes, such as an editor
+ * saving several files or a branch switch, into a single set of changed source files.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public class SourceWatcher implements Closeable {
+
+    private final WatchService watchService;
+    private final Set<Path> roots = new LinkedHashSet<>();
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    /**
+     * Creates a watcher for the source roots of the given source files and starts watching them.
+     *
+     * @param files the source files of the compilation, e.g. {@link
+     *     CompilationTaskBuilder#getFiles()}
+     * @throws IOException if a source root cannot be watched
+     */
+    public SourceWatcher(Collection<File> files) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (File file : files) {
+            Path root = SourceRoots.inferRoot(file.toPath());
+            roots.add(root != null ? root : SourceRoots.normalize(file).getParent());
+        }
+        try {
+            for (Path root : roots) {
+                register(root, null);
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the watched source roots.
+     *
+     * @return an unmodifiable set of the absolute, normalized source roots
+     */
+    public Set<Path> getRoots() {
+        return Collections.unmodifiableSet(roots);
+    }
+
+    /**
+     * Waits until Java source files below the source roots change, and then until no further
+     * change has arrived for the quiet period. Changes to other files, e.g. class files written
+     * into a source root, are ignored.
+     *
+     * @param quietPeriod how long to wait for further changes before returning
+     * @param unit the unit of the quiet period
+     * @return the created, modified or deleted source files, or, if the file system dropped events,
+     *     the directories it dropped them for; never empty
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Set<Path> awaitChanges(long quietPeriod, TimeUnit unit) throws InterruptedException {
+        Set<Path> changes = new LinkedHashSet<>();
+        while (changes.isEmpty()) {
+            WatchKey key = watchService.take();
+            while (key != null) {
+                collectChanges(key, changes);
+                key = watchService.poll(quietPeriod, unit);
+            }
+        }
+        return changes;
+    }
+
+    /** Adds the changes of a watch key to the given set and resets the key. */
+    private void collectChanges(WatchKey key, Set<Path> changes) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changes.add(directory);
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    // Files may have been created in it before it was registered.
+                    register(path, changes);
+                } catch (IOException e) {
+                    // It was deleted again, or cannot be read; either way, there is nothing to do.
+                }
+            } else if (isSource(path)) {
+                changes.add(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Watches a directory and all its subdirectories, adding the source files found in them to
+     * {@code found} unless it is null.
+     */
+    private void register(Path start, Set<Path> found) throws IOException {
+        Files.walkFileTree(
+                start,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(
+                            Path directory, BasicFileAttributes attributes) throws IOException {
+                        WatchKey key =
+                                directory.register(
+                                        watchService,
+                                        StandardWatchEventKinds.ENTRY_CREATE,
+                                        StandardWatchEventKinds.ENTRY_DELETE,
+                                        StandardWatchEventKinds.ENTRY_MODIFY);
+                        directories.put(key, directory);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (found != null && isSource(file)) {
+                            found.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    private static boolean isSource(Path path) {
+        return path.getFileName().toString().endsWith(".java");
+    }
+
+    /** Stops watching the source roots. */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
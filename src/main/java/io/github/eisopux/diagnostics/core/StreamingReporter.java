@@ -0,0 +1,29 @@
+package io.github.eisopux.diagnostics.core;
+
+/**
+ * A {@link Reporter} that can additionally emit records while the compilation is still running,
+ * instead of only once all data has been collected.
+ *
+ * <p>Streaming collectors hand each record to {@link #reportRecord(String, ReportRecord)} as soon
+ * as it is available and do not buffer it in the {@link CompilationReportData}. {@link
+ * #generateReport(CompilationReportData)} is still called once after compilation; it emits the
+ * sections that were collected the regular way and completes the output. Streaming runs call
+ * {@link #startStreaming()} as soon as the reporter is set up.
+ */
+public interface StreamingReporter extends Reporter {
+
+    /**
+     * Switches the output to its streaming form before any record is emitted, so that the output
+     * has the same form whether or not any records are streamed, e.g. for a compilation without
+     * diagnostics or with invalid arguments. Emitting a record switches the output as well.
+     */
+    void startStreaming();
+
+    /**
+     * Emits a single record of the given section immediately.
+     *
+     * @param sectionId the identifier of the section the record belongs to (e.g. "diagnostics")
+     * @param record the record
+     */
+    void reportRecord(String sectionId, ReportRecord record);
+}
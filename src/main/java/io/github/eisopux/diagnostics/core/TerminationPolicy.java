@@ -0,0 +1,191 @@
+package io.github.eisopux.diagnostics.core;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+
+/**
+ * TerminationPolicy decides when a {@link CompilerRunner} stops a compilation early, because its
+ * outcome is already decided: after a number of errors, at the first error with one of a set of
+ * diagnostic codes, or once a time budget is spent.
+ *
+ * <p>The compilation is stopped by a listener that aborts the running javac task, so javac neither
+ * finishes its remaining phases nor runs further annotation processing rounds. Class files that
+ * were being written may be incomplete. The collectors still finish and the diagnostics reported
+ * so far are passed to the Reporter, together with a {@code "truncated"} section that has one
+ * record per stopped compilation task: why it was stopped ({@code "reason"}, one of {@code
+ * "maxErrors"}, {@code "stopCode"} and {@code "timeBudget"}), a message ({@code "message"}) and
+ * how long the run had taken ({@code "elapsedMillis"}).
+ *
+ * <p>The time budget is checked whenever javac starts or finishes a phase of a compilation unit
+ * and whenever it reports a diagnostic, so a single long call into an annotation processor can
+ * exceed it.
+ */
+public final class TerminationPolicy {
+
+    private int maxErrors = Integer.MAX_VALUE;
+    private final List<String> stopCodes = new ArrayList<>();
+    private long timeBudgetNanos = Long.MAX_VALUE;
+
+    /**
+     * Stops the compilation once it has reported a number of errors. Unlike javac's {@code
+     * -Xmaxerrs}, which only limits how many errors are printed, this ends the compilation. The
+     * shards of a sharded run count their errors together; shards that report errors at the same
+     * time can each report one more before they stop.
+     *
+     * @param maxErrors the number of errors to stop after, at least 1
+     * @return this TerminationPolicy instance for method chaining
+     */
+    public TerminationPolicy setMaxErrors(int maxErrors) {
+        if (maxErrors < 1) {
+            throw new IllegalArgumentException("maxErrors must be positive");
+        }
+        this.maxErrors = maxErrors;
+        return this;
+    }
+
+    /**
+     * Stops the compilation at the first error whose code starts with a prefix, e.g. {@code
+     * compiler.err.cant.resolve} for all unresolved symbols.
+     *
+     * @param codePrefix the prefix of the diagnostic codes to stop at
+     * @return this TerminationPolicy instance for method chaining
+     */
+    public TerminationPolicy addStopCode(String codePrefix) {
+        stopCodes.add(codePrefix);
+        return this;
+    }
+
+    /**
+     * Stops the compilation once a run has taken longer than a time budget. The budget covers the
+     * whole run from the start of the first compilation task, including the shards of a sharded
+     * run, which share it.
+     *
+     * @param budget the time budget, positive
+     * @param unit the unit of {@code budget}
+     * @return this TerminationPolicy instance for method chaining
+     */
+    public TerminationPolicy setTimeBudget(long budget, TimeUnit unit) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("The time budget must be positive");
+        }
+        this.timeBudgetNanos = unit.toNanos(budget);
+        return this;
+    }
+
+    /**
+     * Starts to apply the policy to one run. The compilation tasks of the run share the returned
+     * monitor, so that the errors of all shards count together and all of them stop at once.
+     */
+    Monitor start() {
+        return new Monitor();
+    }
+
+    /** Applies the policy to the compilation tasks of one run, aborting them when it applies. */
+    final class Monitor implements DiagnosticListener<JavaFileObject>, TaskListener {
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger errors = new AtomicInteger();
+
+        /** The truncation record once a task was stopped, which stops all others, too. */
+        private volatile Map<String, Object> truncation;
+
+        @Override
+        public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+            checkTruncated();
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                int count = errors.incrementAndGet();
+                if (count >= maxErrors) {
+                    stop(
+                            "maxErrors",
+                            "Stopped after " + count + (count == 1 ? " error" : " errors"));
+                }
+                String code = diagnostic.getCode();
+                for (String stopCode : stopCodes) {
+                    if (code != null && code.startsWith(stopCode)) {
+                        stop("stopCode", "Stopped at the first " + code + " error");
+                    }
+                }
+            }
+            checkTimeBudget();
+        }
+
+        @Override
+        public void started(TaskEvent e) {
+            checkTruncated();
+            checkTimeBudget();
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            checkTruncated();
+            checkTimeBudget();
+        }
+
+        /**
+         * Returns whether an exception that ended a compilation task was thrown to abort it. javac
+         * wraps exceptions of listeners, so the causes are searched as well.
+         */
+        boolean isAbort(Throwable exception) {
+            for (Throwable t = exception; t != null; t = t.getCause()) {
+                if (t instanceof AbortException) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Returns the record of the {@code "truncated"} section, or null if nothing stopped. */
+        Map<String, Object> getTruncation() {
+            return truncation;
+        }
+
+        private void checkTimeBudget() {
+            long elapsed = System.nanoTime() - startNanos;
+            if (elapsed > timeBudgetNanos) {
+                stop(
+                        "timeBudget",
+                        "Stopped after the time budget of "
+                                + TimeUnit.NANOSECONDS.toMillis(timeBudgetNanos)
+                                + " ms");
+            }
+        }
+
+        private void checkTruncated() {
+            if (truncation != null) {
+                throw new AbortException();
+            }
+        }
+
+        private void stop(String reason, String message) {
+            synchronized (this) {
+                if (truncation == null) {
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    record.put("reason", reason);
+                    record.put("message", message);
+                    record.put("elapsedMillis", (System.nanoTime() - startNanos) / 1_000_000.0);
+                    truncation = record;
+                }
+            }
+            throw new AbortException();
+        }
+    }
+
+    /** Thrown by a listener to abort the javac task it listens to. */
+    private static final class AbortException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        AbortException() {
+            super("Compilation stopped by its termination policy", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package io.github.eisopux.diagnostics.reporter;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import javax.tools.Diagnostic;
+
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+
+/**
+ * A report written by {@link BinaryReporter}, read back as {@link CompilationReportData}.
+ *
+ * <p>Only the structure of the report is read up front. Strings are decoded when they are first
+ * needed, and the {@code "diagnostics"} sections are lists that read each {@link DiagnosticRecord}
+ * from the columns of the report when it is accessed, so a memory-mapped report (see {@link
+ * #open(Path)}) is available right away and only the diagnostics that are used are ever decoded.
+ * Sections of other records are decoded in full.
+ */
+public final class BinaryReport {
+
+    private final List<String> ids;
+    private final List<CompilationReportData> reports;
+
+    private BinaryReport(List<String> ids, List<CompilationReportData> reports) {
+        this.ids = ids;
+        this.reports = reports;
+    }
+
+    /**
+     * Opens a binary report by mapping its file into memory. The file must not change while the
+     * report is in use.
+     *
+     * @param file the binary report
+     * @return the report
+     * @throws IOException if the file cannot be read, is larger than 2 GB, or is not a binary
+     *     report
+     */
+    public static BinaryReport open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary report is too large to be mapped: " + file);
+            }
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a binary report from a buffer, from its position to its limit. The buffer must not
+     * change while the report is in use.
+     *
+     * @param buffer the content of a binary report
+     * @return the report
+     * @throws IOException if the content is not a binary report
+     */
+    public static BinaryReport read(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.slice();
+        try {
+            if (in.getInt() != BinaryReporter.MAGIC) {
+                throw new IOException("Not a binary report");
+            }
+            int version = in.getInt();
+            if (version != BinaryReporter.VERSION) {
+                throw new IOException("Unsupported binary report version " + version);
+            }
+            StringTable strings = new StringTable(in);
+            int compilationCount = in.getInt();
+            List<String> ids = new ArrayList<>();
+            List<CompilationReportData> reports = new ArrayList<>();
+            for (int i = 0; i < compilationCount; i++) {
+                ids.add(strings.get(in.getInt()));
+                CompilationReportData reportData = new CompilationReportData();
+                int sectionCount = in.getInt();
+                for (int j = 0; j < sectionCount; j++) {
+                    readSection(in, strings, reportData);
+                }
+                reports.add(reportData);
+            }
+            return new BinaryReport(ids, reports);
+        } catch (BufferUnderflowException
+                | IndexOutOfBoundsException
+                | IllegalArgumentException e) {
+            throw new IOException("Malformed binary report", e);
+        }
+    }
+
+    private static void readSection(
+            ByteBuffer in, StringTable strings, CompilationReportData reportData)
+            throws IOException {
+        String sectionId = strings.get(in.getInt());
+        byte type = in.get();
+        long byteLength = in.getLong();
+        if (byteLength < 0 || byteLength > in.remaining()) {
+            throw new IOException("Truncated section " + sectionId);
+        }
+        int end = in.position() + (int) byteLength;
+        switch (type) {
+            case BinaryReporter.DIAGNOSTICS:
+                ByteBuffer columns = in.slice();
+                columns.limit((int) byteLength);
+                reportData.putTypedSection(
+                        sectionId, DiagnosticRecord.class, new DiagnosticColumns(columns, strings));
+                break;
+            case BinaryReporter.RECORDS:
+                int n = in.getInt();
+                List<Map<String, Object>> records = null;
+                if (n >= 0) {
+                    records = new ArrayList<>();
+                    for (int i = 0; i < n; i++) {
+                        records.add(asRecord(readValue(in, strings)));
+                    }
+                }
+                reportData.putSection(sectionId, records);
+                break;
+            default:
+                throw new IOException("Unknown type " + type + " of section " + sectionId);
+        }
+        in.position(end);
+    }
+
+    /**
+     * Returns whether the report holds the reports of several compilations, i.e. was written by
+     * {@link BinaryReporter#generateReports(Map)}.
+     *
+     * @return whether the report is a batch report
+     */
+    public boolean isBatch() {
+        return reports.size() != 1 || ids.get(0) != null;
+    }
+
+    /**
+     * Returns the report of the only compilation, written by {@link
+     * BinaryReporter#generateReport(CompilationReportData)}.
+     *
+     * @return the report data of the compilation
+     * @throws IllegalStateException if this is a batch report
+     */
+    public CompilationReportData getReportData() {
+        if (isBatch()) {
+            throw new IllegalStateException("A batch report holds several compilations");
+        }
+        return reports.get(0);
+    }
+
+    /**
+     * Returns the reports of all compilations, written by {@link
+     * BinaryReporter#generateReports(Map)}.
+     *
+     * @return an unmodifiable map from the id of each compilation to its report data, in the order
+     *     in which they were written
+     * @throws IllegalStateException if this is not a batch report
+     */
+    public Map<String, CompilationReportData> getReports() {
+        if (!isBatch()) {
+            throw new IllegalStateException("The report holds a single compilation");
+        }
+        Map<String, CompilationReportData> result = new LinkedHashMap<>();
+        for (int i = 0; i < reports.size(); i++) {
+            result.put(ids.get(i), reports.get(i));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static Object readValue(ByteBuffer in, StringTable strings) throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+            case BinaryReporter.NULL:
+                return null;
+            case BinaryReporter.FALSE:
+                return false;
+            case BinaryReporter.TRUE:
+                return true;
+            case BinaryReporter.LONG:
+                return in.getLong();
+            case BinaryReporter.DOUBLE:
+                return in.getDouble();
+            case BinaryReporter.STRING:
+                return strings.get(in.getInt());
+            case BinaryReporter.LIST:
+                int size = in.getInt();
+                List<Object> list = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, strings));
+                }
+                return list;
+            case BinaryReporter.MAP:
+                return readMap(in, strings);
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    private static Map<String, Object> readMap(ByteBuffer in, StringTable strings)
+            throws IOException {
+        int size = in.getInt();
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = strings.get(in.getInt());
+            map.put(key, readValue(in, strings));
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked") // Records are always written as maps with string keys.
+    private static Map<String, Object> asRecord(Object value) throws IOException {
+        if (!(value instanceof Map)) {
+            throw new IOException("Expected a record, got " + value);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /** The string table of a report, whose strings are decoded on first use. */
+    private static final class StringTable {
+        private final ByteBuffer buffer;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final String[] decoded;
+
+        StringTable(ByteBuffer in) throws IOException {
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining() / Integer.BYTES) {
+                throw new IOException("Malformed string table");
+            }
+            buffer = in.duplicate();
+            offsets = new int[count];
+            lengths = new int[count];
+            decoded = new String[count];
+            for (int i = 0; i < count; i++) {
+                lengths[i] = in.getInt();
+                offsets[i] = in.position();
+                in.position(offsets[i] + lengths[i]);
+            }
+        }
+
+        /** Returns the string with the given index, or {@code null} for -1. */
+        String get(int index) {
+            if (index == -1) {
+                return null;
+            }
+            String string = decoded[index];
+            if (string == null) {
+                ByteBuffer bytes = buffer.duplicate();
+                bytes.limit(offsets[index] + lengths[index]);
+                bytes.position(offsets[index]);
+                // Racing threads decode the same string, so the cache needs no synchronization.
+                string = StandardCharsets.UTF_8.decode(bytes).toString();
+                decoded[index] = string;
+            }
+            return string;
+        }
+    }
+
+    /** The diagnostics of a section, read from its columns on access. */
+    private static final class DiagnosticColumns extends AbstractList<DiagnosticRecord>
+            implements RandomAccess {
+        private static final Diagnostic.Kind[] KINDS = Diagnostic.Kind.values();
+
+        private final ByteBuffer columns;
+        private final StringTable strings;
+        private final int size;
+
+        DiagnosticColumns(ByteBuffer columns, StringTable strings) throws IOException {
+            this.columns = columns;
+            this.strings = strings;
+            this.size = columns.getInt(0);
+            if (size < 0
+                    || (long) size * BinaryReporter.DIAGNOSTIC_BYTES + Integer.BYTES
+                            > columns.limit()) {
+                throw new IOException("Truncated diagnostics section");
+            }
+        }
+
+        @Override
+        public DiagnosticRecord get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            int sources = Integer.BYTES;
+            int kinds = sources + size * Integer.BYTES;
+            int positions = kinds + size;
+            int codes = positions + BinaryReporter.POSITION_COLUMNS * size * Long.BYTES;
+            int messages = codes + size * Integer.BYTES;
+
+            long[] position = new long[BinaryReporter.POSITION_COLUMNS];
+            for (int column = 0; column < position.length; column++) {
+                position[column] =
+                        columns.getLong(positions + (column * size + index) * Long.BYTES);
+            }
+            byte kind = columns.get(kinds + index);
+            return new DiagnosticRecord(
+                    strings.get(columns.getInt(sources + index * Integer.BYTES)),
+                    kind >= 0 && kind < KINDS.length ? KINDS[kind] : null,
+                    position[0],
+                    position[1],
+                    position[2],
+                    position[3],
+                    position[4],
+                    position[5],
+                    position[6],
+                    position[7],
+                    position[8],
+                    strings.get(columns.getInt(codes + index * Integer.BYTES)),
+                    strings.get(columns.getInt(messages + index * Integer.BYTES)));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package io.github.eisopux.diagnostics.reporter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.eisopux.diagnostics.core.BatchReporter;
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.Reporter;
+
+/**
+ * BinaryReporter is a {@link Reporter} implementation that writes a compact binary report for
+ * machine consumers, which {@link BinaryReport} reads back, e.g. from a memory-mapped file, without
+ * parsing text.
+ *
+ * <p>All numbers are big-endian. Every string, such as a source URI, code, message, section id or
+ * key, is stored once in a string table and referenced by its index, or by -1 for {@code null}:
+ *
+ * <pre>
+ * report      = magic:int version:int stringCount:int string* reportCount:int compilation*
+ * string      = byteLength:int utf8Bytes
+ * compilation = id:ref sectionCount:int section*
+ * section     = id:ref type:byte byteLength:long (diagnostics | records)
+ * diagnostics = n:int source:ref[n] kind:byte[n] position:long[n] startPosition:long[n]
+ *               endPosition:long[n] lineNumber:long[n] columnNumber:long[n]
+ *               startLineNumber:long[n] startColumnNumber:long[n] endLineNumber:long[n]
+ *               endColumnNumber:long[n] code:ref[n] message:ref[n]
+ * records     = n:int value[n]                   (n = -1 for a section without data)
+ * value       = NULL | FALSE | TRUE | LONG long | DOUBLE double | STRING ref
+ *             | LIST n:int value[n] | MAP n:int (key:ref value)[n]
+ * </pre>
+ *
+ * <p>Sections of {@link DiagnosticRecord}s are stored in columns of fixed width, so that a reader
+ * can access any diagnostic directly; their kind is the ordinal of {@link
+ * javax.tools.Diagnostic.Kind}, or -1. All other sections are stored as tagged values. Integral
+ * numbers become longs, other numbers doubles, and values other than numbers, booleans, strings,
+ * lists and maps the string they convert to. The id of the compilation written by {@link
+ * #generateReport(CompilationReportData)} is {@code null}.
+ *
+ * <p>As a {@link BatchReporter}, it writes the reports of several compilations into one file, each
+ * with its compilation's id.
+ */
+public class BinaryReporter implements BatchReporter {
+
+    /** The first four bytes of a binary report, {@code "JDWR"} in ASCII. */
+    static final int MAGIC = 0x4A445752;
+
+    static final int VERSION = 1;
+
+    /** The section types. */
+    static final byte DIAGNOSTICS = 0;
+
+    static final byte RECORDS = 1;
+
+    /** The tags of values in {@code RECORDS} sections. */
+    static final byte NULL = 0;
+
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte LONG = 3;
+    static final byte DOUBLE = 4;
+    static final byte STRING = 5;
+    static final byte LIST = 6;
+    static final byte MAP = 7;
+
+    /** The number of long columns of a {@code DIAGNOSTICS} section. */
+    static final int POSITION_COLUMNS = 9;
+
+    /** The bytes per diagnostic: source, code and message refs, kind and the position columns. */
+    static final int DIAGNOSTIC_BYTES = 3 * Integer.BYTES + 1 + POSITION_COLUMNS * Long.BYTES;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+
+    /** Whether the stream was opened by this reporter, and is closed once the report is done. */
+    private final boolean ownsStream;
+
+    /** Creates a BinaryReporter that writes to {@link System#out}. */
+    public BinaryReporter() {
+        this(System.out);
+    }
+
+    /**
+     * Creates a BinaryReporter that writes to the given stream. The stream is flushed, but not
+     * closed, once the report has been generated.
+     *
+     * @param out the stream to write the report to
+     */
+    public BinaryReporter(OutputStream out) {
+        this.out = out;
+        this.ownsStream = false;
+    }
+
+    /**
+     * Creates a BinaryReporter that writes to the given file, which is closed once the report has
+     * been generated.
+     *
+     * @param outputFile the file to write the report to; an existing file is overwritten
+     * @throws IOException if the file cannot be opened
+     */
+    public BinaryReporter(Path outputFile) throws IOException {
+        this.out = Files.newOutputStream(outputFile);
+        this.ownsStream = true;
+    }
+
+    @Override
+    public void generateReport(CompilationReportData reportData) {
+        write(Collections.singletonMap(null, reportData));
+    }
+
+    @Override
+    public void generateReports(Map<String, CompilationReportData> reportData) {
+        write(reportData);
+    }
+
+    /**
+     * Writes the given compilations. The string table comes first, so all sections are encoded,
+     * and their strings interned, before anything is written.
+     */
+    private void write(Map<String, CompilationReportData> reports) {
+        StringTable strings = new StringTable();
+        List<Integer> compilationIds = new ArrayList<>();
+        List<List<EncodedSection>> compilations = new ArrayList<>();
+        for (Map.Entry<String, CompilationReportData> entry : reports.entrySet()) {
+            compilationIds.add(strings.intern(entry.getKey()));
+            compilations.add(encodeSections(entry.getValue(), strings));
+        }
+
+        try {
+            DataOutputStream data =
+                    new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            strings.writeTo(data);
+            data.writeInt(compilations.size());
+            for (int i = 0; i < compilations.size(); i++) {
+                data.writeInt(compilationIds.get(i));
+                data.writeInt(compilations.get(i).size());
+                for (EncodedSection section : compilations.get(i)) {
+                    section.writeTo(data);
+                }
+            }
+            data.flush();
+            if (ownsStream) {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<EncodedSection> encodeSections(
+            CompilationReportData reportData, StringTable strings) {
+        List<EncodedSection> sections = new ArrayList<>();
+        for (String sectionId : reportData.getSectionIds()) {
+            int id = strings.intern(sectionId);
+            if (reportData.getSectionType(sectionId) == DiagnosticRecord.class) {
+                List<DiagnosticRecord> diagnostics =
+                        reportData.getTypedSection(
+                                sectionId, DiagnosticRecord.class, DiagnosticRecord::fromMap);
+                sections.add(new DiagnosticsSection(id, diagnostics, strings));
+            } else {
+                sections.add(new RecordsSection(id, reportData.getSection(sectionId), strings));
+            }
+        }
+        return sections;
+    }
+
+    /** The strings of a report, each with the index of its first occurrence. */
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int intern(String string) {
+            if (string == null) {
+                return -1;
+            }
+            Integer index = indexes.get(string);
+            if (index == null) {
+                index = strings.size();
+                indexes.put(string, index);
+                strings.add(string);
+            }
+            return index;
+        }
+
+        void writeTo(DataOutputStream data) throws IOException {
+            data.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+        }
+    }
+
+    /** A section whose strings have been interned, ready to be written after the string table. */
+    private abstract static class EncodedSection {
+        private final int id;
+
+        EncodedSection(int id) {
+            this.id = id;
+        }
+
+        void writeTo(DataOutputStream data) throws IOException {
+            data.writeInt(id);
+            data.writeByte(getType());
+            data.writeLong(getByteLength());
+            writeContent(data);
+        }
+
+        abstract byte getType();
+
+        abstract long getByteLength();
+
+        abstract void writeContent(DataOutputStream data) throws IOException;
+    }
+
+    /** A section of diagnostics, written column by column. */
+    private static final class DiagnosticsSection extends EncodedSection {
+        private final List<DiagnosticRecord> diagnostics;
+
+        /** The source, code and message refs of each diagnostic, in this order. */
+        private final int[] refs;
+
+        DiagnosticsSection(int id, List<DiagnosticRecord> diagnostics, StringTable strings) {
+            super(id);
+            this.diagnostics = diagnostics;
+            this.refs = new int[3 * diagnostics.size()];
+            int i = 0;
+            for (DiagnosticRecord diag : diagnostics) {
+                refs[i++] = strings.intern(diag.getSource());
+                refs[i++] = strings.intern(diag.getCode());
+                refs[i++] = strings.intern(diag.getMessage());
+            }
+        }
+
+        @Override
+        byte getType() {
+            return DIAGNOSTICS;
+        }
+
+        @Override
+        long getByteLength() {
+            return Integer.BYTES + (long) DIAGNOSTIC_BYTES * diagnostics.size();
+        }
+
+        @Override
+        void writeContent(DataOutputStream data) throws IOException {
+            int n = diagnostics.size();
+            data.writeInt(n);
+            writeRefs(data, 0);
+            for (DiagnosticRecord diag : diagnostics) {
+                data.writeByte(diag.getKind() != null ? diag.getKind().ordinal() : -1);
+            }
+            for (int column = 0; column < POSITION_COLUMNS; column++) {
+                for (DiagnosticRecord diag : diagnostics) {
+                    data.writeLong(getPosition(diag, column));
+                }
+            }
+            writeRefs(data, 1);
+            writeRefs(data, 2);
+        }
+
+        private void writeRefs(DataOutputStream data, int offset) throws IOException {
+            for (int i = offset; i < refs.length; i += 3) {
+                data.writeInt(refs[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a diagnostic in one of the position columns, in the order of the
+     * format.
+     */
+    static long getPosition(DiagnosticRecord diag, int column) {
+        switch (column) {
+            case 0:
+                return diag.getPosition();
+            case 1:
+                return diag.getStartPosition();
+            case 2:
+                return diag.getEndPosition();
+            case 3:
+                return diag.getLineNumber();
+            case 4:
+                return diag.getColumnNumber();
+            case 5:
+                return diag.getStartLineNumber();
+            case 6:
+                return diag.getStartColumnNumber();
+            case 7:
+                return diag.getEndLineNumber();
+            case 8:
+                return diag.getEndColumnNumber();
+            default:
+                throw new IllegalArgumentException("No position column " + column);
+        }
+    }
+
+    /** A section of key/value records, encoded as tagged values. */
+    private static final class RecordsSection extends EncodedSection {
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        RecordsSection(int id, List<Map<String, Object>> records, StringTable strings) {
+            super(id);
+            DataOutputStream data = new DataOutputStream(content);
+            try {
+                data.writeInt(records != null ? records.size() : -1);
+                if (records != null) {
+                    for (Map<String, Object> record : records) {
+                        writeValue(data, record, strings);
+                    }
+                }
+            } catch (IOException e) {
+                // A ByteArrayOutputStream does not throw.
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        byte getType() {
+            return RECORDS;
+        }
+
+        @Override
+        long getByteLength() {
+            return content.size();
+        }
+
+        @Override
+        void writeContent(DataOutputStream data) throws IOException {
+            content.writeTo(data);
+        }
+
+        private static void writeValue(DataOutputStream data, Object value, StringTable strings)
+                throws IOException {
+            if (value == null) {
+                data.writeByte(NULL);
+            } else if (value instanceof Boolean) {
+                data.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Long
+                    || value instanceof Integer
+                    || value instanceof Short
+                    || value instanceof Byte) {
+                data.writeByte(LONG);
+                data.writeLong(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                data.writeByte(DOUBLE);
+                data.writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                data.writeByte(LIST);
+                data.writeInt(list.size());
+                for (Object element : list) {
+                    writeValue(data, element, strings);
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                data.writeByte(MAP);
+                data.writeInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    data.writeInt(strings.intern(String.valueOf(entry.getKey())));
+                    writeValue(data, entry.getValue(), strings);
+                }
+            } else {
+                data.writeByte(STRING);
+                data.writeInt(strings.intern(value.toString()));
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package io.github.eisopux.diagnostics.reporter;
 
+import java.io.PrintStream;
+
 import io.github.eisopux.diagnostics.core.CompilationReportData;
 import io.github.eisopux.diagnostics.core.Reporter;
 
@@ -9,15 +11,31 @@ import io.github.eisopux.diagnostics.core.Reporter;
  */
 public class ConsoleReporter implements Reporter {
 
+    private final PrintStream out;
+
+    /** Creates a ConsoleReporter that writes to {@link System#out}. */
+    public ConsoleReporter() {
+        this(System.out);
+    }
+
+    /**
+     * Creates a ConsoleReporter that writes to the given stream.
+     *
+     * @param out the stream to write the report to
+     */
+    public ConsoleReporter(PrintStream out) {
+        this.out = out;
+    }
+
     @Override
     public void generateReport(CompilationReportData reportData) {
         reportData
                 .getAllSections()
                 .forEach(
                         (sectionName, sectionData) -> {
-                            System.out.println("Section: " + sectionName);
-                            System.out.println(sectionData);
-                            System.out.println(); // Blank line between sections.
+                            out.println("Section: " + sectionName);
+                            out.println(sectionData);
+                            out.println(); // Blank line between sections.
                         });
     }
 }
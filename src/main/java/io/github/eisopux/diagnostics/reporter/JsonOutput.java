@@ -0,0 +1,89 @@
+package io.github.eisopux.diagnostics.reporter;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The destination of a JSON-based reporter: a buffered UTF-8 writer over a stream or a file that
+ * JSON values are written to directly, so that no report is ever held as a tree or string in full.
+ */
+final class JsonOutput {
+
+    /** Writes the values that reporters do not serialize themselves; Gson is thread-safe. */
+    private static final Gson GSON = new Gson();
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final BufferedWriter writer;
+
+    /** Whether the stream was opened for this output, and is closed once the report is done. */
+    private final boolean ownsStream;
+
+    private JsonOutput(OutputStream out, boolean ownsStream) {
+        this.writer =
+                new BufferedWriter(
+                        new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.ownsStream = ownsStream;
+    }
+
+    /** Creates an output to a stream that is flushed, but never closed, by the reporter. */
+    static JsonOutput toStream(OutputStream out) {
+        return new JsonOutput(out, false);
+    }
+
+    /** Creates an output to a file, truncating it, that is closed once the report is done. */
+    static JsonOutput toFile(Path file) throws IOException {
+        return new JsonOutput(Files.newOutputStream(file), true);
+    }
+
+    /**
+     * Creates a JsonWriter for one top-level JSON value. The JsonWriter must not be closed; call
+     * {@link #finish()} once the report is complete instead.
+     *
+     * @param prettyPrinting whether to indent the value over multiple lines
+     * @return a new JsonWriter over this output
+     */
+    JsonWriter newJsonWriter(boolean prettyPrinting) throws IOException {
+        JsonWriter jsonWriter = GSON.newJsonWriter(writer);
+        if (prettyPrinting) {
+            jsonWriter.setIndent("  ");
+        }
+        return jsonWriter;
+    }
+
+    /** Writes a value with Gson's default serialization, e.g. a record of a generic section. */
+    static void writeValue(JsonWriter jsonWriter, Object value) throws IOException {
+        if (value == null) {
+            jsonWriter.nullValue();
+        } else {
+            GSON.toJson(value, value.getClass(), jsonWriter);
+        }
+    }
+
+    /** Ends the current line, e.g. after a top-level JSON value. */
+    void newLine() throws IOException {
+        writer.newLine();
+    }
+
+    /** Writes all buffered output through to the underlying stream. */
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    /** Completes the report: flushes the output and closes the file it was opened for, if any. */
+    void finish() throws IOException {
+        if (ownsStream) {
+            writer.close();
+        } else {
+            writer.flush();
+        }
+    }
+}
@@ -1,21 +1,222 @@
 package io.github.eisopux.diagnostics.reporter;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import io.github.eisopux.diagnostics.core.BatchReporter;
 import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.ReportRecord;
 import io.github.eisopux.diagnostics.core.Reporter;
+import io.github.eisopux.diagnostics.core.StreamingReporter;
 
 /**
  * JSONReporter is an implementation of {@link Reporter} that faithfully outputs each {@link
  * CompilationReportData} section as JSON.
+ *
+ * <p>The report is written record by record as it is serialized, pretty-printed by default or
+ * compact (see {@link #setPrettyPrinting(boolean)}), in UTF-8.
+ *
+ * <p>As a {@link StreamingReporter}, it switches to newline-delimited JSON (NDJSON) once streaming
+ * starts (see {@link #startStreaming()}) or the first record is streamed: every record, streamed or
+ * not, is then written on its own line as {@code {"section": <sectionId>, "data": <record>}}.
+ *
+ * <p>As a {@link BatchReporter}, it writes the reports of several compilations as one JSON object
+ * that maps each compilation's id to its report.
  */
-public class JsonReporter implements Reporter {
+public class JsonReporter implements StreamingReporter, BatchReporter {
+
+    private final JsonOutput out;
+    private boolean prettyPrinting = true;
+
+    /** Whether records have been streamed, i.e. whether the output is NDJSON. */
+    private boolean streaming;
+
+    /** Creates a JsonReporter that writes to {@link System#out}. */
+    public JsonReporter() {
+        this(System.out);
+    }
+
+    /**
+     * Creates a JsonReporter that writes to the given stream. The stream is flushed, but not
+     * closed, once the report has been generated.
+     *
+     * @param out the stream to write the report to
+     */
+    public JsonReporter(OutputStream out) {
+        this.out = JsonOutput.toStream(out);
+    }
+
+    /**
+     * Creates a JsonReporter that writes to the given file, which is closed once the report has
+     * been generated.
+     *
+     * @param outputFile the file to write the report to; an existing file is overwritten
+     * @throws IOException if the file cannot be opened
+     */
+    public JsonReporter(Path outputFile) throws IOException {
+        this.out = JsonOutput.toFile(outputFile);
+    }
+
+    /**
+     * Sets whether the report is indented over multiple lines, which is the default, or written
+     * compactly. NDJSON output is always compact.
+     *
+     * @param prettyPrinting whether to pretty-print the report
+     * @return this JsonReporter instance for method chaining
+     */
+    public JsonReporter setPrettyPrinting(boolean prettyPrinting) {
+        this.prettyPrinting = prettyPrinting;
+        return this;
+    }
+
+    @Override
+    public void startStreaming() {
+        streaming = true;
+    }
+
+    @Override
+    public void reportRecord(String sectionId, ReportRecord record) {
+        startStreaming();
+        try {
+            writeLine(sectionId, record);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
     @Override
     public void generateReport(CompilationReportData reportData) {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        String json = gson.toJson(reportData.getAllSections());
-        System.out.println(json);
+        try {
+            if (streaming) {
+                for (String sectionId : reportData.getSectionIds()) {
+                    if (reportData.getSectionType(sectionId) == DiagnosticRecord.class) {
+                        for (DiagnosticRecord diag : getDiagnostics(reportData, sectionId)) {
+                            writeLine(sectionId, diag);
+                        }
+                    } else {
+                        for (Map<String, Object> record : reportData.getSection(sectionId)) {
+                            writeLine(sectionId, record);
+                        }
+                    }
+                }
+            } else {
+                JsonWriter writer = out.newJsonWriter(prettyPrinting);
+                writeReport(writer, reportData);
+                out.newLine();
+            }
+            out.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void generateReports(Map<String, CompilationReportData> reportData) {
+        try {
+            JsonWriter writer = out.newJsonWriter(prettyPrinting);
+            writer.beginObject();
+            for (Map.Entry<String, CompilationReportData> entry : reportData.entrySet()) {
+                writer.name(entry.getKey());
+                writeReport(writer, entry.getValue());
+            }
+            writer.endObject();
+            out.newLine();
+            out.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Writes all sections of a report as one JSON object. */
+    private static void writeReport(JsonWriter writer, CompilationReportData reportData)
+            throws IOException {
+        writer.beginObject();
+        for (String sectionId : reportData.getSectionIds()) {
+            writer.name(sectionId);
+            writeSection(writer, reportData, sectionId);
+        }
+        writer.endObject();
+    }
+
+    /** Writes all records of a section as a JSON array. */
+    private static void writeSection(
+            JsonWriter writer, CompilationReportData reportData, String sectionId)
+            throws IOException {
+        if (reportData.getSectionType(sectionId) == DiagnosticRecord.class) {
+            writer.beginArray();
+            for (DiagnosticRecord diag : getDiagnostics(reportData, sectionId)) {
+                writeDiagnostic(writer, diag);
+            }
+            writer.endArray();
+            return;
+        }
+        List<Map<String, Object>> records = reportData.getSection(sectionId);
+        if (records == null) {
+            writer.nullValue();
+            return;
+        }
+        writer.beginArray();
+        for (Map<String, Object> record : records) {
+            JsonOutput.writeValue(writer, record);
+        }
+        writer.endArray();
+    }
+
+    /** Writes a single record as one NDJSON line. */
+    private void writeLine(String sectionId, Object record) throws IOException {
+        JsonWriter writer = out.newJsonWriter(false);
+        writer.beginObject();
+        writer.name("section").value(sectionId);
+        writer.name("data");
+        if (record instanceof DiagnosticRecord) {
+            writeDiagnostic(writer, (DiagnosticRecord) record);
+        } else if (record instanceof ReportRecord) {
+            JsonOutput.writeValue(writer, ((ReportRecord) record).toMap());
+        } else {
+            JsonOutput.writeValue(writer, record);
+        }
+        writer.endObject();
+        out.newLine();
+    }
+
+    /**
+     * Writes a diagnostic without materializing its key/value pairs. The keys are written in the
+     * order in which the key/value view of a diagnostic has always been serialized, so the output
+     * does not depend on how the section was stored. The processor that a diagnostic was attributed
+     * to and the variant that reported it, if any, come last.
+     */
+    private static void writeDiagnostic(JsonWriter writer, DiagnosticRecord diag)
+            throws IOException {
+        writer.beginObject();
+        writer.name("code").value(diag.getCode());
+        writer.name("columnNumber").value(diag.getColumnNumber());
+        writer.name("endPosition").value(diag.getEndPosition());
+        writer.name("kind").value(diag.getKind() != null ? diag.getKind().name() : null);
+        writer.name("source").value(diag.getSource());
+        writer.name("position").value(diag.getPosition());
+        writer.name("message").value(diag.getMessage());
+        writer.name("lineNumber").value(diag.getLineNumber());
+        writer.name("startPosition").value(diag.getStartPosition());
+        if (diag.getAttributedProcessor() != null) {
+            writer.name("processor").value(diag.getAttributedProcessor());
+        }
+        if (diag.getVariant() != null) {
+            writer.name("variant").value(diag.getVariant());
+        }
+        writer.endObject();
+    }
+
+    private static List<DiagnosticRecord> getDiagnostics(
+            CompilationReportData reportData, String sectionId) {
+        return reportData.getTypedSection(
+                sectionId, DiagnosticRecord.class, DiagnosticRecord::fromMap);
     }
 }
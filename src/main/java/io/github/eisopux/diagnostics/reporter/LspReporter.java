@@ -1,19 +1,25 @@
 package io.github.eisopux.diagnostics.reporter;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import io.github.eisopux.diagnostics.core.BatchReporter;
 import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.ReportRecord;
 import io.github.eisopux.diagnostics.core.Reporter;
+import io.github.eisopux.diagnostics.core.StreamingReporter;
 
 /**
  * LSPReporter is a {@link Reporter} implementation that transforms aggregated compilation report
@@ -21,136 +27,381 @@ import io.github.eisopux.diagnostics.core.Reporter;
  * standard.
  *
  * <p>To extend this reporter to support additional sections from other collectors, add
- * corresponding cases to the switch statement in {@link #generateReport(CompilationReportData)}.
- * For each new section, implement a conversion method named {@code
- * generateSectionNameReport(List<Map<String, Object>> sectionData)} (e.g., {@code
- * generatePerformanceReport}) to transform that section's data into the LSP-compliant format.
+ * corresponding cases to the switch statement in {@code writeReport}. For each new section,
+ * implement a method named {@code writeSectionNameReport(JsonWriter writer, List<Map<String,
+ * Object>> sectionData)} (e.g., {@code writePerformanceReport}) that writes that section's data in
+ * the LSP-compliant format.
+ *
+ * <p>The report is written as it is serialized, pretty-printed by default or compact (see {@link
+ * #setPrettyPrinting(boolean)}), in UTF-8.
+ *
+ * <p>As a {@link StreamingReporter}, it switches to newline-delimited JSON once streaming starts
+ * (see {@link #startStreaming()}) or the first record is streamed. Diagnostics are then written as
+ * {@code textDocument/publishDiagnostics} notifications whenever javac moves on to another file,
+ * and every other record as {@code {"section": <sectionId>, "data": <record>}}. Since a
+ * notification replaces all diagnostics of its URI, each notification carries every diagnostic of
+ * the URI reported so far; only the records of these diagnostics are retained for this.
+ *
+ * <p>As a {@link BatchReporter}, it writes the reports of several compilations as one JSON object
+ * that maps each compilation's id to its report.
  *
  * <p>For details on the diagnostic format, please refer to the <a
  * href="https://microsoft.github.io/language-server-protocol/specifications/specification-current/">
  * Language Server Protocol Specification</a>.
  */
-public class LspReporter implements Reporter {
+public class LspReporter implements StreamingReporter, BatchReporter {
+
+    private final JsonOutput out;
+    private boolean prettyPrinting = true;
+
+    /** Whether records have been streamed, i.e. whether the output is newline-delimited. */
+    private boolean streaming;
+
+    /** The URI of the most recently streamed diagnostic, whose notification is still pending. */
+    private String pendingUri;
+
+    /** The diagnostics streamed so far, grouped by URI. */
+    private final Map<String, List<DiagnosticRecord>> streamedDiagnostics = new LinkedHashMap<>();
+
+    /** Creates a LspReporter that writes to {@link System#out}. */
+    public LspReporter() {
+        this(System.out);
+    }
+
+    /**
+     * Creates a LspReporter that writes to the given stream. The stream is flushed, but not closed,
+     * once the report has been generated.
+     *
+     * @param out the stream to write the report to
+     */
+    public LspReporter(OutputStream out) {
+        this.out = JsonOutput.toStream(out);
+    }
+
+    /**
+     * Creates a LspReporter that writes to the given file, which is closed once the report has been
+     * generated.
+     *
+     * @param outputFile the file to write the report to; an existing file is overwritten
+     * @throws IOException if the file cannot be opened
+     */
+    public LspReporter(Path outputFile) throws IOException {
+        this.out = JsonOutput.toFile(outputFile);
+    }
+
+    /**
+     * Sets whether the report is indented over multiple lines, which is the default, or written
+     * compactly. Newline-delimited output is always compact.
+     *
+     * @param prettyPrinting whether to pretty-print the report
+     * @return this LspReporter instance for method chaining
+     */
+    public LspReporter setPrettyPrinting(boolean prettyPrinting) {
+        this.prettyPrinting = prettyPrinting;
+        return this;
+    }
 
-    private static final Pattern PROCESSOR_PATTERN =
-            Pattern.compile("^\\[([^:\\]]+)(?::[^\\]]+)?\\]");
+    @Override
+    public void startStreaming() {
+        streaming = true;
+    }
+
+    @Override
+    public void reportRecord(String sectionId, ReportRecord record) {
+        startStreaming();
+        try {
+            if (sectionId.equals("diagnostics") && record instanceof DiagnosticRecord) {
+                streamDiagnostic((DiagnosticRecord) record);
+            } else {
+                writeLine(sectionId, record.toMap());
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
     @Override
     public void generateReport(CompilationReportData reportData) {
+        try {
+            if (streaming) {
+                for (String sectionId : reportData.getSectionIds()) {
+                    if (sectionId.equals("diagnostics")) {
+                        for (DiagnosticRecord diag : getDiagnostics(reportData)) {
+                            streamDiagnostic(diag);
+                        }
+                    } else {
+                        for (Map<String, Object> record : reportData.getSection(sectionId)) {
+                            writeLine(sectionId, record);
+                        }
+                    }
+                }
+                if (pendingUri != null) {
+                    publishDiagnostics(pendingUri);
+                    pendingUri = null;
+                }
+                out.finish();
+                return;
+            }
 
-        Map<String, List<Map<String, Object>>> allSections = reportData.getAllSections();
+            JsonWriter writer = out.newJsonWriter(prettyPrinting);
+            writeReport(writer, reportData);
+            out.newLine();
+            out.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        Map<String, Object> transformedOutput = new LinkedHashMap<>();
+    @Override
+    public void generateReports(Map<String, CompilationReportData> reportData) {
+        try {
+            JsonWriter writer = out.newJsonWriter(prettyPrinting);
+            writer.beginObject();
+            for (Map.Entry<String, CompilationReportData> entry : reportData.entrySet()) {
+                writer.name(entry.getKey());
+                writeReport(writer, entry.getValue());
+            }
+            writer.endObject();
+            out.newLine();
+            out.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        for (Map.Entry<String, List<Map<String, Object>>> entry : allSections.entrySet()) {
-            String sectionId = entry.getKey();
-            List<Map<String, Object>> sectionData = entry.getValue();
-            Object transformed;
+    /** Writes all sections of a report as one JSON object. */
+    private void writeReport(JsonWriter writer, CompilationReportData reportData)
+            throws IOException {
+        writer.beginObject();
+        for (String sectionId : reportData.getSectionIds()) {
+            writer.name(sectionId);
 
             switch (sectionId) {
                 case "diagnostics":
-                    transformed = generateDiagnosticsReport(sectionData);
+                    writeDiagnosticsReport(
+                            writer, getDiagnostics(reportData), getClearedUris(reportData));
+                    break;
+                case "performance":
+                    writePerformanceReport(writer, reportData.getSection(sectionId));
                     break;
                 // Future sections can have their own cases here.
                 default:
                     // For sections without a specific transformation, keep the data as is.
-                    transformed = sectionData;
+                    JsonOutput.writeValue(writer, reportData.getSection(sectionId));
             }
-
-            transformedOutput.put(sectionId, transformed);
         }
+        writer.endObject();
+    }
+
+    /**
+     * Groups diagnostics by the file URI (stored in the "source" key) and writes an LSP-compliant
+     * output. Each cleared URI without diagnostics gets an empty array, which clears its
+     * diagnostics in an LSP client.
+     */
+    private void writeDiagnosticsReport(
+            JsonWriter writer, List<DiagnosticRecord> diagnosticsList, List<String> uris)
+            throws IOException {
+        Map<String, List<DiagnosticRecord>> grouped =
+                diagnosticsList.stream().collect(Collectors.groupingBy(LspReporter::getFileUri));
+        uris.forEach(uri -> grouped.putIfAbsent(uri, Collections.emptyList()));
 
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        String json = gson.toJson(transformedOutput);
-        System.out.println(json);
+        writer.beginArray();
+        for (Map.Entry<String, List<DiagnosticRecord>> entry : grouped.entrySet()) {
+            writer.beginObject();
+            writer.name("uri").value(entry.getKey());
+            writer.name("diagnostics");
+            writeLspDiagnostics(writer, entry.getValue());
+            writer.endObject();
+        }
+        writer.endArray();
     }
 
     /**
-     * Groups diagnostics by the file URI (stored in the "source" key) and produces an LSP-compliant
-     * output.
+     * Writes the records of {@link
+     * io.github.eisopux.diagnostics.collectors.PerformanceCollector} as one object: the {@code
+     * "compilation"} record itself and the other records in arrays named after their type, i.e.
+     * {@code "phases"}, {@code "annotationProcessors"} and {@code "compilationUnits"}. Like
+     * diagnostics, compilation units are identified by their {@code "uri"}.
      */
-    private List<Map<String, Object>> generateDiagnosticsReport(
-            List<Map<String, Object>> diagnosticsList) {
-        Map<String, List<Map<String, Object>>> grouped =
-                diagnosticsList.stream()
-                        .collect(
-                                Collectors.groupingBy(
-                                        diag -> {
-                                            Object fileUriObj = diag.get("source");
-                                            return fileUriObj != null
-                                                    ? fileUriObj.toString()
-                                                    : "unknown";
-                                        }));
-
-        List<Map<String, Object>> output = new ArrayList<>();
-        for (Map.Entry<String, List<Map<String, Object>>> entry : grouped.entrySet()) {
-            String fileUri = entry.getKey();
-            List<Map<String, Object>> lspDiagnostics =
-                    entry.getValue().stream()
-                            .map(this::transformDiagnosticToLSP)
-                            .collect(Collectors.toList());
-
-            Map<String, Object> fileEntry = new LinkedHashMap<>();
-            fileEntry.put("uri", fileUri);
-            fileEntry.put("diagnostics", lspDiagnostics);
-            output.add(fileEntry);
+    private void writePerformanceReport(JsonWriter writer, List<Map<String, Object>> sectionData)
+            throws IOException {
+        Map<String, List<Map<String, Object>>> byType = new LinkedHashMap<>();
+        for (Map<String, Object> record : sectionData) {
+            Map<String, Object> lspRecord = new LinkedHashMap<>();
+            record.forEach(
+                    (key, value) -> {
+                        if (key.equals("source")) {
+                            lspRecord.put("uri", value);
+                        } else if (!key.equals("type")) {
+                            lspRecord.put(key, value);
+                        }
+                    });
+            byType.computeIfAbsent(String.valueOf(record.get("type")), type -> new ArrayList<>())
+                    .add(lspRecord);
+        }
+
+        writer.beginObject();
+        for (Map.Entry<String, List<Map<String, Object>>> entry : byType.entrySet()) {
+            if (entry.getKey().equals("compilation")) {
+                writer.name("compilation");
+                JsonOutput.writeValue(writer, entry.getValue().get(0));
+            } else {
+                writer.name(entry.getKey() + "s");
+                JsonOutput.writeValue(writer, entry.getValue());
+            }
         }
-        return output;
+        writer.endObject();
     }
 
-    /** Transforms a single diagnostic map into the LSP diagnostic format. */
-    private Map<String, Object> transformDiagnosticToLSP(Map<String, Object> diag) {
-        Map<String, Object> lspDiag = new LinkedHashMap<>();
+    /**
+     * Adds a diagnostic to the diagnostics of its URI, publishing the previous URI's diagnostics if
+     * javac has moved on to another file.
+     */
+    private void streamDiagnostic(DiagnosticRecord diag) throws IOException {
+        String fileUri = getFileUri(diag);
+        if (pendingUri != null && !pendingUri.equals(fileUri)) {
+            publishDiagnostics(pendingUri);
+        }
+        streamedDiagnostics.computeIfAbsent(fileUri, uri -> new ArrayList<>()).add(diag);
+        pendingUri = fileUri;
+    }
 
-        int line =
-                diag.get("lineNumber") != null
-                        ? ((Number) diag.get("lineNumber")).intValue() - 1
-                        : 0;
-        int column =
-                diag.get("columnNumber") != null
-                        ? ((Number) diag.get("columnNumber")).intValue() - 1
-                        : 0;
-        int endColumn = column + 2; // Assume a fixed width; adjust as needed.
+    /** Writes a {@code textDocument/publishDiagnostics} notification for the given URI. */
+    private void publishDiagnostics(String fileUri) throws IOException {
+        JsonWriter writer = out.newJsonWriter(false);
+        writer.beginObject();
+        writer.name("jsonrpc").value("2.0");
+        writer.name("method").value("textDocument/publishDiagnostics");
+        writer.name("params");
+        writer.beginObject();
+        writer.name("uri").value(fileUri);
+        writer.name("diagnostics");
+        writeLspDiagnostics(writer, streamedDiagnostics.get(fileUri));
+        writer.endObject();
+        writer.endObject();
+        out.newLine();
+    }
 
-        lspDiag.put("range", createRange(line, column, endColumn));
+    /** Writes a single record of a section without LSP counterpart as one line. */
+    private void writeLine(String sectionId, Map<String, Object> record) throws IOException {
+        JsonWriter writer = out.newJsonWriter(false);
+        writer.beginObject();
+        writer.name("section").value(sectionId);
+        writer.name("data");
+        JsonOutput.writeValue(writer, record);
+        writer.endObject();
+        out.newLine();
+    }
 
-        String kind = diag.get("kind") != null ? diag.get("kind").toString() : "";
-        int severity = DiagnosticKind.fromString(kind);
-        lspDiag.put("severity", severity);
+    /** Returns the diagnostics of the report, preferably without materializing key/value pairs. */
+    private static List<DiagnosticRecord> getDiagnostics(CompilationReportData reportData) {
+        return reportData.getTypedSection(
+                "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+    }
 
-        lspDiag.put("code", diag.get("code"));
-        lspDiag.put("message", diag.get("message"));
+    /**
+     * Returns the URIs of the files that no longer have diagnostics according to the {@code
+     * "cleared"} section of a {@link io.github.eisopux.diagnostics.stages.DiagnosticDelta}, or none
+     * if the report has no such section.
+     */
+    private static List<String> getClearedUris(CompilationReportData reportData) {
+        List<String> uris = new ArrayList<>();
+        List<Map<String, Object>> cleared = reportData.getSection("cleared");
+        if (cleared != null) {
+            for (Map<String, Object> record : cleared) {
+                Object source = record.get("source");
+                uris.add(source != null ? source.toString() : "unknown");
+            }
+        }
+        return uris;
+    }
 
-        String processorName = extractProcessorFromMessage(diag.get("message"));
-        lspDiag.put("source", processorName != null ? processorName : "javac");
+    private static String getFileUri(DiagnosticRecord diag) {
+        return diag.getSource() != null ? diag.getSource() : "unknown";
+    }
 
-        return lspDiag;
+    /**
+     * Writes diagnostic records as an array of LSP diagnostics, e.g. as the {@code "diagnostics"}
+     * of a {@code textDocument/publishDiagnostics} notification. The severity is derived from the
+     * diagnostic kind and the source is the annotation processor that reported the diagnostic, see
+     * {@link DiagnosticRecord#getProcessor()}, or {@code "javac"}, followed by the variant of a
+     * compilation matrix that reported it in parentheses, if any.
+     *
+     * @param writer the writer to write the array to
+     * @param diagnostics the diagnostic records to write
+     * @throws IOException if writing fails
+     */
+    public static void writeLspDiagnostics(JsonWriter writer, List<DiagnosticRecord> diagnostics)
+            throws IOException {
+        writer.beginArray();
+        for (DiagnosticRecord diag : diagnostics) {
+            writeLspDiagnostic(writer, diag);
+        }
+        writer.endArray();
     }
 
-    /** Helper to create an LSP range object. */
-    private Map<String, Object> createRange(int line, int column, int endColumn) {
-        Map<String, Object> start = new LinkedHashMap<>();
-        start.put("line", line);
-        start.put("character", column);
+    /** Writes a single diagnostic record in the LSP diagnostic format. */
+    private static void writeLspDiagnostic(JsonWriter writer, DiagnosticRecord diag)
+            throws IOException {
+        writer.beginObject();
 
-        Map<String, Object> end = new LinkedHashMap<>();
-        end.put("line", line);
-        end.put("character", endColumn);
+        writer.name("range");
+        if (diag.getStartLineNumber() > 0 && diag.getEndLineNumber() > 0) {
+            writeRange(
+                    writer,
+                    (int) diag.getStartLineNumber() - 1,
+                    (int) diag.getStartColumnNumber() - 1,
+                    (int) diag.getEndLineNumber() - 1,
+                    (int) diag.getEndColumnNumber() - 1);
+        } else {
+            // Without a line index, e.g. for records read back from a map, the range can only
+            // span from the position to the end position within the position's line.
+            int line = (int) Math.max(0, diag.getLineNumber() - 1);
+            int column = (int) Math.max(0, diag.getColumnNumber() - 1);
+            long width =
+                    diag.getPosition() >= 0 && diag.getEndPosition() > diag.getPosition()
+                            ? diag.getEndPosition() - diag.getPosition()
+                            : 0;
+            writeRange(writer, line, column, line, (int) (column + width));
+        }
 
-        Map<String, Object> range = new LinkedHashMap<>();
-        range.put("start", start);
-        range.put("end", end);
-        return range;
-    }
+        String kind = diag.getKind() != null ? diag.getKind().toString() : "";
+        int severity = DiagnosticKind.fromString(kind);
+        writer.name("severity").value(severity);
 
-    /** Extracts the processor name from the diagnostic message using a regex. */
-    private String extractProcessorFromMessage(Object messageObj) {
-        if (messageObj == null) {
-            return null;
+        writer.name("code").value(diag.getCode());
+        writer.name("message").value(diag.getMessage());
+
+        String processorName = diag.getProcessor();
+        String source = processorName != null ? processorName : "javac";
+        if (diag.getVariant() != null) {
+            source += " (" + diag.getVariant() + ")";
         }
-        String message = messageObj.toString();
-        Matcher matcher = PROCESSOR_PATTERN.matcher(message);
-        return matcher.find() ? matcher.group(1) : null;
+        writer.name("source").value(source);
+
+        writer.endObject();
+    }
+
+    /** Helper to write an LSP range object. */
+    private static void writeRange(
+            JsonWriter writer, int line, int column, int endLine, int endColumn)
+            throws IOException {
+        writer.beginObject();
+        writer.name("start");
+        writePosition(writer, line, column);
+        writer.name("end");
+        writePosition(writer, endLine, endColumn);
+        writer.endObject();
+    }
+
+    /** Helper to write an LSP position object. */
+    private static void writePosition(JsonWriter writer, int line, int character)
+            throws IOException {
+        writer.beginObject();
+        writer.name("line").value(line);
+        writer.name("character").value(character);
+        writer.endObject();
     }
 
     /** Nested enum for mapping diagnostic kinds to LSP severity values. */
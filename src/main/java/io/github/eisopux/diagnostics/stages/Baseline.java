@@ -0,0 +1,274 @@
+package io.github.eisopux.diagnostics.stages;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+
+/**
+ * A baseline of known diagnostics, indexed by source file, code and normalized message, with the
+ * line numbers of each such diagnostic.
+ *
+ * <p>A baseline file is UTF-8 text. Its first line is {@value #HEADER}; every other line is one
+ * diagnostic with four tab-separated fields: the source file, the code, the line number and the
+ * message. Source files are stored relative to the base directory, usually the working directory,
+ * so that a baseline can be checked in and used on other machines. Messages are normalized by
+ * collapsing all whitespace, including line breaks, into single spaces. Backslashes, tabs and line
+ * breaks in the other fields are escaped with a backslash. The lines are sorted, so that changes to
+ * a checked-in baseline diff well.
+ */
+public final class Baseline {
+
+    static final String HEADER = "# javac diagnostics baseline v1";
+
+    /** The line numbers of the diagnostics of each key, in ascending order. */
+    private final Map<String, int[]> lines;
+
+    private final int size;
+
+    private Baseline(Map<String, int[]> lines, int size) {
+        this.lines = lines;
+        this.size = size;
+    }
+
+    /**
+     * Reads a baseline file.
+     *
+     * @param file the baseline file
+     * @return the baseline
+     * @throws IOException if the file cannot be read or is not a baseline
+     */
+    public static Baseline read(Path file) throws IOException {
+        Map<String, LineList> index = new HashMap<>();
+        int size = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || !line.equals(HEADER)) {
+                throw new IOException("Not a baseline file: " + file);
+            }
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 4) {
+                    throw new IOException(
+                            "Malformed baseline entry at " + file + ":" + lineNumber);
+                }
+                int diagnosticLine;
+                try {
+                    diagnosticLine = Integer.parseInt(fields[2]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(
+                            "Malformed line number at " + file + ":" + lineNumber, e);
+                }
+                String key = key(unescape(fields[0]), unescape(fields[1]), unescape(fields[3]));
+                index.computeIfAbsent(key, k -> new LineList()).add(diagnosticLine);
+                size++;
+            }
+        }
+
+        Map<String, int[]> lines = new HashMap<>((int) (index.size() / 0.75f) + 1);
+        for (Map.Entry<String, LineList> entry : index.entrySet()) {
+            int[] sorted = Arrays.copyOf(entry.getValue().lines, entry.getValue().size);
+            Arrays.sort(sorted);
+            lines.put(entry.getKey(), sorted);
+        }
+        return new Baseline(lines, size);
+    }
+
+    /**
+     * Writes the given diagnostics as a baseline file.
+     *
+     * @param file the baseline file; an existing file is overwritten
+     * @param diagnostics the diagnostics of the baseline
+     * @param baseDirectory the directory that source files are stored relative to
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(
+            Path file, Collection<DiagnosticRecord> diagnostics, Path baseDirectory)
+            throws IOException {
+        List<String> entries = new ArrayList<>(diagnostics.size());
+        for (DiagnosticRecord diag : diagnostics) {
+            entries.add(
+                    escape(toFile(diag.getSource(), baseDirectory))
+                            + '\t'
+                            + escape(nonNull(diag.getCode()))
+                            + '\t'
+                            + Math.max(-1, diag.getLineNumber())
+                            + '\t'
+                            + escape(normalizeMessage(diag.getMessage())));
+        }
+        entries.sort(null);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (String entry : entries) {
+                writer.write(entry);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of diagnostics in the baseline.
+     *
+     * @return the number of diagnostics
+     */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the line numbers of the diagnostics with a key, or null if there are none. */
+    int[] getLines(String key) {
+        return lines.get(key);
+    }
+
+    /** Returns all keys with their line numbers. */
+    Map<String, int[]> getEntries() {
+        return lines;
+    }
+
+    /** Returns the key of a diagnostic whose source file is already relative. */
+    static String key(String file, DiagnosticRecord diag) {
+        return key(file, nonNull(diag.getCode()), normalizeMessage(diag.getMessage()));
+    }
+
+    private static String key(String file, String code, String message) {
+        return file + '\0' + code + '\0' + message;
+    }
+
+    /** Splits a key into its source file, code and message. */
+    static String[] splitKey(String key) {
+        return key.split("\0", 3);
+    }
+
+    /**
+     * Returns the source file of a diagnostic relative to the base directory, with {@code /} as
+     * separator, or its source URI if it is not a file.
+     */
+    static String toFile(String source, Path baseDirectory) {
+        if (source == null) {
+            return "";
+        }
+        if (!source.startsWith("file:")) {
+            return source;
+        }
+        try {
+            Path path = Paths.get(URI.create(source)).toAbsolutePath().normalize();
+            if (!path.startsWith(baseDirectory)) {
+                return source;
+            }
+            return baseDirectory.relativize(path).toString().replace('\\', '/');
+        } catch (IllegalArgumentException e) {
+            return source;
+        }
+    }
+
+    /** Returns the source URI of a source file as returned by {@link #toFile(String, Path)}. */
+    static String toSource(String file, Path baseDirectory) {
+        if (file.isEmpty() || file.equals("unknown")) {
+            return "unknown";
+        }
+        if (file.indexOf(':') > 1) {
+            // Already a URI; a single letter before the colon would be a Windows drive.
+            return file;
+        }
+        return baseDirectory.resolve(file).toUri().toString();
+    }
+
+    /** Collapses all whitespace of a message into single spaces, and trims it. */
+    static String normalizeMessage(String message) {
+        if (message == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(message.length());
+        boolean space = false;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static String nonNull(String string) {
+        return string != null ? string : "";
+    }
+
+    private static String escape(String field) {
+        if (field.indexOf('\\') < 0
+                && field.indexOf('\t') < 0
+                && field.indexOf('\n') < 0
+                && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return field.replace("\\", "\\\\")
+                .replace("\t", "\\t")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r");
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder unescaped = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                c = field.charAt(++i);
+                switch (c) {
+                    case 't':
+                        unescaped.append('\t');
+                        break;
+                    case 'n':
+                        unescaped.append('\n');
+                        break;
+                    case 'r':
+                        unescaped.append('\r');
+                        break;
+                    default:
+                        unescaped.append(c);
+                }
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    /** A growable list of line numbers, to index a baseline without boxing. */
+    private static final class LineList {
+        int[] lines = new int[1];
+        int size;
+
+        void add(int line) {
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            lines[size++] = line;
+        }
+    }
+}
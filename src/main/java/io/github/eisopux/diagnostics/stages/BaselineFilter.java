@@ -0,0 +1,241 @@
+package io.github.eisopux.diagnostics.stages;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.ReportStage;
+
+/**
+ * A {@link ReportStage} that removes the diagnostics of a {@link Baseline} from the {@code
+ * "diagnostics"} section, so that only new diagnostics are reported, and lists the diagnostics of
+ * the baseline that no longer occur in the {@code "fixed"} section.
+ *
+ * <p>A diagnostic matches a baseline entry with the same source file, code and normalized message.
+ * Since unrelated edits move diagnostics to other lines, line numbers are matched fuzzily: entries
+ * on the diagnostic's own line are preferred, then the nearest entry not matched yet, up to {@link
+ * #setMaxLineDistance(int)} lines away. Each entry matches at most one diagnostic. Looking up the
+ * entries of a diagnostic takes a single hash lookup, so filtering takes time linear in the number
+ * of diagnostics.
+ *
+ * <p>The baseline is read in the background as soon as the stage is created, i.e. while javac
+ * compiles, so that even baselines of hundreds of thousands of entries do not delay the report.
+ * Each record of the {@code "fixed"} section has the keys {@code "source"}, {@code "code"}, {@code
+ * "lineNumber"} and {@code "message"}, the latter normalized; the records are ordered by source
+ * file and line. All entries that were not matched are listed, so the compilation should cover the
+ * same source files as the one the baseline was written from.
+ */
+public class BaselineFilter implements ReportStage {
+
+    private final CompletableFuture<Baseline> baseline;
+    private final Path baseDirectory;
+    private int maxLineDistance = Integer.MAX_VALUE;
+
+    /**
+     * Creates a filter for the given baseline file, whose source files are relative to the working
+     * directory, and starts reading it.
+     *
+     * @param baselineFile the baseline file, e.g. written by {@link BaselineWriter}
+     */
+    public BaselineFilter(Path baselineFile) {
+        this(baselineFile, Paths.get("").toAbsolutePath());
+    }
+
+    /**
+     * Creates a filter for the given baseline file and starts reading it.
+     *
+     * @param baselineFile the baseline file, e.g. written by {@link BaselineWriter}
+     * @param baseDirectory the directory the source files of the baseline are relative to
+     */
+    public BaselineFilter(Path baselineFile, Path baseDirectory) {
+        this.baseDirectory = baseDirectory.toAbsolutePath().normalize();
+        this.baseline =
+                CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                return Baseline.read(baselineFile);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+    }
+
+    /**
+     * Sets how many lines a diagnostic may have moved since the baseline was written and still
+     * match its entry.
+     *
+     * @param maxLineDistance the maximum distance in lines, unlimited by default
+     * @return this BaselineFilter instance for method chaining
+     * @throws IllegalArgumentException if the distance is negative
+     */
+    public BaselineFilter setMaxLineDistance(int maxLineDistance) {
+        if (maxLineDistance < 0) {
+            throw new IllegalArgumentException(
+                    "The maximum line distance must not be negative: " + maxLineDistance);
+        }
+        this.maxLineDistance = maxLineDistance;
+        return this;
+    }
+
+    /**
+     * Returns the baseline, waiting for it to be read if necessary.
+     *
+     * @return the baseline
+     * @throws UncheckedIOException if the baseline cannot be read
+     */
+    public Baseline getBaseline() {
+        try {
+            return baseline.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void process(CompilationReportData reportData) {
+        Baseline known = getBaseline();
+        List<DiagnosticRecord> diagnostics =
+                reportData.getTypedSection(
+                        "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+        if (diagnostics == null) {
+            diagnostics = new ArrayList<>();
+        }
+
+        // The matched entries of each key, as indexes into the baseline's sorted line numbers.
+        Map<String, BitSet> matched = new HashMap<>();
+        Map<String, String> files = new HashMap<>();
+        String[] keys = new String[diagnostics.size()];
+        boolean[] isNew = new boolean[diagnostics.size()];
+        int newCount = 0;
+
+        // Exact lines first, so that a moved diagnostic cannot take the entry of one that stayed.
+        for (int i = 0; i < keys.length; i++) {
+            DiagnosticRecord diag = diagnostics.get(i);
+            String file =
+                    files.computeIfAbsent(
+                            String.valueOf(diag.getSource()),
+                            source -> Baseline.toFile(diag.getSource(), baseDirectory));
+            keys[i] = Baseline.key(file, diag);
+            int[] lines = known.getLines(keys[i]);
+            if (lines == null) {
+                isNew[i] = true;
+                newCount++;
+                continue;
+            }
+            BitSet used = matched.computeIfAbsent(keys[i], key -> new BitSet(lines.length));
+            int index = findUnused(lines, used, Arrays.binarySearch(lines, toLine(diag)));
+            if (index >= 0 && lines[index] == toLine(diag)) {
+                used.set(index);
+                keys[i] = null;
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null || isNew[i]) {
+                continue;
+            }
+            int[] lines = known.getLines(keys[i]);
+            int index = findNearest(lines, matched.get(keys[i]), toLine(diagnostics.get(i)));
+            if (index >= 0) {
+                matched.get(keys[i]).set(index);
+            } else {
+                isNew[i] = true;
+                newCount++;
+            }
+        }
+
+        if (newCount < diagnostics.size()) {
+            List<DiagnosticRecord> newDiagnostics = new ArrayList<>(newCount);
+            for (int i = 0; i < isNew.length; i++) {
+                if (isNew[i]) {
+                    newDiagnostics.add(diagnostics.get(i));
+                }
+            }
+            reportData.putTypedSection("diagnostics", DiagnosticRecord.class, newDiagnostics);
+        }
+        reportData.putSection("fixed", getFixed(known, matched));
+    }
+
+    /**
+     * Returns the index of an unused entry among the equal line numbers around a binary search
+     * result, or -1 if there is none.
+     */
+    private static int findUnused(int[] lines, BitSet used, int found) {
+        if (found < 0) {
+            return -1;
+        }
+        int start = found;
+        while (start > 0 && lines[start - 1] == lines[found]) {
+            start--;
+        }
+        for (int i = start; i < lines.length && lines[i] == lines[found]; i++) {
+            if (!used.get(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the index of the nearest unused entry within the maximum distance, or -1. */
+    private int findNearest(int[] lines, BitSet used, int line) {
+        int insertion = Arrays.binarySearch(lines, line);
+        if (insertion < 0) {
+            insertion = -insertion - 1;
+        }
+        int below = used.previousClearBit(insertion - 1);
+        int above = used.nextClearBit(insertion);
+        long belowDistance = below >= 0 ? (long) line - lines[below] : Long.MAX_VALUE;
+        long aboveDistance = above < lines.length ? (long) lines[above] - line : Long.MAX_VALUE;
+        long distance = Math.min(belowDistance, aboveDistance);
+        if (distance > maxLineDistance) {
+            return -1;
+        }
+        return belowDistance <= aboveDistance ? below : above;
+    }
+
+    private List<Map<String, Object>> getFixed(Baseline known, Map<String, BitSet> matched) {
+        List<Map<String, Object>> fixed = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : known.getEntries().entrySet()) {
+            BitSet used = matched.get(entry.getKey());
+            int[] lines = entry.getValue();
+            if (used != null && used.cardinality() == lines.length) {
+                continue;
+            }
+            String[] parts = Baseline.splitKey(entry.getKey());
+            for (int i = 0; i < lines.length; i++) {
+                if (used == null || !used.get(i)) {
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    record.put("source", Baseline.toSource(parts[0], baseDirectory));
+                    record.put("code", parts[1].isEmpty() ? null : parts[1]);
+                    record.put("lineNumber", lines[i]);
+                    record.put("message", parts[2]);
+                    fixed.add(record);
+                }
+            }
+        }
+        fixed.sort(
+                Comparator.comparing((Map<String, Object> record) -> (String) record.get("source"))
+                        .thenComparing(record -> (Integer) record.get("lineNumber"))
+                        .thenComparing(record -> (String) record.get("message")));
+        return fixed;
+    }
+
+    private static int toLine(DiagnosticRecord diag) {
+        return (int) Math.max(-1, Math.min(Integer.MAX_VALUE, diag.getLineNumber()));
+    }
+}
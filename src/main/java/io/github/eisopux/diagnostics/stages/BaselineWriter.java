@@ -0,0 +1,59 @@
+package io.github.eisopux.diagnostics.stages;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.ReportStage;
+
+/**
+ * A {@link ReportStage} that writes the diagnostics of the {@code "diagnostics"} section to a
+ * {@link Baseline} file, for a {@link BaselineFilter} to suppress them in later compilations. The
+ * report itself is left unchanged.
+ */
+public class BaselineWriter implements ReportStage {
+
+    private final Path baselineFile;
+    private final Path baseDirectory;
+
+    /**
+     * Creates a writer of the given baseline file, whose source files are relative to the working
+     * directory.
+     *
+     * @param baselineFile the baseline file to write; an existing file is overwritten
+     */
+    public BaselineWriter(Path baselineFile) {
+        this(baselineFile, Paths.get("").toAbsolutePath());
+    }
+
+    /**
+     * Creates a writer of the given baseline file.
+     *
+     * @param baselineFile the baseline file to write; an existing file is overwritten
+     * @param baseDirectory the directory the source files of the baseline are relative to
+     */
+    public BaselineWriter(Path baselineFile, Path baseDirectory) {
+        this.baselineFile = baselineFile;
+        this.baseDirectory = baseDirectory.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void process(CompilationReportData reportData) {
+        List<DiagnosticRecord> diagnostics =
+                reportData.getTypedSection(
+                        "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+        try {
+            Baseline.write(
+                    baselineFile,
+                    diagnostics != null ? diagnostics : Collections.emptyList(),
+                    baseDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
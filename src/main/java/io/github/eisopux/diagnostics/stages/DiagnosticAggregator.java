@@ -0,0 +1,176 @@
+package io.github.eisopux.diagnostics.stages;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.ReportStage;
+
+/**
+ * A {@link ReportStage} that thins out the {@code "diagnostics"} section and summarizes it, for
+ * compilations that report the same diagnostic code many times per file, as the checkers of the
+ * Checker Framework often do.
+ *
+ * <p>All of it happens in a single pass over the diagnostics with hash-based lookups, so the time
+ * is linear in the number of diagnostics:
+ *
+ * <ul>
+ *   <li>With {@link #setDeduplicate(boolean)}, diagnostics that are equal in all their fields are
+ *       kept only once.
+ *   <li>With {@link #setMaxPerFileAndCode(int)}, only the first diagnostics of each combination of
+ *       source file and code are kept.
+ *   <li>With {@link #setSummary(boolean)}, the counts of the diagnostics are stored in the {@code
+ *       "summary"} section. Each record has a {@code "type"}: {@code "total"} – one record with the
+ *       number of diagnostics ({@code "count"}) and the numbers removed as duplicates ({@code
+ *       "duplicates"}) or beyond the limit ({@code "capped"}); and {@code "kind"}, {@code "code"},
+ *       {@code "source"} and {@code "processor"} – the number of diagnostics ({@code "count"}) for
+ *       each value of that field, which is stored under the same key. Kinds are listed in the
+ *       order of {@link Diagnostic.Kind}, all other values in order of first occurrence;
+ *       diagnostics without code or processor are not counted for that field.
+ * </ul>
+ *
+ * <p>The counts include the diagnostics that were removed, so that the summary still describes
+ * everything javac reported.
+ */
+public class DiagnosticAggregator implements ReportStage {
+
+    private boolean deduplicate;
+    private int maxPerFileAndCode = Integer.MAX_VALUE;
+    private boolean summary;
+
+    /**
+     * Sets whether diagnostics that are equal in all their fields are kept only once.
+     *
+     * @param deduplicate whether to remove duplicates, {@code false} by default
+     * @return this DiagnosticAggregator instance for method chaining
+     */
+    public DiagnosticAggregator setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of diagnostics kept for each combination of source file and code.
+     * Diagnostics without code are limited together.
+     *
+     * @param maxPerFileAndCode the maximum number of diagnostics, unlimited by default
+     * @return this DiagnosticAggregator instance for method chaining
+     * @throws IllegalArgumentException if the maximum is negative
+     */
+    public DiagnosticAggregator setMaxPerFileAndCode(int maxPerFileAndCode) {
+        if (maxPerFileAndCode < 0) {
+            throw new IllegalArgumentException(
+                    "The maximum number of diagnostics must not be negative: " + maxPerFileAndCode);
+        }
+        this.maxPerFileAndCode = maxPerFileAndCode;
+        return this;
+    }
+
+    /**
+     * Sets whether the counts of the diagnostics are stored in the {@code "summary"} section.
+     *
+     * @param summary whether to add the summary, {@code false} by default
+     * @return this DiagnosticAggregator instance for method chaining
+     */
+    public DiagnosticAggregator setSummary(boolean summary) {
+        this.summary = summary;
+        return this;
+    }
+
+    @Override
+    public void process(CompilationReportData reportData) {
+        List<DiagnosticRecord> diagnostics =
+                reportData.getTypedSection(
+                        "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+        if (diagnostics == null) {
+            return;
+        }
+
+        boolean filter = deduplicate || maxPerFileAndCode < Integer.MAX_VALUE;
+        List<DiagnosticRecord> kept = new ArrayList<>();
+        Set<DiagnosticRecord> seen = new HashSet<>();
+        Map<String, Map<String, int[]>> perFileAndCode = new HashMap<>();
+        int duplicates = 0;
+        int capped = 0;
+
+        Map<Diagnostic.Kind, int[]> kinds = new EnumMap<>(Diagnostic.Kind.class);
+        Map<String, int[]> codes = new LinkedHashMap<>();
+        Map<String, int[]> sources = new LinkedHashMap<>();
+        Map<String, int[]> processors = new LinkedHashMap<>();
+
+        for (DiagnosticRecord diag : diagnostics) {
+            if (summary) {
+                count(kinds, diag.getKind());
+                count(codes, diag.getCode());
+                count(sources, diag.getSource());
+                count(processors, diag.getProcessor());
+            }
+            if (!filter) {
+                continue;
+            }
+            if (deduplicate && !seen.add(diag)) {
+                duplicates++;
+                continue;
+            }
+            if (maxPerFileAndCode < Integer.MAX_VALUE) {
+                int[] count =
+                        perFileAndCode
+                                .computeIfAbsent(diag.getSource(), source -> new HashMap<>())
+                                .computeIfAbsent(diag.getCode(), code -> new int[1]);
+                if (count[0]++ >= maxPerFileAndCode) {
+                    capped++;
+                    continue;
+                }
+            }
+            kept.add(diag);
+        }
+
+        if (filter && kept.size() < diagnostics.size()) {
+            reportData.putTypedSection("diagnostics", DiagnosticRecord.class, kept);
+        }
+        if (summary) {
+            List<Map<String, Object>> records = new ArrayList<>();
+            Map<String, Object> total = newRecord("total");
+            total.put("count", diagnostics.size());
+            total.put("duplicates", duplicates);
+            total.put("capped", capped);
+            records.add(total);
+            addCounts(records, "kind", kinds);
+            addCounts(records, "code", codes);
+            addCounts(records, "source", sources);
+            addCounts(records, "processor", processors);
+            reportData.putSection("summary", records);
+        }
+    }
+
+    private static <K> void count(Map<K, int[]> counts, K key) {
+        if (key != null) {
+            counts.computeIfAbsent(key, k -> new int[1])[0]++;
+        }
+    }
+
+    private static void addCounts(
+            List<Map<String, Object>> records, String type, Map<?, int[]> counts) {
+        for (Map.Entry<?, int[]> entry : counts.entrySet()) {
+            Map<String, Object> record = newRecord(type);
+            record.put(type, entry.getKey().toString());
+            record.put("count", entry.getValue()[0]);
+            records.add(record);
+        }
+    }
+
+    private static Map<String, Object> newRecord(String type) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("type", type);
+        return record;
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.eisopux.diagnostics.stages;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.eisopux.diagnostics.core.CompilationReportData;
+import io.github.eisopux.diagnostics.core.DiagnosticRecord;
+import io.github.eisopux.diagnostics.core.ReportStage;
+
+/**
+ * A {@link ReportStage} for processes that report the same compilation over and over, such as
+ * watch mode, which reduces each report to how its diagnostics differ from those of the previous
+ * report this stage processed.
+ *
+ * <p>The {@code "diagnostics"} section keeps only the diagnostics that the previous report did not
+ * have, and the {@code "removed"} section, in the same form, lists the diagnostics of the previous
+ * report that no longer occur. The {@code "delta"} section has one record per source file whose
+ * diagnostics changed, in the order in which the files first appear in the other two sections,
+ * with its {@code "source"} and the numbers of {@code "added"} and {@code "removed"} diagnostics.
+ * The first report adds all of its diagnostics.
+ *
+ * <p>Diagnostics are compared including their positions, so a diagnostic that moves because lines
+ * above it were edited is removed and added again, which is what a consumer that displays the
+ * diagnostics needs to know. A report without a {@code "diagnostics"} section is left unchanged.
+ *
+ * <p>Consumers that replace all diagnostics of a file at once, such as LSP clients, need all
+ * diagnostics of each changed file instead, see {@link #setWholeFiles(boolean)}.
+ */
+public class DiagnosticDelta implements ReportStage {
+
+    private List<DiagnosticRecord> previous = Collections.emptyList();
+    private boolean wholeFiles;
+
+    /**
+     * Sets whether the {@code "diagnostics"} section keeps all diagnostics of each source file in
+     * the {@code "delta"} section, i.e. of each file whose diagnostics changed, instead of only the
+     * added ones. The files whose diagnostics were all removed are then listed in the {@code
+     * "cleared"} section, with their {@code "source"}, for which {@link
+     * io.github.eisopux.diagnostics.reporter.LspReporter} writes an empty array of diagnostics.
+     *
+     * @param wholeFiles whether to keep all diagnostics of changed files, {@code false} by default
+     * @return this DiagnosticDelta instance for method chaining
+     */
+    public DiagnosticDelta setWholeFiles(boolean wholeFiles) {
+        this.wholeFiles = wholeFiles;
+        return this;
+    }
+
+    @Override
+    public void process(CompilationReportData reportData) {
+        List<DiagnosticRecord> diagnostics =
+                reportData.getTypedSection(
+                        "diagnostics", DiagnosticRecord.class, DiagnosticRecord::fromMap);
+        if (diagnostics == null) {
+            return;
+        }
+
+        Map<DiagnosticRecord, Integer> unmatched = new HashMap<>();
+        previous.forEach(diag -> unmatched.merge(diag, 1, Integer::sum));
+        List<DiagnosticRecord> added = new ArrayList<>();
+        for (DiagnosticRecord diag : diagnostics) {
+            Integer count = unmatched.get(diag);
+            if (count == null) {
+                added.add(diag);
+            } else if (count == 1) {
+                unmatched.remove(diag);
+            } else {
+                unmatched.put(diag, count - 1);
+            }
+        }
+        List<DiagnosticRecord> removed = new ArrayList<>();
+        for (DiagnosticRecord diag : previous) {
+            Integer count = unmatched.get(diag);
+            if (count == null) {
+                continue;
+            }
+            removed.add(diag);
+            if (count == 1) {
+                unmatched.remove(diag);
+            } else {
+                unmatched.put(diag, count - 1);
+            }
+        }
+
+        Map<String, int[]> changes = new LinkedHashMap<>();
+        added.forEach(diag -> changes.computeIfAbsent(diag.getSource(), s -> new int[2])[0]++);
+        removed.forEach(diag -> changes.computeIfAbsent(diag.getSource(), s -> new int[2])[1]++);
+        List<Map<String, Object>> delta = new ArrayList<>();
+        changes.forEach(
+                (source, counts) -> {
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    record.put("source", source);
+                    record.put("added", counts[0]);
+                    record.put("removed", counts[1]);
+                    delta.add(record);
+                });
+
+        List<DiagnosticRecord> reported = added;
+        List<Map<String, Object>> cleared = new ArrayList<>();
+        if (wholeFiles) {
+            reported = new ArrayList<>();
+            Set<String> remaining = new HashSet<>();
+            for (DiagnosticRecord diag : diagnostics) {
+                if (changes.containsKey(diag.getSource())) {
+                    reported.add(diag);
+                    remaining.add(diag.getSource());
+                }
+            }
+            for (String source : changes.keySet()) {
+                if (!remaining.contains(source)) {
+                    cleared.add(Collections.singletonMap("source", source));
+                }
+            }
+        }
+
+        previous = new ArrayList<>(diagnostics);
+        reportData.putTypedSection("diagnostics", DiagnosticRecord.class, reported);
+        reportData.putTypedSection("removed", DiagnosticRecord.class, removed);
+        reportData.putSection("delta", delta);
+        if (wholeFiles) {
+            reportData.putSection("cleared", cleared);
+        }
+    }
+}